@@ -0,0 +1,56 @@
+package com.weather.report.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+import com.weather.report.WeatherReport;
+import com.weather.report.exceptions.WeatherReportException;
+import com.weather.report.model.UserType;
+import com.weather.report.persistence.PersistenceManager;
+
+/**
+ * Topology and measurement files shared by the benchmarks, produced by a
+ * {@link SyntheticDataGenerator} with a fixed seed: one network with four
+ * gateways of five sensors each, one measurement per sensor per minute.
+ */
+final class BenchmarkData {
+
+  static final String USERNAME = "benchmark";
+  static final LocalDateTime ORIGIN = LocalDateTime.of(2025, 1, 1, 0, 0);
+  static final SyntheticDataGenerator GENERATOR = new SyntheticDataGenerator(42, 1, 4, 5);
+
+  static {
+    GENERATOR.setStart(ORIGIN);
+  }
+
+  private BenchmarkData() {
+  }
+
+  /**
+   * Resets the in-memory test database and creates the topology.
+   *
+   * @return facade on the new database
+   */
+  static WeatherReport createTopology() throws WeatherReportException {
+    PersistenceManager.setTestMode();
+    WeatherReport facade = new WeatherReport();
+    facade.createUser(USERNAME, UserType.MAINTAINER);
+    GENERATOR.loadTopology(facade, USERNAME);
+    return facade;
+  }
+
+  /**
+   * Writes a temporary CSV file in the import format.
+   *
+   * @param rows number of measurements
+   * @return path of the new file, to be deleted by the caller
+   */
+  static Path writeCsv(int rows) throws IOException {
+    Path file = Files.createTempFile("weather-report-benchmark-", ".csv");
+    GENERATOR.writeCsv(file, rows);
+    return file;
+  }
+
+}
@@ -0,0 +1,43 @@
+package com.weather.report.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmark jar. Accepts the usual JMH command line
+ * options; unless a result format is given, results are also written as JSON
+ * to {@value #DEFAULT_RESULT_FILE} (or to the file given with {@code -rff}).
+ */
+public final class BenchmarkRunner {
+
+  static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+  private BenchmarkRunner() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions commandLine = new CommandLineOptions(args);
+    if (commandLine.shouldHelp()) {
+      commandLine.showHelp();
+      return;
+    }
+    Runner runner;
+    if (commandLine.getResultFormat().hasValue()) {
+      runner = new Runner(commandLine);
+    } else {
+      ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine)
+          .resultFormat(ResultFormatType.JSON)
+          .result(commandLine.getResult().orElse(DEFAULT_RESULT_FILE));
+      runner = new Runner(options.build());
+    }
+    if (commandLine.shouldList()) {
+      runner.list();
+      return;
+    }
+    runner.run();
+  }
+
+}
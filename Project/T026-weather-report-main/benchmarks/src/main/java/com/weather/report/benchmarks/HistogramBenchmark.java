@@ -0,0 +1,101 @@
+package com.weather.report.benchmarks;
+
+import java.time.LocalDateTime;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.weather.report.model.MeasurementColumns;
+import com.weather.report.reports.Histogram;
+import com.weather.report.reports.RangeImplementation;
+import com.weather.report.reports.Report.Range;
+
+/**
+ * Cost of {@link RangeImplementation#contains} and of building 20-bucket
+ * histograms of {@code keys} values and timestamps with {@link Histogram}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HistogramBenchmark {
+
+  private static final int BUCKETS = 20;
+  private static final int PROBES = 1024;
+
+  @Param({ "10000", "1000000" })
+  public int keys;
+
+  private double[] values;
+  private long[] epochSeconds;
+  private double[] valueBounds;
+  private long[] timeBounds;
+  private final Double[] valueProbes = new Double[PROBES];
+  private final LocalDateTime[] timeProbes = new LocalDateTime[PROBES];
+  private RangeImplementation<Double> valueRange;
+  private RangeImplementation<LocalDateTime> timeRange;
+  private int next;
+
+  @Setup
+  public void generate() {
+    Random random = new Random(42);
+    values = new double[keys];
+    epochSeconds = new long[keys];
+    long origin = MeasurementColumns.toEpochSecond(BenchmarkData.ORIGIN);
+    for (int i = 0; i < keys; i++) {
+      values[i] = random.nextGaussian() * 10;
+      epochSeconds[i] = origin + random.nextInt(365 * 86_400);
+    }
+    valueBounds = new double[BUCKETS + 1];
+    timeBounds = new long[BUCKETS + 1];
+    for (int i = 0; i <= BUCKETS; i++) {
+      valueBounds[i] = -30 + 3.0 * i;
+      timeBounds[i] = origin + 365L * 86_400 * i / BUCKETS;
+    }
+    for (int i = 0; i < PROBES; i++) {
+      valueProbes[i] = values[i % keys];
+      timeProbes[i] = MeasurementColumns.toLocalDateTime(epochSeconds[i % keys]);
+    }
+    valueRange = new RangeImplementation<>(-5.0, 5.0, false);
+    timeRange = new RangeImplementation<>(BenchmarkData.ORIGIN, BenchmarkData.ORIGIN.plusDays(180), true);
+  }
+
+  @Benchmark
+  public boolean containsValue() {
+    return valueRange.contains(valueProbes[next++ & (PROBES - 1)]);
+  }
+
+  @Benchmark
+  public boolean containsTimestamp() {
+    return timeRange.contains(timeProbes[next++ & (PROBES - 1)]);
+  }
+
+  @Benchmark
+  public SortedMap<Range<Double>, Long> valueHistogram() {
+    Histogram.OfDouble<Double> histogram = new Histogram.OfDouble<>(valueBounds, Double::valueOf);
+    for (double value : values) histogram.add(value);
+    return histogram.toSortedMap();
+  }
+
+  @Benchmark
+  public SortedMap<Range<LocalDateTime>, Long> timeHistogram() {
+    Histogram.OfLong<LocalDateTime> histogram = new Histogram.OfLong<>(timeBounds, MeasurementColumns::toLocalDateTime);
+    for (long epochSecond : epochSeconds) histogram.add(epochSecond);
+    return histogram.toSortedMap();
+  }
+
+}
@@ -0,0 +1,83 @@
+package com.weather.report.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.weather.report.exceptions.WeatherReportException;
+import com.weather.report.persistence.PersistenceManager;
+import com.weather.report.services.DataImportingService;
+import com.weather.report.services.ImportSummary;
+
+/**
+ * Throughput of {@link DataImportingService#storeMeasurements(String)} on a
+ * CSV file of {@code rows} measurements. The database is recreated before
+ * each iteration; the {@code rows} counter reports the stored rows per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+// il persistence unit di test registra SQL e statistiche: disattivati per misurare solo il codice
+@Fork(value = 1, jvmArgsAppend = { "-Dhibernate.show_sql=false", "-Dhibernate.format_sql=false",
+    "-Dhibernate.generate_statistics=false" })
+public class ImportBenchmark {
+
+  @Param({ "10000", "100000" })
+  public int rows;
+
+  private Path csv;
+
+  /** Stored rows, reported as a rate next to the imported files. */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class StoredRows {
+    public long rows;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      rows = 0;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void writeFile() throws IOException {
+    csv = BenchmarkData.writeCsv(rows);
+  }
+
+  @Setup(Level.Iteration)
+  public void resetDatabase() throws WeatherReportException {
+    BenchmarkData.createTopology();
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteFile() throws IOException {
+    Files.deleteIfExists(csv);
+    PersistenceManager.close();
+  }
+
+  @Benchmark
+  public ImportSummary storeMeasurements(StoredRows counter) {
+    ImportSummary summary = DataImportingService.storeMeasurements(csv.toString());
+    counter.rows += summary.getStoredRows();
+    return summary;
+  }
+
+}
@@ -0,0 +1,104 @@
+package com.weather.report.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.weather.report.WeatherReport;
+import com.weather.report.exceptions.WeatherReportException;
+import com.weather.report.persistence.PersistenceManager;
+import com.weather.report.reports.GatewayReport;
+import com.weather.report.reports.NetworkReport;
+import com.weather.report.reports.ReportCache;
+import com.weather.report.reports.SensorReport;
+import com.weather.report.repositories.MeasurementRepository;
+
+/**
+ * Latency of the sensor, gateway and network reports on the whole interval,
+ * with {@code measurements} measurements imported in the database. The report
+ * caches are cleared before each invocation, so that every call computes its
+ * report, either through the indexed range queries or, with
+ * {@code columnStore}, from the already loaded in-memory column store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+// il persistence unit di test registra SQL e statistiche: disattivati per misurare solo il codice
+@Fork(value = 1, jvmArgsAppend = { "-Dhibernate.show_sql=false", "-Dhibernate.format_sql=false",
+    "-Dhibernate.generate_statistics=false" })
+public class ReportBenchmark {
+
+  @Param({ "10000", "1000000", "10000000" })
+  public int measurements;
+
+  @Param({ "false", "true" })
+  public boolean columnStore;
+
+  private WeatherReport facade;
+  private String network;
+  private String gateway;
+  private String sensor;
+
+  @Setup(Level.Trial)
+  public void importMeasurements() throws IOException, WeatherReportException {
+    MeasurementRepository.setColumnStoreEnabled(columnStore);
+    facade = BenchmarkData.createTopology();
+    Path csv = BenchmarkData.writeCsv(measurements);
+    try {
+      facade.importDataFromFile(csv.toString());
+    } finally {
+      Files.deleteIfExists(csv);
+    }
+    network = BenchmarkData.GENERATOR.networkCode(0);
+    gateway = BenchmarkData.GENERATOR.gatewayCode(0);
+    sensor = BenchmarkData.GENERATOR.sensorCode(0);
+    // con lo store abilitato lo carica prima delle misure
+    facade.networks().getNetworkReport(network, null, null);
+  }
+
+  // i report durano millisecondi: il costo di un setup per invocazione è trascurabile
+  @Setup(Level.Invocation)
+  public void clearCaches() {
+    ReportCache.SENSOR_REPORTS.clear();
+    ReportCache.GATEWAY_REPORTS.clear();
+    ReportCache.NETWORK_REPORTS.clear();
+  }
+
+  @TearDown(Level.Trial)
+  public void close() {
+    PersistenceManager.close();
+  }
+
+  @Benchmark
+  public SensorReport sensorReport() throws WeatherReportException {
+    return facade.sensors().getSensorReport(sensor, null, null);
+  }
+
+  @Benchmark
+  public GatewayReport gatewayReport() throws WeatherReportException {
+    return facade.gateways().getGatewayReport(gateway, null, null);
+  }
+
+  @Benchmark
+  public NetworkReport networkReport() throws WeatherReportException {
+    return facade.networks().getNetworkReport(network, null, null);
+  }
+
+}
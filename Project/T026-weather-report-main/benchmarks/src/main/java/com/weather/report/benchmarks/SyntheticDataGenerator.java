@@ -0,0 +1,268 @@
+package com.weather.report.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Random;
+
+import com.weather.report.WeatherReport;
+import com.weather.report.exceptions.WeatherReportException;
+import com.weather.report.model.ThresholdType;
+import com.weather.report.model.entities.Parameter;
+
+/**
+ * Seeded generator of synthetic topologies and measurements for load tests.
+ * <p>
+ * The topology has {@code networks} networks ({@code NET_xx}), each with
+ * {@code gatewaysPerNetwork} gateways ({@code GW_xxxx}) of
+ * {@code sensorsPerGateway} sensors ({@code S_xxxxxx}), numbered
+ * consecutively. Every sensor gets a profile (mean, daily amplitude and noise)
+ * and a {@code GREATER_THAN} threshold above its normal range; every gateway
+ * gets the {@code EXPECTED_MEAN}, {@code EXPECTED_STD_DEV} and
+ * {@code BATTERY_CHARGE} parameters.
+ * <p>
+ * Measurements are streamed in the {@code DataImportingService} CSV format,
+ * one row per sensor per interval, in time order. Timestamps are shifted by a
+ * random jitter, sensors randomly stop reporting for a while (gaps) and a
+ * small share of values are outliers, which also violate the threshold. The
+ * same seed and settings always produce the same topology and rows.
+ */
+public class SyntheticDataGenerator {
+
+  /** CSV header expected by {@code DataImportingService}. */
+  public static final String CSV_HEADER = "date, networkCode, gatewayCode, sensorCode, value";
+
+  private final long seed;
+  private final int networks;
+  private final int gatewaysPerNetwork;
+  private final int sensorsPerGateway;
+  private final double[] means;
+  private final double[] amplitudes;
+  private final double[] noises;
+
+  private LocalDateTime start = LocalDateTime.of(2025, 1, 1, 0, 0);
+  private Duration interval = Duration.ofMinutes(1);
+  private Duration jitter = Duration.ofSeconds(10);
+  private double gapProbability = 0.0005;
+  private int maxGapIntervals = 120;
+  private double outlierProbability = 0.001;
+
+  /**
+   * @param seed               seed of all the random choices
+   * @param networks           number of networks (at most 99)
+   * @param gatewaysPerNetwork number of gateways of each network
+   * @param sensorsPerGateway  number of sensors of each gateway
+   */
+  public SyntheticDataGenerator(long seed, int networks, int gatewaysPerNetwork, int sensorsPerGateway) {
+    if (networks < 1 || gatewaysPerNetwork < 1 || sensorsPerGateway < 1)
+      throw new IllegalArgumentException("The topology must have at least one sensor");
+    if (networks > 99 || (long) networks * gatewaysPerNetwork > 9_999
+        || (long) networks * gatewaysPerNetwork * sensorsPerGateway > 999_999)
+      throw new IllegalArgumentException("Too many elements for the code formats");
+    this.seed = seed;
+    this.networks = networks;
+    this.gatewaysPerNetwork = gatewaysPerNetwork;
+    this.sensorsPerGateway = sensorsPerGateway;
+
+    int sensors = getSensorCount();
+    means = new double[sensors];
+    amplitudes = new double[sensors];
+    noises = new double[sensors];
+    Random random = new Random(seed);
+    for (int i = 0; i < sensors; i++) {
+      means[i] = 5 + 20 * random.nextDouble();
+      amplitudes[i] = 2 + 6 * random.nextDouble();
+      noises[i] = 0.2 + random.nextDouble();
+    }
+  }
+
+  /** @param start timestamp of the first interval */
+  public void setStart(LocalDateTime start) {
+    this.start = start;
+  }
+
+  /** @param interval time between two measurements of a sensor (at least one second) */
+  public void setInterval(Duration interval) {
+    if (interval.getSeconds() < 1) throw new IllegalArgumentException("interval must be at least one second");
+    this.interval = interval;
+  }
+
+  /** @param jitter maximum shift of a timestamp, before or after its interval */
+  public void setJitter(Duration jitter) {
+    this.jitter = jitter;
+  }
+
+  /**
+   * @param probability     probability that a reporting sensor starts a gap at
+   *                        each interval
+   * @param maxGapIntervals maximum length of a gap, in intervals
+   */
+  public void setGaps(double probability, int maxGapIntervals) {
+    if (probability < 0 || probability >= 1) throw new IllegalArgumentException("probability must be in [0, 1)");
+    this.gapProbability = probability;
+    this.maxGapIntervals = Math.max(1, maxGapIntervals);
+  }
+
+  /** @param probability probability that a value is an outlier */
+  public void setOutlierProbability(double probability) {
+    this.outlierProbability = probability;
+  }
+
+  public int getNetworkCount() {
+    return networks;
+  }
+
+  public int getGatewayCount() {
+    return networks * gatewaysPerNetwork;
+  }
+
+  public int getSensorCount() {
+    return networks * gatewaysPerNetwork * sensorsPerGateway;
+  }
+
+  /** @return code of the network with the given index */
+  public String networkCode(int network) {
+    return String.format("NET_%02d", network + 1);
+  }
+
+  /** @return code of the gateway with the given (global) index */
+  public String gatewayCode(int gateway) {
+    return String.format("GW_%04d", gateway + 1);
+  }
+
+  /** @return code of the sensor with the given (global) index */
+  public String sensorCode(int sensor) {
+    return String.format("S_%06d", sensor + 1);
+  }
+
+  /** @return index of the gateway of a sensor */
+  public int gatewayOf(int sensor) {
+    return sensor / sensorsPerGateway;
+  }
+
+  /** @return index of the network of a gateway */
+  public int networkOf(int gateway) {
+    return gateway / gatewaysPerNetwork;
+  }
+
+  /**
+   * Creates the whole topology through the operations of the facade: elements,
+   * connections, thresholds and gateway parameters.
+   *
+   * @param facade   facade of the target database
+   * @param username maintainer creating the elements
+   */
+  public void loadTopology(WeatherReport facade, String username) throws WeatherReportException {
+    for (int n = 0; n < networks; n++) {
+      facade.networks().createNetwork(networkCode(n), "Synthetic network " + (n + 1), "", username);
+    }
+    for (int g = 0; g < getGatewayCount(); g++) {
+      String code = gatewayCode(g);
+      facade.gateways().createGateway(code, "Synthetic gateway " + (g + 1), "", username);
+      facade.topology().connectGateway(networkCode(networkOf(g)), code, username);
+
+      // parametri attesi coerenti con i profili dei sensori del gateway
+      double mean = 0;
+      double deviation = 0;
+      for (int s = g * sensorsPerGateway; s < (g + 1) * sensorsPerGateway; s++) {
+        mean += means[s] / sensorsPerGateway;
+        deviation = Math.max(deviation, amplitudes[s]);
+      }
+      facade.gateways().createParameter(code, Parameter.EXPECTED_MEAN_CODE, "Expected mean", "", mean, username);
+      facade.gateways().createParameter(code, Parameter.EXPECTED_STD_DEV_CODE, "Expected standard deviation", "",
+          deviation, username);
+      facade.gateways().createParameter(code, Parameter.BATTERY_CHARGE_PERCENTAGE_CODE, "Battery charge", "",
+          50 + (g * 37) % 50, username);
+    }
+    for (int s = 0; s < getSensorCount(); s++) {
+      String code = sensorCode(s);
+      facade.sensors().createSensor(code, "Synthetic sensor " + (s + 1), "", username);
+      facade.topology().connectSensor(code, gatewayCode(gatewayOf(s)), username);
+      facade.sensors().createThreshold(code, ThresholdType.GREATER_THAN, upperThreshold(s), username);
+    }
+  }
+
+  /**
+   * Writes {@code rows} measurements to a new CSV file.
+   *
+   * @param file target file, replaced if it exists
+   * @param rows number of measurements
+   */
+  public void writeCsv(Path file, long rows) throws IOException {
+    try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+      writeCsv(writer, rows);
+    }
+  }
+
+  /**
+   * Streams {@code rows} measurements, header included, without keeping them
+   * in memory.
+   *
+   * @param writer target of the rows
+   * @param rows   number of measurements
+   */
+  public void writeCsv(Writer writer, long rows) throws IOException {
+    int sensors = getSensorCount();
+    Random random = new Random(seed ^ 0x5DEECE66DL);
+    // intervallo fino al quale ogni sensore resta in silenzio
+    long[] silentUntil = new long[sensors];
+    long jitterSeconds = jitter.getSeconds();
+    long intervalSeconds = interval.getSeconds();
+    StringBuilder line = new StringBuilder(64);
+
+    writer.write(CSV_HEADER);
+    writer.write('\n');
+    long written = 0;
+    for (long step = 0; written < rows; step++) {
+      LocalDateTime slot = start.plusSeconds(step * intervalSeconds);
+      double dayFraction = (step * intervalSeconds % 86_400) / 86_400.0;
+      for (int s = 0; s < sensors && written < rows; s++) {
+        if (step < silentUntil[s]) continue;
+        if (random.nextDouble() < gapProbability) {
+          silentUntil[s] = step + 1 + random.nextInt(maxGapIntervals);
+          continue;
+        }
+        long shift = jitterSeconds > 0 ? random.nextLong(-jitterSeconds, jitterSeconds + 1) : 0;
+        double value = means[s] + amplitudes[s] * Math.sin(2 * Math.PI * dayFraction) + noises[s] * random.nextGaussian();
+        if (random.nextDouble() < outlierProbability) {
+          value = upperThreshold(s) + amplitudes[s] * (1 + random.nextDouble());
+        }
+        int gateway = gatewayOf(s);
+        line.setLength(0);
+        line.append(WeatherReport.DATE_TIME_FORMATTER.format(slot.plusSeconds(shift))).append(", ")
+            .append(networkCode(networkOf(gateway))).append(", ")
+            .append(gatewayCode(gateway)).append(", ")
+            .append(sensorCode(s)).append(", ")
+            .append(Math.round(value * 100) / 100.0).append('\n');
+        writer.append(line);
+        written++;
+      }
+    }
+  }
+
+  private double upperThreshold(int sensor) {
+    return means[sensor] + amplitudes[sensor] + 5 * noises[sensor];
+  }
+
+  /**
+   * Writes a synthetic CSV file.
+   * <p>
+   * Usage: {@code SyntheticDataGenerator <file> <rows> [seed [networks gatewaysPerNetwork sensorsPerGateway]]}
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("Usage: SyntheticDataGenerator <file> <rows> [seed [networks gatewaysPerNetwork sensorsPerGateway]]");
+      System.exit(1);
+    }
+    long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+    SyntheticDataGenerator generator = args.length > 5
+        ? new SyntheticDataGenerator(seed, Integer.parseInt(args[3]), Integer.parseInt(args[4]), Integer.parseInt(args[5]))
+        : new SyntheticDataGenerator(seed, 1, 4, 5);
+    generator.writeCsv(Path.of(args[0]), Long.parseLong(args[1]));
+  }
+
+}
@@ -10,7 +10,9 @@ import com.weather.report.operations.OperationsFactory;
 import com.weather.report.operations.SensorOperations;
 import com.weather.report.operations.TopologyOperations;
 import com.weather.report.repositories.CRUDRepository;
+import com.weather.report.repositories.UserRepository;
 import com.weather.report.services.DataImportingService;
+import com.weather.report.services.ImportSummary;
 
 public class WeatherReport {
   public static final String DATE_FORMAT = "yyyy-MM-dd HH:mm:ss";
@@ -27,9 +29,33 @@ public class WeatherReport {
    * Imports weather measurements from the given file into the system.
    * 
    * @param filePath the path of the file
+   * @return summary of the import (stored and rejected rows, duration)
    */
-  public void importDataFromFile(String filePath) {
-    DataImportingService.storeMeasurements(filePath);
+  public ImportSummary importDataFromFile(String filePath) {
+    return DataImportingService.storeMeasurements(filePath);
+  }
+
+  /**
+   * Imports weather measurements from all the CSV files of the given directory.
+   * Files are imported concurrently.
+   * 
+   * @param dirPath the path of the directory
+   * @return aggregate summary of the import (files, stored and rejected rows, duration)
+   */
+  public ImportSummary importDataFromDirectory(String dirPath) {
+    return importDataFromDirectory(dirPath, "*.csv");
+  }
+
+  /**
+   * Imports weather measurements from the files of the given directory whose
+   * name matches a glob pattern. Files are imported concurrently.
+   * 
+   * @param dirPath the path of the directory
+   * @param glob    glob pattern of the file names (e.g. {@code S_12*.csv})
+   * @return aggregate summary of the import (files, stored and rejected rows, duration)
+   */
+  public ImportSummary importDataFromDirectory(String dirPath, String glob) {
+    return DataImportingService.storeMeasurementsFromDirectory(dirPath, glob, DataImportingService.DEFAULT_MAX_IN_FLIGHT_FILES);
   }
 
   /**
@@ -40,7 +66,9 @@ public class WeatherReport {
    * @return the newly created user
    */
   public User createUser(String username, UserType type) {
-    return new CRUDRepository<>(User.class).create(new User(username, type));
+    User user = new CRUDRepository<>(User.class).create(new User(username, type));
+    UserRepository.invalidate(username);
+    return user;
   }
 
   /*********************************
@@ -0,0 +1,279 @@
+package com.weather.report.model;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.weather.report.model.entities.Measurement;
+
+/**
+ * Read-only, column-oriented copy of a set of measurements.
+ * <p>
+ * Measurements are grouped in series, one for each combination of network,
+ * gateway and sensor code. The points of a series are stored contiguously in
+ * two primitive arrays (epoch seconds and values) and are sorted by timestamp;
+ * the codes are stored once per series. Each point also keeps the id of its
+ * measurement, or {@link #NO_ID} if it has none. Timestamps are kept at the second
+ * resolution of {@code WeatherReport.DATE_FORMAT} and are interpreted as UTC
+ * only to convert them to and from epoch seconds.
+ * <p>
+ * Measurements that were compacted no longer have points: their hourly
+ * aggregates lying entirely inside the interval that was read are kept in
+ * {@link #getCompacted()}, with the same series as the columns, so that
+ * counts and value statistics can include them.
+ */
+public class MeasurementColumns {
+
+  /** Id of a point whose measurement was never stored. */
+  public static final long NO_ID = 0;
+
+  private static final MeasurementColumns EMPTY = new MeasurementColumns(
+      new String[0], new String[0], new String[0], new int[] { 0 }, new long[0], new long[0], new double[0]);
+
+  private final String[] networkCodes;
+  private final String[] gatewayCodes;
+  private final String[] sensorCodes;
+  private final int[] offsets;
+  private final long[] ids;
+  private final long[] epochSeconds;
+  private final double[] values;
+  private final MeasurementRollups compacted;
+  private final long measurementCount;
+
+  /**
+   * Builds the columns from arrays that are not copied and must not be changed
+   * afterwards.
+   *
+   * @param networkCodes network code of each series
+   * @param gatewayCodes gateway code of each series
+   * @param sensorCodes  sensor code of each series
+   * @param offsets      index of the first point of each series, followed by
+   *                     the total number of points
+   * @param ids          id of the measurement of each point, or {@link #NO_ID}
+   * @param epochSeconds timestamp of each point in epoch seconds
+   * @param values       value of each point
+   */
+  public MeasurementColumns(String[] networkCodes, String[] gatewayCodes, String[] sensorCodes, int[] offsets,
+      long[] ids, long[] epochSeconds, double[] values) {
+    this(networkCodes, gatewayCodes, sensorCodes, offsets, ids, epochSeconds, values, null);
+  }
+
+  /**
+   * Builds the columns, with the aggregates of compacted measurements, from
+   * arrays that are not copied and must not be changed afterwards.
+   *
+   * @param networkCodes network code of each series
+   * @param gatewayCodes gateway code of each series
+   * @param sensorCodes  sensor code of each series
+   * @param offsets      index of the first point of each series, followed by
+   *                     the total number of points
+   * @param ids          id of the measurement of each point, or {@link #NO_ID}
+   * @param epochSeconds timestamp of each point in epoch seconds
+   * @param values       value of each point
+   * @param compacted    aggregates of the compacted measurements, with the same
+   *                     series as the columns, or {@code null} if there are none
+   */
+  public MeasurementColumns(String[] networkCodes, String[] gatewayCodes, String[] sensorCodes, int[] offsets,
+      long[] ids, long[] epochSeconds, double[] values, MeasurementRollups compacted) {
+    this.networkCodes = networkCodes;
+    this.gatewayCodes = gatewayCodes;
+    this.sensorCodes = sensorCodes;
+    this.offsets = offsets;
+    this.ids = ids;
+    this.epochSeconds = epochSeconds;
+    this.values = values;
+    this.compacted = compacted != null ? compacted : MeasurementRollups.empty(networkCodes, gatewayCodes, sensorCodes);
+    long count = values.length;
+    for (int r = 0; r < this.compacted.size(); r++) {
+      count += this.compacted.getCount(r);
+    }
+    this.measurementCount = count;
+  }
+
+  /**
+   * @return columns without any measurement
+   */
+  public static MeasurementColumns empty() {
+    return EMPTY;
+  }
+
+  /**
+   * Builds the columns of a collection of measurements.
+   *
+   * @param measurements measurements to copy, in any order
+   * @return columns of the measurements
+   */
+  public static MeasurementColumns of(Collection<Measurement> measurements) {
+    if (measurements == null || measurements.isEmpty()) return EMPTY;
+
+    Map<List<String>, List<Measurement>> series = new LinkedHashMap<>();
+    for (Measurement m : measurements) {
+      series.computeIfAbsent(Arrays.asList(m.getNetworkCode(), m.getGatewayCode(), m.getSensorCode()),
+          k -> new ArrayList<>()).add(m);
+    }
+
+    int count = series.size();
+    String[] networkCodes = new String[count];
+    String[] gatewayCodes = new String[count];
+    String[] sensorCodes = new String[count];
+    int[] offsets = new int[count + 1];
+    long[] ids = new long[measurements.size()];
+    long[] epochSeconds = new long[measurements.size()];
+    double[] values = new double[measurements.size()];
+
+    int s = 0;
+    int i = 0;
+    for (Map.Entry<List<String>, List<Measurement>> entry : series.entrySet()) {
+      networkCodes[s] = entry.getKey().get(0);
+      gatewayCodes[s] = entry.getKey().get(1);
+      sensorCodes[s] = entry.getKey().get(2);
+      offsets[s++] = i;
+      List<Measurement> points = entry.getValue();
+      points.sort(Comparator.comparing(Measurement::getTimestamp));
+      for (Measurement m : points) {
+        ids[i] = m.getId() == null ? NO_ID : m.getId();
+        epochSeconds[i] = toEpochSecond(m.getTimestamp());
+        values[i++] = m.getValue();
+      }
+    }
+    offsets[count] = i;
+    return new MeasurementColumns(networkCodes, gatewayCodes, sensorCodes, offsets, ids, epochSeconds, values);
+  }
+
+  /**
+   * @param timestamp timestamp of a measurement
+   * @return the timestamp in epoch seconds
+   */
+  public static long toEpochSecond(LocalDateTime timestamp) {
+    return timestamp.toEpochSecond(ZoneOffset.UTC);
+  }
+
+  /**
+   * @param epochSecond timestamp in epoch seconds
+   * @return the timestamp of a measurement
+   */
+  public static LocalDateTime toLocalDateTime(long epochSecond) {
+    return LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+  }
+
+  /**
+   * @return total number of points
+   */
+  public int size() {
+    return values.length;
+  }
+
+  /**
+   * @return {@code true} if there are no points
+   */
+  public boolean isEmpty() {
+    return values.length == 0;
+  }
+
+  /**
+   * @return number of measurements, i.e. the points and the measurements
+   *         compacted in {@link #getCompacted()}
+   */
+  public long getMeasurementCount() {
+    return measurementCount;
+  }
+
+  /**
+   * @return hourly aggregates of the compacted measurements, whose series are
+   *         those of the columns; a series may have aggregates and no points
+   */
+  public MeasurementRollups getCompacted() {
+    return compacted;
+  }
+
+  /**
+   * @return number of series
+   */
+  public int getSeriesCount() {
+    return sensorCodes.length;
+  }
+
+  /**
+   * @param series index of the series
+   * @return index of the first point of the series
+   */
+  public int getSeriesStart(int series) {
+    return offsets[series];
+  }
+
+  /**
+   * @param series index of the series
+   * @return index after the last point of the series
+   */
+  public int getSeriesEnd(int series) {
+    return offsets[series + 1];
+  }
+
+  /**
+   * @param series index of the series
+   * @return network code of the series
+   */
+  public String getNetworkCode(int series) {
+    return networkCodes[series];
+  }
+
+  /**
+   * @param series index of the series
+   * @return gateway code of the series
+   */
+  public String getGatewayCode(int series) {
+    return gatewayCodes[series];
+  }
+
+  /**
+   * @param series index of the series
+   * @return sensor code of the series
+   */
+  public String getSensorCode(int series) {
+    return sensorCodes[series];
+  }
+
+  /**
+   * @param point index of the point
+   * @return id of the measurement of the point, or {@link #NO_ID}
+   */
+  public long getId(int point) {
+    return ids[point];
+  }
+
+  /**
+   * @param point index of the point
+   * @return timestamp of the point in epoch seconds
+   */
+  public long getEpochSecond(int point) {
+    return epochSeconds[point];
+  }
+
+  /**
+   * @param point index of the point
+   * @return value of the point
+   */
+  public double getValue(int point) {
+    return values[point];
+  }
+
+  /**
+   * Builds a (detached) measurement entity for a single point.
+   *
+   * @param series index of the series of the point
+   * @param point  index of the point
+   * @return new measurement with the id, codes, value and timestamp of the
+   *         point; the id is {@code null} if the point has none
+   */
+  public Measurement toMeasurement(int series, int point) {
+    return new Measurement(ids[point] == NO_ID ? null : ids[point], networkCodes[series], gatewayCodes[series],
+        sensorCodes[series], values[point], toLocalDateTime(epochSeconds[point]));
+  }
+
+}
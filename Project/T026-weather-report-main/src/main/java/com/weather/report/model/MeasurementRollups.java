@@ -0,0 +1,243 @@
+package com.weather.report.model;
+
+/**
+ * Read-only hourly aggregates of a set of measurements, grouped in series like
+ * {@link MeasurementColumns}.
+ * <p>
+ * Each rollup summarises the points of a series falling in one clock hour of a
+ * requested interval: count, mean, sum of squared differences from the mean,
+ * minimum and maximum value, first and last timestamp, and, when they are read
+ * with sketches, a {@link QuantileSketch} of the values. Rollups of a series are
+ * sorted by hour. When the interval starts or ends inside an hour, the rollup
+ * of that hour only covers the points inside the interval, together with the
+ * compacted aggregates of that hour lying entirely inside it.
+ */
+public class MeasurementRollups {
+
+  /** Length of a rollup in seconds. */
+  public static final long HOUR_SECONDS = 3600;
+
+  private final String[] networkCodes;
+  private final String[] gatewayCodes;
+  private final String[] sensorCodes;
+  private final int[] offsets;
+  private final long[] hours;
+  private final long[] counts;
+  private final double[] means;
+  private final double[] squaredDeviations;
+  private final double[] minimums;
+  private final double[] maximums;
+  private final long[] firstEpochSeconds;
+  private final long[] lastEpochSeconds;
+  private final QuantileSketch[] sketches;
+
+  /**
+   * Builds the rollups from arrays that are not copied and must not be changed
+   * afterwards.
+   *
+   * @param networkCodes      network code of each series
+   * @param gatewayCodes      gateway code of each series
+   * @param sensorCodes       sensor code of each series
+   * @param offsets           index of the first rollup of each series, followed
+   *                          by the total number of rollups
+   * @param hours             start of the hour of each rollup in epoch seconds
+   * @param counts            number of points of each rollup
+   * @param means             mean value of each rollup
+   * @param squaredDeviations sum of squared differences from the mean of each
+   *                          rollup
+   * @param minimums          minimum value of each rollup
+   * @param maximums          maximum value of each rollup
+   * @param firstEpochSeconds first timestamp of each rollup
+   * @param lastEpochSeconds  last timestamp of each rollup
+   * @param sketches          quantile sketch of the values of each rollup,
+   *                          {@code null} where there is none
+   */
+  public MeasurementRollups(String[] networkCodes, String[] gatewayCodes, String[] sensorCodes, int[] offsets,
+      long[] hours, long[] counts, double[] means, double[] squaredDeviations, double[] minimums, double[] maximums,
+      long[] firstEpochSeconds, long[] lastEpochSeconds, QuantileSketch[] sketches) {
+    this.networkCodes = networkCodes;
+    this.gatewayCodes = gatewayCodes;
+    this.sensorCodes = sensorCodes;
+    this.offsets = offsets;
+    this.hours = hours;
+    this.counts = counts;
+    this.means = means;
+    this.squaredDeviations = squaredDeviations;
+    this.minimums = minimums;
+    this.maximums = maximums;
+    this.firstEpochSeconds = firstEpochSeconds;
+    this.lastEpochSeconds = lastEpochSeconds;
+    this.sketches = sketches;
+  }
+
+  /**
+   * @param networkCodes network code of each series
+   * @param gatewayCodes gateway code of each series
+   * @param sensorCodes  sensor code of each series
+   * @return rollups of the given series, all without any rollup
+   */
+  public static MeasurementRollups empty(String[] networkCodes, String[] gatewayCodes, String[] sensorCodes) {
+    return new MeasurementRollups(networkCodes, gatewayCodes, sensorCodes, new int[sensorCodes.length + 1],
+        new long[0], new long[0], new double[0], new double[0], new double[0], new double[0], new long[0],
+        new long[0], new QuantileSketch[0]);
+  }
+
+  /**
+   * @param epochSecond timestamp in epoch seconds
+   * @return start of its hour in epoch seconds
+   */
+  public static long hourOf(long epochSecond) {
+    return Math.floorDiv(epochSecond, HOUR_SECONDS) * HOUR_SECONDS;
+  }
+
+  /**
+   * @return total number of rollups
+   */
+  public int size() {
+    return hours.length;
+  }
+
+  /**
+   * @return {@code true} if there are no rollups, i.e. no points
+   */
+  public boolean isEmpty() {
+    return hours.length == 0;
+  }
+
+  /**
+   * @return number of series
+   */
+  public int getSeriesCount() {
+    return sensorCodes.length;
+  }
+
+  /**
+   * @param series index of the series
+   * @return index of the first rollup of the series
+   */
+  public int getSeriesStart(int series) {
+    return offsets[series];
+  }
+
+  /**
+   * @param series index of the series
+   * @return index after the last rollup of the series
+   */
+  public int getSeriesEnd(int series) {
+    return offsets[series + 1];
+  }
+
+  /**
+   * @param series index of the series
+   * @return network code of the series
+   */
+  public String getNetworkCode(int series) {
+    return networkCodes[series];
+  }
+
+  /**
+   * @param series index of the series
+   * @return gateway code of the series
+   */
+  public String getGatewayCode(int series) {
+    return gatewayCodes[series];
+  }
+
+  /**
+   * @param series index of the series
+   * @return sensor code of the series
+   */
+  public String getSensorCode(int series) {
+    return sensorCodes[series];
+  }
+
+  /**
+   * @param rollup index of the rollup
+   * @return start of the hour in epoch seconds
+   */
+  public long getHour(int rollup) {
+    return hours[rollup];
+  }
+
+  /**
+   * @param rollup index of the rollup
+   * @return number of points
+   */
+  public long getCount(int rollup) {
+    return counts[rollup];
+  }
+
+  /**
+   * @param rollup index of the rollup
+   * @return mean value
+   */
+  public double getMean(int rollup) {
+    return means[rollup];
+  }
+
+  /**
+   * @param rollup index of the rollup
+   * @return sum of squared differences from the mean
+   */
+  public double getSquaredDeviations(int rollup) {
+    return squaredDeviations[rollup];
+  }
+
+  /**
+   * @param rollup index of the rollup
+   * @return minimum value
+   */
+  public double getMin(int rollup) {
+    return minimums[rollup];
+  }
+
+  /**
+   * @param rollup index of the rollup
+   * @return maximum value
+   */
+  public double getMax(int rollup) {
+    return maximums[rollup];
+  }
+
+  /**
+   * @param rollup index of the rollup
+   * @return first timestamp in epoch seconds
+   */
+  public long getFirstEpochSecond(int rollup) {
+    return firstEpochSeconds[rollup];
+  }
+
+  /**
+   * @param rollup index of the rollup
+   * @return last timestamp in epoch seconds
+   */
+  public long getLastEpochSecond(int rollup) {
+    return lastEpochSeconds[rollup];
+  }
+
+  /**
+   * @param rollup index of the rollup
+   * @return quantile sketch of the values, not to be changed, or
+   *         {@code null} if the rollups were read without sketches; it lacks
+   *         the points of aggregates compacted without a sketch, so its count
+   *         may be lower than {@link #getCount(int)}
+   */
+  public QuantileSketch getSketch(int rollup) {
+    return sketches[rollup];
+  }
+
+  /**
+   * Merges the sketches of all the rollups, e.g. to estimate the quantiles of
+   * all the sensors of a gateway over the whole interval.
+   *
+   * @return new sketch of all the values of the rollups that have one
+   */
+  public QuantileSketch mergeSketches() {
+    QuantileSketch merged = new QuantileSketch();
+    for (QuantileSketch sketch : sketches) {
+      if (sketch != null) merged.merge(sketch);
+    }
+    return merged;
+  }
+
+}
@@ -0,0 +1,293 @@
+package com.weather.report.model;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Mergeable sketch of the distribution of a sequence of values, answering
+ * quantile queries in bounded memory (KLL sketch, Karnin, Lang and Liberty
+ * 2016).
+ * <p>
+ * Values are kept in levels: an item of level {@code h} stands for
+ * {@code 2^h} values. When a level exceeds its capacity it is sorted and every
+ * other item, starting at random from the first or the second one, is
+ * promoted to the next level. The capacity of the top level is {@code k} and
+ * shrinks by a factor 2/3 at each level below, so a sketch keeps at most about
+ * {@code 3k} items whatever the number of values. As long as no level is
+ * compacted (fewer than {@code k} values) the sketch is exact.
+ * <p>
+ * Error bound: the rank of the value returned by {@link #getQuantile(double)}
+ * differs from the requested one by at most about {@code 2.5 / k^0.94} times
+ * the number of values with 99% confidence, i.e. 1.65% with
+ * {@link #DEFAULT_K}. The bound also holds for sketches obtained by
+ * {@link #merge(QuantileSketch) merging} any number of sketches, in any order,
+ * so sketches of hours and of sensors can be combined freely. Minimum and
+ * maximum are always exact.
+ * <p>
+ * A sketch that has to be stored in large numbers, e.g. one per compacted
+ * hour, can be {@link #compactedTo(int) reduced} to a fixed number of items
+ * {@code m}. The reduction adds to the rank error of that sketch less than
+ * about {@code 2 / m} times its number of values; the sign of this error is
+ * random, so after merging many reduced sketches it mostly cancels out and the
+ * bound above dominates.
+ */
+public class QuantileSketch {
+
+  /** Default size parameter, with a rank error of about 1.65%. */
+  public static final int DEFAULT_K = 200;
+
+  private static final double CAPACITY_DECAY = 2.0 / 3.0;
+  private static final int MIN_LEVEL_CAPACITY = 2;
+  private static final int INITIAL_LEVEL_CAPACITY = 8;
+
+  private final int k;
+  private double[][] levels = new double[0][];
+  private int[] sizes = new int[0];
+  private long count;
+  private double min = Double.NaN;
+  private double max = Double.NaN;
+
+  /**
+   * Creates an empty sketch with {@link #DEFAULT_K}.
+   */
+  public QuantileSketch() {
+    this(DEFAULT_K);
+  }
+
+  /**
+   * @param k size parameter: higher values lower the error and raise the
+   *          memory use, linearly
+   */
+  public QuantileSketch(int k) {
+    if (k < MIN_LEVEL_CAPACITY) throw new IllegalArgumentException("k must be at least " + MIN_LEVEL_CAPACITY);
+    this.k = k;
+  }
+
+  /**
+   * Adds a value.
+   *
+   * @param value value to add
+   */
+  public void add(double value) {
+    append(0, value);
+    count++;
+    if (count == 1 || value < min) min = value;
+    if (count == 1 || value > max) max = value;
+    if (sizes[0] >= capacity(0)) compress();
+  }
+
+  /**
+   * Adds all the values summarised by another sketch, which is left unchanged.
+   *
+   * @param other sketch to merge into this one
+   */
+  public void merge(QuantileSketch other) {
+    if (other.count == 0) return;
+    for (int h = 0; h < other.levels.length; h++) {
+      for (int i = 0; i < other.sizes[h]; i++) {
+        append(h, other.levels[h][i]);
+      }
+    }
+    if (count == 0 || other.min < min) min = other.min;
+    if (count == 0 || other.max > max) max = other.max;
+    count += other.count;
+    compress();
+  }
+
+  /**
+   * @return an independent copy of this sketch
+   */
+  public QuantileSketch copy() {
+    QuantileSketch copy = new QuantileSketch(k);
+    copy.levels = new double[levels.length][];
+    for (int h = 0; h < levels.length; h++) {
+      copy.levels[h] = Arrays.copyOf(levels[h], Math.max(sizes[h], 1));
+    }
+    copy.sizes = sizes.clone();
+    copy.count = count;
+    copy.min = min;
+    copy.max = max;
+    return copy;
+  }
+
+  /**
+   * Returns a copy of this sketch reduced to at most {@code maxItems} items,
+   * e.g. to store it in a bounded space. The lowest levels are compacted first,
+   * each one at most once, so a level {@code h} adds a rank error of at most
+   * {@code 2^h} with random sign: in total less than about
+   * {@code 2 / maxItems} times the number of values. A sketch that already
+   * has at most {@code maxItems} items is copied unchanged.
+   *
+   * @param maxItems maximum number of items kept, at least the number of
+   *                 levels needed to hold the values (about
+   *                 {@code log2(count)})
+   * @return the reduced sketch, with the same size parameter
+   */
+  public QuantileSketch compactedTo(int maxItems) {
+    QuantileSketch reduced = copy();
+    int items = 0;
+    for (int size : reduced.sizes) items += size;
+    for (int h = 0; items > maxItems && h < reduced.levels.length; h++) {
+      // compattare un livello dimezza i suoi elementi; uno dispari resta al suo posto
+      items -= reduced.sizes[h] / 2;
+      if (reduced.sizes[h] > 1) reduced.compact(h);
+    }
+    return reduced;
+  }
+
+  /**
+   * @return number of values added
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * @return {@code true} if no value has been added
+   */
+  public boolean isEmpty() {
+    return count == 0;
+  }
+
+  /**
+   * Estimates the quantile of a fraction: the smallest value whose rank (the
+   * number of values not greater than it) is at least {@code fraction} times
+   * the number of values. For instance 0.5 gives the median and 0.99 the 99th
+   * percentile.
+   *
+   * @param fraction fraction of the values, in {@code [0, 1]}
+   * @return estimated quantile, exact minimum for 0 and exact maximum for 1,
+   *         {@link Double#NaN} if the sketch is empty
+   */
+  public double getQuantile(double fraction) {
+    if (!(fraction >= 0 && fraction <= 1)) throw new IllegalArgumentException("fraction must be in [0, 1]");
+    if (count == 0) return Double.NaN;
+    if (fraction == 0) return min;
+    if (fraction == 1) return max;
+
+    int items = 0;
+    for (int size : sizes) items += size;
+    // valore e livello di ogni elemento, ordinati per valore
+    double[] values = new double[items];
+    long[] weights = new long[items];
+    int position = 0;
+    for (int h = 0; h < levels.length; h++) {
+      System.arraycopy(levels[h], 0, values, position, sizes[h]);
+      Arrays.fill(weights, position, position + sizes[h], 1L << h);
+      position += sizes[h];
+    }
+    Integer[] order = new Integer[items];
+    for (int i = 0; i < items; i++) order[i] = i;
+    Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+
+    double target = fraction * count;
+    long rank = 0;
+    for (int i : order) {
+      rank += weights[i];
+      if (rank >= target) return values[i];
+    }
+    return max;
+  }
+
+  /**
+   * Serialises the sketch, e.g. to store it next to an aggregate.
+   *
+   * @return content of the sketch
+   * @see #fromBytes(byte[])
+   */
+  public byte[] toBytes() {
+    int items = 0;
+    for (int size : sizes) items += size;
+    ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES * (2 + levels.length) + Long.BYTES
+        + Double.BYTES * (2 + items));
+    buffer.putInt(k).putLong(count).putDouble(min).putDouble(max).putInt(levels.length);
+    for (int h = 0; h < levels.length; h++) {
+      buffer.putInt(sizes[h]);
+      for (int i = 0; i < sizes[h]; i++) buffer.putDouble(levels[h][i]);
+    }
+    return buffer.array();
+  }
+
+  /**
+   * Rebuilds a sketch serialised by {@link #toBytes()}.
+   *
+   * @param bytes content of the sketch
+   * @return the sketch
+   */
+  public static QuantileSketch fromBytes(byte[] bytes) {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    QuantileSketch sketch = new QuantileSketch(buffer.getInt());
+    sketch.count = buffer.getLong();
+    sketch.min = buffer.getDouble();
+    sketch.max = buffer.getDouble();
+    int levelCount = buffer.getInt();
+    sketch.levels = new double[levelCount][];
+    sketch.sizes = new int[levelCount];
+    for (int h = 0; h < levelCount; h++) {
+      int size = buffer.getInt();
+      sketch.levels[h] = new double[Math.max(size, 1)];
+      sketch.sizes[h] = size;
+      for (int i = 0; i < size; i++) sketch.levels[h][i] = buffer.getDouble();
+    }
+    return sketch;
+  }
+
+  /**
+   * @return capacity of a level with the current number of levels
+   */
+  private int capacity(int level) {
+    int depth = levels.length - level - 1;
+    return Math.max(MIN_LEVEL_CAPACITY, (int) Math.ceil(k * Math.pow(CAPACITY_DECAY, depth)));
+  }
+
+  private void append(int level, double value) {
+    if (level >= levels.length) {
+      levels = Arrays.copyOf(levels, level + 1);
+      sizes = Arrays.copyOf(sizes, level + 1);
+      for (int h = 0; h <= level; h++) {
+        if (levels[h] == null) levels[h] = new double[INITIAL_LEVEL_CAPACITY];
+      }
+    }
+    if (sizes[level] == levels[level].length) {
+      levels[level] = Arrays.copyOf(levels[level], sizes[level] * 2);
+    }
+    levels[level][sizes[level]++] = value;
+  }
+
+  /**
+   * Compacts the lowest full level until every level is within its capacity.
+   */
+  private void compress() {
+    boolean compacted = true;
+    while (compacted) {
+      compacted = false;
+      for (int h = 0; h < levels.length; h++) {
+        if (sizes[h] >= capacity(h)) {
+          compact(h);
+          compacted = true;
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * Promotes every other item of a level to the next one; with an odd number
+   * of items the largest one stays in the level.
+   */
+  private void compact(int level) {
+    int size = sizes[level];
+    double[] items = levels[level];
+    Arrays.sort(items, 0, size);
+    int paired = size & ~1;
+    int offset = ThreadLocalRandom.current().nextBoolean() ? 1 : 0;
+    for (int i = offset; i < paired; i += 2) {
+      append(level + 1, items[i]);
+    }
+    // append può aver riallocato i livelli, ma non l'array di questo livello
+    if ((size & 1) == 1) items[0] = items[size - 1];
+    sizes[level] = size & 1;
+  }
+
+}
@@ -0,0 +1,40 @@
+package com.weather.report.model.entities;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/// Entry of the dictionary that maps the code of a network, gateway or sensor to the
+/// compact integer key stored in the [Measurement] rows in its place.
+/// 
+/// Entries are only added, never changed or removed.
+@Entity
+@Table(name = "element_code")
+public class ElementCode {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Integer id;
+  @Column(nullable = false, unique = true)
+  private String code;
+
+  public ElementCode() { // JPA Compliance
+  }
+
+  public ElementCode(String code) {
+    this.code = code;
+  }
+
+  /// Integer key of the code
+  public Integer getId() {
+    return this.id;
+  }
+
+  /// Code of the network, gateway or sensor
+  public String getCode() {
+    return this.code;
+  }
+}
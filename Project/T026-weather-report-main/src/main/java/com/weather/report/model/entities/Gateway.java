@@ -10,6 +10,10 @@ import java.util.Optional;
 import com.weather.report.exceptions.InvalidInputDataException;
 import com.weather.report.model.Timestamped;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Entity;
 import jakarta.persistence.FetchType;
@@ -21,6 +25,8 @@ import jakarta.persistence.OneToMany;
 /// A _gateway_ groups multiple devices that monitor the same physical quantity.  
 /// 
 /// It can be configured through parameters that provide information about its state or values needed for interpreting the measurements.
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Entity
 public class Gateway extends Timestamped {
   @Id
@@ -31,12 +37,14 @@ public class Gateway extends Timestamped {
 
   //tutti i salvataggi applicati al gateway sono applicati anche ai parametri -> cascade
   //quando carico un gateway, carica anche tutti i suoi parametri figli -> fetch
+  @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
   @OneToMany(cascade = CascadeType.ALL, fetch = FetchType.EAGER, orphanRemoval = true)
   @JoinColumn(name = "gateway_code") //inserisce colonna di riferimento a gateway per sapere a chi si riferiscono i parametri
   private Collection<Parameter> parameters = new ArrayList<>();
 
   @ManyToOne (fetch = FetchType.EAGER)
   private Network network;
+  @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
   @OneToMany(fetch = FetchType.EAGER, mappedBy = "gateway")
   private List<Sensor> sensors = new ArrayList<>();
 
@@ -2,26 +2,58 @@ package com.weather.report.model.entities;
 
 import java.time.LocalDateTime;
 
+import com.weather.report.persistence.ElementCodeConverter;
+
 import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
 
 /// Represnts a measurement taken by a sensor in the weather report system
+/// 
+/// Reports always read measurements by element code and time interval, so each code
+/// is indexed together with the timestamp.
+/// 
+/// Codes are stored as integer keys of the [ElementCode] dictionary, which keeps rows
+/// and indexes small and turns code filters into integer comparisons; the entity and
+/// the queries still use the codes.
+/// 
+/// Each row also records its time partition, the month of its timestamp, so that old
+/// data can be compacted and dropped one month at a time.
 @Entity
+@Table(indexes = {
+  @Index(name = "idx_measurement_sensor_ts", columnList = "sensor_id, measurement_timestamp"),
+  @Index(name = "idx_measurement_gateway_ts", columnList = "gateway_id, measurement_timestamp"),
+  @Index(name = "idx_measurement_network_ts", columnList = "network_id, measurement_timestamp"),
+  @Index(name = "idx_measurement_partition", columnList = "partition_month")
+})
 public class Measurement {
 
+  // ids come from a pooled sequence (not IDENTITY) so that Hibernate can batch the inserts
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "measurement_seq")
+  @SequenceGenerator(name = "measurement_seq", sequenceName = "measurement_seq", allocationSize = 500)
   private Long id;
+  @Convert(converter = ElementCodeConverter.class)
+  @Column(name = "sensor_id")
   private String sensorCode;
+  @Convert(converter = ElementCodeConverter.class)
+  @Column(name = "gateway_id")
   private String gatewayCode;
+  @Convert(converter = ElementCodeConverter.class)
+  @Column(name = "network_id")
   private String networkCode;
   @Column(name = "measurement_value")
   private double value;
   @Column(name = "measurement_timestamp")
   private LocalDateTime timestamp;
+  @Column(name = "partition_month")
+  private int partition;
 
   public Measurement() { // JPA Compliance
   }
@@ -32,6 +64,18 @@ public class Measurement {
     this.sensorCode = sensorCode;
     this.value = value;
     this.timestamp = timestamp;
+    this.partition = timestamp == null ? 0 : partitionOf(timestamp);
+  }
+
+  /// Rebuilds a stored measurement from its id and content, e.g. from a column copy of the table
+  public Measurement(Long id, String networkCode, String gatewayCode, String sensorCode, double value, LocalDateTime timestamp) {
+    this(networkCode, gatewayCode, sensorCode, value, timestamp);
+    this.id = id;
+  }
+
+  /// Time partition of a timestamp: its year and month as `yyyyMM`, e.g. `202511`
+  public static int partitionOf(LocalDateTime timestamp) {
+    return timestamp.getYear() * 100 + timestamp.getMonthValue();
   }
 
   /// Id of the measurement
@@ -63,4 +107,9 @@ public class Measurement {
   public LocalDateTime getTimestamp() {
     return this.timestamp;
   }
+
+  /// Time partition of the measurement (see [#partitionOf(LocalDateTime)])
+  public int getPartition() {
+    return this.partition;
+  }
 }
@@ -0,0 +1,152 @@
+package com.weather.report.model.entities;
+
+import java.time.LocalDateTime;
+
+import com.weather.report.persistence.ElementCodeConverter;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Lob;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+
+/// Hourly aggregate of the measurements of a sensor, left in place of the raw
+/// [Measurement] rows when they are compacted.
+/// 
+/// It keeps what the hourly rollups of the reports need: number of points, mean, sum of
+/// squared differences from the mean, minimum and maximum value, first and last
+/// timestamp, and the serialised [com.weather.report.model.QuantileSketch] of the values. Aggregates of the same hour (e.g. of late measurements compacted later)
+/// are merged when read.
+///
+/// The sketch is reduced to at most [#SKETCH_ITEMS] items, so an aggregate takes a bounded space
+/// (a few hundred bytes) whatever the number of points of its hour. This adds to the quantiles of
+/// the hour a rank error below about `2 / SKETCH_ITEMS` (6.25%) of its points, with random sign:
+/// quantiles over many compacted hours stay within the error bound of the merged sketch.
+@Entity
+@Table(name = "measurement_aggregate", indexes = {
+  @Index(name = "idx_aggregate_sensor_hour", columnList = "sensor_id, hour_start"),
+  @Index(name = "idx_aggregate_gateway_hour", columnList = "gateway_id, hour_start"),
+  @Index(name = "idx_aggregate_network_hour", columnList = "network_id, hour_start"),
+  @Index(name = "idx_aggregate_partition", columnList = "partition_month")
+})
+public class MeasurementAggregate {
+
+  /// Maximum number of items of the stored sketch, see [com.weather.report.model.QuantileSketch#compactedTo(int)]
+  public static final int SKETCH_ITEMS = 32;
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "measurement_aggregate_seq")
+  @SequenceGenerator(name = "measurement_aggregate_seq", sequenceName = "measurement_aggregate_seq", allocationSize = 500)
+  private Long id;
+  @Convert(converter = ElementCodeConverter.class)
+  @Column(name = "sensor_id")
+  private String sensorCode;
+  @Convert(converter = ElementCodeConverter.class)
+  @Column(name = "gateway_id")
+  private String gatewayCode;
+  @Convert(converter = ElementCodeConverter.class)
+  @Column(name = "network_id")
+  private String networkCode;
+  @Column(name = "hour_start")
+  private LocalDateTime hour;
+  @Column(name = "partition_month")
+  private int partition;
+  @Column(name = "point_count")
+  private long count;
+  private double mean;
+  private double squaredDeviation;
+  private double minimum;
+  private double maximum;
+  private LocalDateTime firstTimestamp;
+  private LocalDateTime lastTimestamp;
+  @Lob
+  @Column(name = "quantile_sketch")
+  private byte[] sketch;
+
+  public MeasurementAggregate() { // JPA Compliance
+  }
+
+  public MeasurementAggregate(String networkCode, String gatewayCode, String sensorCode, LocalDateTime hour,
+      long count, double mean, double squaredDeviation, double minimum, double maximum, LocalDateTime firstTimestamp,
+      LocalDateTime lastTimestamp, byte[] sketch) {
+    this.networkCode = networkCode;
+    this.gatewayCode = gatewayCode;
+    this.sensorCode = sensorCode;
+    this.hour = hour;
+    this.partition = Measurement.partitionOf(hour);
+    this.count = count;
+    this.mean = mean;
+    this.squaredDeviation = squaredDeviation;
+    this.minimum = minimum;
+    this.maximum = maximum;
+    this.firstTimestamp = firstTimestamp;
+    this.lastTimestamp = lastTimestamp;
+    this.sketch = sketch;
+  }
+
+  public Long getId() {
+    return this.id;
+  }
+
+  public String getNetworkCode() {
+    return this.networkCode;
+  }
+
+  public String getGatewayCode() {
+    return this.gatewayCode;
+  }
+
+  public String getSensorCode() {
+    return this.sensorCode;
+  }
+
+  /// Start of the hour
+  public LocalDateTime getHour() {
+    return this.hour;
+  }
+
+  /// Time partition of the hour (see [Measurement#partitionOf(LocalDateTime)])
+  public int getPartition() {
+    return this.partition;
+  }
+
+  /// Number of compacted measurements
+  public long getCount() {
+    return this.count;
+  }
+
+  public double getMean() {
+    return this.mean;
+  }
+
+  /// Sum of the squared differences of the values from the mean
+  public double getSquaredDeviation() {
+    return this.squaredDeviation;
+  }
+
+  public double getMinimum() {
+    return this.minimum;
+  }
+
+  public double getMaximum() {
+    return this.maximum;
+  }
+
+  public LocalDateTime getFirstTimestamp() {
+    return this.firstTimestamp;
+  }
+
+  public LocalDateTime getLastTimestamp() {
+    return this.lastTimestamp;
+  }
+
+  /// Serialised quantile sketch of the values, `null` for aggregates compacted without one
+  public byte[] getSketch() {
+    return this.sketch;
+  }
+}
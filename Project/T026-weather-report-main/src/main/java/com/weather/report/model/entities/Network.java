@@ -8,6 +8,10 @@ import java.util.Optional;
 import com.weather.report.exceptions.InvalidInputDataException;
 import com.weather.report.model.Timestamped;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Entity;
 import jakarta.persistence.FetchType;
 import jakarta.persistence.Id;
@@ -17,14 +21,18 @@ import jakarta.persistence.OneToMany;
 /// A _monitoring network_ that represents a logical set of system elements.
 /// 
 /// It may have a list of _operators_ responsible for receiving notifications.
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Entity
 public class Network extends Timestamped {
   @Id
   private String code; // NET_ {where _ represents a 2 digits number}
   private String name;
   private String description;
+  @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
   @ManyToMany (fetch = FetchType.EAGER)
   private Collection<Operator> operators = new ArrayList<Operator>();
+  @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
   @OneToMany (fetch = FetchType.EAGER, mappedBy = "network")
   private Collection<Gateway> gateways = new ArrayList<Gateway>();
   
@@ -3,6 +3,10 @@ package com.weather.report.model.entities;
 import java.util.ArrayList;
 import java.util.Collection;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.FetchType;
@@ -11,6 +15,8 @@ import jakarta.persistence.ManyToMany;
 import jakarta.persistence.OneToOne;
 
 /// An _operator_ is an entity that receives notifications when a threshold violation is detected.  
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Entity
 public class Operator{
   @Id
@@ -19,6 +25,7 @@ public class Operator{
   private String lastname;
   @Column (nullable = true)
   private String phoneNumber;
+  @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
   @ManyToMany (fetch = FetchType.EAGER, mappedBy = "operators")
   private Collection<Network> networks = new ArrayList<Network>();
   @OneToOne (fetch = FetchType.LAZY)
@@ -1,5 +1,9 @@
 package com.weather.report.model.entities;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
@@ -9,6 +13,8 @@ import jakarta.persistence.Id;
 /// A _parameter_ is a value associated with the gateway it belongs to.
 /// 
 /// It allows storing state or configuration information.
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Entity
 public class Parameter {
 
@@ -5,6 +5,10 @@ import java.util.Objects;
 
 import com.weather.report.model.Timestamped;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Entity;
 import jakarta.persistence.FetchType;
@@ -15,6 +19,8 @@ import jakarta.persistence.ManyToOne;
 /// 
 /// A sensor may have a _threshold_ defined by the user to detect anomalous behaviours.
 /// 
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Entity
 public class Sensor extends Timestamped {
 
@@ -3,6 +3,10 @@ package com.weather.report.model.entities;
 
 import com.weather.report.model.ThresholdType;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.EnumType;
@@ -16,6 +20,8 @@ import jakarta.persistence.Id;
 /// 
 /// It **always** consists of a numeric value and a 
 /// [ThresholdType][com.weather.report.model.ThresholdType] that the system must apply to decide whether a measurement is anomalous.
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Entity
 public class Threshold {
   @Id
@@ -51,4 +57,4 @@ public class Threshold {
   }
 
   
-}
\ No newline at end of file
+}
\ No newline at end of file
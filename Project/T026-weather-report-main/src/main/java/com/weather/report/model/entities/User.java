@@ -2,11 +2,17 @@ package com.weather.report.model.entities;
 
 import com.weather.report.model.UserType;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Enumerated;
 import jakarta.persistence.Id;
 
 /// Represents a user in the weather report system
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Entity(name = "WR_USER")
 public class User {
 
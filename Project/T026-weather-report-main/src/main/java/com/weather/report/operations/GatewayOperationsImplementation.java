@@ -3,22 +3,23 @@ package com.weather.report.operations;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.List;
 import java.util.Objects;
 
 import com.weather.report.exceptions.ElementNotFoundException;
 import com.weather.report.exceptions.IdAlreadyInUseException;
 import com.weather.report.exceptions.InvalidInputDataException;
 import com.weather.report.exceptions.UnauthorizedException;
+import com.weather.report.model.MeasurementColumns;
 import com.weather.report.model.entities.Gateway;
-import com.weather.report.model.entities.Measurement;
 import com.weather.report.model.entities.Parameter;
 import com.weather.report.reports.GatewayReport;
 import com.weather.report.reports.GatewayReportImplementation;
+import com.weather.report.reports.ReportCache;
 import com.weather.report.repositories.GatewayRepository;
 import com.weather.report.repositories.MeasurementRepository;
 import com.weather.report.repositories.UserRepository;
 import com.weather.report.services.AlertingService;
+import com.weather.report.services.ThresholdIndex;
 import com.weather.report.utils.LocalDateTimeUtils;
 
 public class GatewayOperationsImplementation implements GatewayOperations{
@@ -70,6 +71,8 @@ public class GatewayOperationsImplementation implements GatewayOperations{
 
         // elimino Gateway esistente
         gatewayRepository.delete(code);
+        ThresholdIndex.invalidate();
+        ReportCache.GATEWAY_REPORTS.invalidate(code);
         AlertingService.notifyDeletion(username, code, Gateway.class);
 
         return gateway;
@@ -100,6 +103,7 @@ public class GatewayOperationsImplementation implements GatewayOperations{
        
 
         gatewayRepository.update(gateway);
+        ReportCache.GATEWAY_REPORTS.invalidate(gatewayCode);
         return parameter;
     }
 
@@ -121,6 +125,7 @@ public class GatewayOperationsImplementation implements GatewayOperations{
         
 
         gatewayRepository.update(gateway);
+        ReportCache.GATEWAY_REPORTS.invalidate(gatewayCode);
         return parameter;
     }
 
@@ -132,8 +137,10 @@ public class GatewayOperationsImplementation implements GatewayOperations{
         LocalDateTime endLocalDate = LocalDateTimeUtils.parseLocalDateTime(endDate, LocalDateTime.MAX);
         if (startLocalDate.isAfter(endLocalDate)) throw new InvalidInputDataException("endDate must be after startDate");
 
-        List<Measurement> measurements = getFilteredMeasurements(code, startLocalDate, endLocalDate);
-        return new GatewayReportImplementation(gateway, startDate, endDate, measurements);
+        // il report in cache è valido finché non arrivano nuove misure del gateway o cambiano i suoi parametri
+        long watermark = measurementRepository.getGatewayWatermark(code);
+        return ReportCache.GATEWAY_REPORTS.get(code, startDate, endDate, watermark, () -> new GatewayReportImplementation(gateway, startDate, endDate,
+                getFilteredMeasurements(code, startLocalDate, endLocalDate)));
     }
 
     /**
@@ -141,14 +148,11 @@ public class GatewayOperationsImplementation implements GatewayOperations{
      * @param gatewayCode the code of the gateway
      * @param startDate the start date
      * @param endDate the end date
-     * @return a list of gateway measurements between startDate and endDate
+     * @return the gateway measurements between startDate and endDate
      */
-    private List<Measurement> getFilteredMeasurements(String gatewayCode, LocalDateTime startDate, LocalDateTime endDate) {
-        return measurementRepository.read().stream()
-                .filter(m -> m.getGatewayCode().equals(gatewayCode)) //filtra solo le misurazioni di quel gateway
-                .filter(m -> !m.getTimestamp().isBefore(startDate)) //filtra solo le misurazioni avvenute a partire da [start,..
-                .filter(m -> !m.getTimestamp().isAfter(endDate)) //filtra solo le misurazioni avvenute fino a ...end]
-                .toList();
+    private MeasurementColumns getFilteredMeasurements(String gatewayCode, LocalDateTime startDate, LocalDateTime endDate) {
+        //filtra nel db solo le misurazioni di quel gateway avvenute in [start, end]
+        return measurementRepository.readColumnsByGateway(gatewayCode, startDate, endDate);
     }
 
 }
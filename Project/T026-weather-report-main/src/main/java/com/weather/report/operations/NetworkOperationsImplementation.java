@@ -3,24 +3,26 @@ package com.weather.report.operations;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.List;
 import java.util.Objects;
 
 import com.weather.report.exceptions.ElementNotFoundException;
 import com.weather.report.exceptions.IdAlreadyInUseException;
 import com.weather.report.exceptions.InvalidInputDataException;
 import com.weather.report.exceptions.UnauthorizedException;
+import com.weather.report.model.MeasurementColumns;
+import com.weather.report.model.MeasurementRollups;
 import com.weather.report.model.entities.Network;
 import com.weather.report.model.entities.Operator;
 import com.weather.report.model.entities.User;
-import com.weather.report.model.entities.Measurement;
 import com.weather.report.reports.NetworkReport;
 import com.weather.report.reports.NetworkReportImplementation;
+import com.weather.report.reports.ReportCache;
 import com.weather.report.repositories.NetworkRepository;
 import com.weather.report.repositories.OperatorRepository;
 import com.weather.report.repositories.UserRepository;
 import com.weather.report.repositories.MeasurementRepository;
 import com.weather.report.services.AlertingService;
+import com.weather.report.services.ThresholdIndex;
 import com.weather.report.utils.LocalDateTimeUtils;
 
 public class NetworkOperationsImplementation implements NetworkOperations{
@@ -113,6 +115,7 @@ public class NetworkOperationsImplementation implements NetworkOperations{
         Network output = networkRepository.checkNetwork(code);
         // eliminazione della rete
         output = networkRepository.delete(code);
+        ThresholdIndex.invalidate();
         AlertingService.notifyDeletion(username, code, Network.class);
         return output;
     }
@@ -181,7 +184,9 @@ public class NetworkOperationsImplementation implements NetworkOperations{
         userRepository.checkMaintainer(username);
         // aggiunta operatore
         network.addOperatorToNetwork(operator);
-        return networkRepository.update(network);
+        Network updated = networkRepository.update(network);
+        ThresholdIndex.invalidate();
+        return updated;
     }
 
     /**
@@ -206,11 +211,26 @@ public class NetworkOperationsImplementation implements NetworkOperations{
 
         if (checkedStartDate.isAfter(checkedEndDate)) throw new InvalidInputDataException("endDate must be after startDate");
         
-        // prendo solo misure relative a questa rete e a questo intervallo di tempo
-        List<Measurement> measurementsOfNetworkInInterval = measurementRepository.read().stream()
-                .filter(m -> m.getNetworkCode().equals(network.getCode()))
-                .filter(m -> !m.getTimestamp().isBefore(checkedStartDate))
-                .filter(m -> !m.getTimestamp().isAfter(checkedEndDate)).toList();
+        // il report in cache è valido finché non arrivano nuove misure della rete
+        long watermark = measurementRepository.getNetworkWatermark(network.getCode());
+        return ReportCache.NETWORK_REPORTS.get(code, startDate, endDate, watermark,
+                () -> computeNetworkReport(code, network, startDate, endDate, checkedStartDate, checkedEndDate));
+    }
+
+    /**
+     * Computes the report of a network from the hourly rollups when the start
+     * date is on the hour, otherwise from the measurements. The choice is made
+     * before reading, so the interval is read only once.
+     */
+    private NetworkReport computeNetworkReport(String code, Network network, String startDate, String endDate,
+            LocalDateTime checkedStartDate, LocalDateTime checkedEndDate) throws InvalidInputDataException {
+        // se i bucket dell'istogramma iniziano allo scoccare dell'ora bastano gli aggregati orari
+        if (NetworkReportImplementation.hasHourAlignedBuckets(startDate)) {
+            MeasurementRollups rollupsOfNetworkInInterval = measurementRepository.readRollupsByNetwork(network.getCode(), checkedStartDate, checkedEndDate, false);
+            return new NetworkReportImplementation(code, startDate, endDate, rollupsOfNetworkInInterval);
+        }
+        // altrimenti prendo le misure relative a questa rete e a questo intervallo di tempo
+        MeasurementColumns measurementsOfNetworkInInterval = measurementRepository.readColumnsByNetwork(network.getCode(), checkedStartDate, checkedEndDate);
         return new NetworkReportImplementation(code, startDate, endDate, measurementsOfNetworkInInterval);
     }
 
@@ -1,6 +1,7 @@
 package com.weather.report.operations;
 
 import java.util.Collection;
+import java.util.Map;
 
 import com.weather.report.exceptions.ElementNotFoundException;
 import com.weather.report.exceptions.IdAlreadyInUseException;
@@ -124,4 +125,42 @@ public interface SensorOperations {
    */
   public SensorReport getSensorReport(String code, String startDate, String endDate)
       throws InvalidInputDataException, ElementNotFoundException;
+
+  /**
+   * Builds the same report as {@link #getSensorReport(String, String, String)}
+   * reading the measurements from the database with a cursor, a fixed number
+   * of rows at a time, so that memory use does not grow with the interval.
+   * Compacted measurements are read apart, as hourly aggregates, and counted
+   * as in {@link #getSensorReport(String, String, String)}. All the reads of
+   * the report see the same snapshot of the database, so measurements stored
+   * meanwhile do not make its scans disagree.
+   *
+   * @param code      sensor code (mandatory)
+   * @param startDate inclusive lower bound in {@code WeatherReport.DATE_FORMAT}
+   *                  (null for no bound)
+   * @param endDate   inclusive upper bound in {@code WeatherReport.DATE_FORMAT}
+   *                  (null for no bound)
+   * @return computed sensor report
+   * @throws InvalidInputDataException when manadtory data are invalid
+   * @throws ElementNotFoundException  when the sensor does not exist
+   */
+  public SensorReport getSensorReportStreaming(String code, String startDate, String endDate)
+      throws InvalidInputDataException, ElementNotFoundException;
+
+  /**
+   * Builds the reports of several sensors in the same interval, e.g. all the
+   * sensors of a gateway. The sensors are checked and their measurements read
+   * all together, and the reports are computed in parallel.
+   *
+   * @param codes     sensor codes (mandatory); duplicates are ignored
+   * @param startDate inclusive lower bound in {@code WeatherReport.DATE_FORMAT}
+   *                  (null for no bound)
+   * @param endDate   inclusive upper bound in {@code WeatherReport.DATE_FORMAT}
+   *                  (null for no bound)
+   * @return report of each sensor, in the order of {@code codes}
+   * @throws InvalidInputDataException when manadtory data are invalid
+   * @throws ElementNotFoundException  when a sensor does not exist
+   */
+  public Map<String, SensorReport> getSensorReports(Collection<String> codes, String startDate, String endDate)
+      throws InvalidInputDataException, ElementNotFoundException;
 }
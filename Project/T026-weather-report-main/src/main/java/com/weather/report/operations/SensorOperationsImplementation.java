@@ -1,25 +1,38 @@
 package com.weather.report.operations;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import com.weather.report.exceptions.ElementNotFoundException;
 import com.weather.report.exceptions.IdAlreadyInUseException;
 import com.weather.report.exceptions.InvalidInputDataException;
 import com.weather.report.exceptions.UnauthorizedException;
+import com.weather.report.model.MeasurementColumns;
 import com.weather.report.model.ThresholdType;
 import com.weather.report.model.entities.*;
+import com.weather.report.persistence.PersistenceManager;
+import com.weather.report.persistence.UnitOfWork;
 
 import com.weather.report.reports.SensorReport;
+import com.weather.report.reports.ReportCache;
 import com.weather.report.reports.SensorReportImplementation;
 import com.weather.report.repositories.MeasurementRepository;
+import com.weather.report.repositories.MeasurementSnapshot;
 import com.weather.report.repositories.SensorRepository;
 import com.weather.report.repositories.ThresholdRepository;
 import com.weather.report.repositories.UserRepository;
 import com.weather.report.services.AlertingService;
+import com.weather.report.services.ThresholdIndex;
 import com.weather.report.utils.LocalDateTimeUtils;
 
 public class SensorOperationsImplementation implements SensorOperations{
@@ -77,6 +90,7 @@ public class SensorOperationsImplementation implements SensorOperations{
         sensorRepository.checkSensor(code);
         userRepository.checkMaintainer(username);
         Sensor s = sensorRepository.delete(code);
+        ThresholdIndex.invalidate();
         AlertingService.notifyDeletion(username, code, Sensor.class);
         return s;
     }
@@ -112,9 +126,14 @@ public class SensorOperationsImplementation implements SensorOperations{
         if (s.getThreshold() != null) throw new IdAlreadyInUseException("This sensor already has a threshold defined");
         Threshold t = new Threshold(value, type);
 
-        thresholdRepository.create(t);
-        s.setThreshold(t);
-        sensorRepository.update(s);
+        // soglia e sensore vengono salvati insieme: niente soglie orfane
+        try (UnitOfWork unitOfWork = PersistenceManager.beginUnitOfWork()) {
+            thresholdRepository.create(t);
+            s.setThreshold(t);
+            sensorRepository.update(s);
+            unitOfWork.commit();
+        }
+        ThresholdIndex.invalidate();
 
         return t;
 }
@@ -129,6 +148,7 @@ public class SensorOperationsImplementation implements SensorOperations{
         if(type!=null) t.setType(type);
         t.setValue(value);
         thresholdRepository.update(t);
+        ThresholdIndex.invalidate();
         return t;
     }
 
@@ -137,21 +157,87 @@ public class SensorOperationsImplementation implements SensorOperations{
             throws InvalidInputDataException, ElementNotFoundException {
                 
         Sensor s = sensorRepository.checkSensor(code);     
-        List<Measurement> sMeasurements = (List<Measurement>) filterMeasurement(startDate, endDate, s);
+        LocalDateTime startLocalDate = LocalDateTimeUtils.parseLocalDateTime(startDate, LocalDateTime.MIN);
+        LocalDateTime endLocalDate = LocalDateTimeUtils.parseLocalDateTime(endDate, LocalDateTime.MAX);
+        if (startLocalDate.isAfter(endLocalDate)) throw new InvalidInputDataException("endDate must be after startDate");
 
-        return new SensorReportImplementation(code, startDate, endDate, sMeasurements);
+        // il report in cache è valido finché non arrivano nuove misure del sensore
+        long watermark = measurementRepository.getSensorWatermark(s.getCode());
+        return ReportCache.SENSOR_REPORTS.get(code, startDate, endDate, watermark, () -> new SensorReportImplementation(code, startDate, endDate,
+                measurementRepository.readColumnsBySensor(s.getCode(), startLocalDate, endLocalDate)));
     }
 
-    private Collection<Measurement> filterMeasurement(String startDate, String endDate, Sensor s) throws InvalidInputDataException{
+    @Override
+    public SensorReport getSensorReportStreaming(String code, String startDate, String endDate)
+            throws InvalidInputDataException, ElementNotFoundException {
+
+        Sensor s = sensorRepository.checkSensor(code);
         LocalDateTime startLocalDate = LocalDateTimeUtils.parseLocalDateTime(startDate, LocalDateTime.MIN);
         LocalDateTime endLocalDate = LocalDateTimeUtils.parseLocalDateTime(endDate, LocalDateTime.MAX);
         if (startLocalDate.isAfter(endLocalDate)) throw new InvalidInputDataException("endDate must be after startDate");
 
-        return measurementRepository.read().stream()
-                .filter(m -> m.getSensorCode().equals(s.getCode()))
-                .filter(m -> !m.getTimestamp().isBefore(startLocalDate)) 
-                .filter(m -> !m.getTimestamp().isAfter(endLocalDate)) 
-                .toList();
+        // ogni scansione del report apre un nuovo cursore; scansioni e misure compattate vedono lo stesso snapshot
+        try (MeasurementSnapshot snapshot = measurementRepository.openSnapshot()) {
+            return new SensorReportImplementation(code, startDate, endDate, action -> snapshot.scrollBySensor(
+                    s.getCode(), startLocalDate, endLocalDate, MeasurementRepository.DEFAULT_FETCH_SIZE, action),
+                    snapshot.readCompactedBySensor(s.getCode(), startLocalDate, endLocalDate));
+        }
+    }
+
+    @Override
+    public Map<String, SensorReport> getSensorReports(Collection<String> codes, String startDate, String endDate)
+            throws InvalidInputDataException, ElementNotFoundException {
+        if (codes == null) throw new InvalidInputDataException("Mandatory data are missing");
+        List<String> distinctCodes = codes.stream().distinct().toList();
+        sensorRepository.checkSensors(distinctCodes);
+        LocalDateTime startLocalDate = LocalDateTimeUtils.parseLocalDateTime(startDate, LocalDateTime.MIN);
+        LocalDateTime endLocalDate = LocalDateTimeUtils.parseLocalDateTime(endDate, LocalDateTime.MAX);
+        if (startLocalDate.isAfter(endLocalDate)) throw new InvalidInputDataException("endDate must be after startDate");
+
+        // i watermark vanno letti prima delle misure, come per il singolo report;
+        // le misure si leggono solo per i sensori senza report in cache
+        Map<String, SensorReport> reports = new LinkedHashMap<>();
+        Map<String, Long> missing = new LinkedHashMap<>();
+        for (String code : distinctCodes) {
+            long watermark = measurementRepository.getSensorWatermark(code);
+            SensorReport cached = ReportCache.SENSOR_REPORTS.getIfPresent(code, startDate, endDate, watermark);
+            reports.put(code, cached);
+            if (cached == null) missing.put(code, watermark);
+        }
+        if (missing.isEmpty()) return reports;
+        Map<String, MeasurementColumns> columns = measurementRepository.readColumnsBySensors(missing.keySet(), startLocalDate, endLocalDate);
+
+        // un report per task sul pool fork-join comune
+        List<String> computed = new ArrayList<>(missing.keySet());
+        List<Callable<SensorReport>> tasks = new ArrayList<>();
+        for (String code : computed) {
+            long watermark = missing.get(code);
+            tasks.add(() -> ReportCache.SENSOR_REPORTS.get(code, startDate, endDate, watermark,
+                    () -> new SensorReportImplementation(code, startDate, endDate, columns.get(code))));
+        }
+        List<Future<SensorReport>> results = ForkJoinPool.commonPool().invokeAll(tasks);
+
+        for (int i = 0; i < computed.size(); i++) {
+            reports.put(computed.get(i), awaitReport(results.get(i)));
+        }
+        return reports;
+    }
+
+    /**
+     * Waits for a report computed in parallel, rethrowing the exception that
+     * made it fail.
+     */
+    private static SensorReport awaitReport(Future<SensorReport> result) throws InvalidInputDataException {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof InvalidInputDataException cause) throw cause;
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw new IllegalStateException("Report failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Report interrupted", e);
+        }
     }
 
 }
@@ -8,10 +8,13 @@ import com.weather.report.exceptions.UnauthorizedException;
 import com.weather.report.model.entities.Gateway;
 import com.weather.report.model.entities.Network;
 import com.weather.report.model.entities.Sensor;
+import com.weather.report.persistence.PersistenceManager;
+import com.weather.report.persistence.UnitOfWork;
 import com.weather.report.repositories.GatewayRepository;
 import com.weather.report.repositories.NetworkRepository;
 import com.weather.report.repositories.SensorRepository;
 import com.weather.report.repositories.UserRepository;
+import com.weather.report.services.ThresholdIndex;
 
 public class TopologyOperationsImplementation implements TopologyOperations{
 
@@ -61,21 +64,29 @@ public class TopologyOperationsImplementation implements TopologyOperations{
     @Override
     public Network connectGateway(String networkCode, String gatewayCode, String username)
             throws ElementNotFoundException, UnauthorizedException, InvalidInputDataException {
-        Network network = networkRepository.checkNetwork(networkCode);
-        Gateway gateway = gatewayRepository.checkGateway(gatewayCode);
-        userRepository.checkMaintainer(username);
-
-        if (gateway.getNetwork() != null && !gateway.getNetwork().getCode().equals(networkCode)){
-            Network nTemp = gateway.getNetwork();
-            nTemp.removeGateway(gateway);
-            networkRepository.update(nTemp);
+        // controlli e modifiche alle due (o tre) entità nella stessa unit of work:
+        // le entità lette sono gestite e vengono salvate insieme
+        Network updated;
+        try (UnitOfWork unitOfWork = PersistenceManager.beginUnitOfWork()) {
+            Network network = networkRepository.checkNetwork(networkCode);
+            Gateway gateway = gatewayRepository.checkGateway(gatewayCode);
+            userRepository.checkMaintainer(username);
+
+            if (gateway.getNetwork() != null && !gateway.getNetwork().getCode().equals(networkCode)){
+                Network nTemp = gateway.getNetwork();
+                nTemp.removeGateway(gateway);
+                networkRepository.update(nTemp);
+            }
+
+            network.addGateway(gateway);
+            gateway.setNetwork(network);
+
+            gatewayRepository.update(gateway);
+            updated = networkRepository.update(network);
+            unitOfWork.commit();
         }
-
-        network.addGateway(gateway);
-        gateway.setNetwork(network);
-
-        gatewayRepository.update(gateway);
-        return networkRepository.update(network);
+        ThresholdIndex.invalidate();
+        return updated;
     }
 
     /**
@@ -93,17 +104,23 @@ public class TopologyOperationsImplementation implements TopologyOperations{
     @Override
     public Network disconnectGateway(String networkCode, String gatewayCode, String username)
             throws ElementNotFoundException, UnauthorizedException, InvalidInputDataException {
-        Network network = networkRepository.checkNetwork(networkCode);
-        Gateway gateway = gatewayRepository.checkGateway(gatewayCode);
-        userRepository.checkMaintainer(username);
+        Network updated;
+        try (UnitOfWork unitOfWork = PersistenceManager.beginUnitOfWork()) {
+            Network network = networkRepository.checkNetwork(networkCode);
+            Gateway gateway = gatewayRepository.checkGateway(gatewayCode);
+            userRepository.checkMaintainer(username);
 
-        if (gateway.getNetwork() == null || !gateway.getNetwork().getCode().equals(networkCode)) throw new InvalidInputDataException("Il gateway non è connesso a quella rete");
+            if (gateway.getNetwork() == null || !gateway.getNetwork().getCode().equals(networkCode)) throw new InvalidInputDataException("Il gateway non è connesso a quella rete");
 
-        gateway.setNetwork(null);
-        network.removeGateway(gateway);
+            gateway.setNetwork(null);
+            network.removeGateway(gateway);
 
-        gatewayRepository.update(gateway);
-        return networkRepository.update(network);
+            gatewayRepository.update(gateway);
+            updated = networkRepository.update(network);
+            unitOfWork.commit();
+        }
+        ThresholdIndex.invalidate();
+        return updated;
     }
 
     /**
@@ -137,21 +154,29 @@ public class TopologyOperationsImplementation implements TopologyOperations{
     @Override
     public Gateway connectSensor(String sensorCode, String gatewayCode, String username)
             throws ElementNotFoundException, UnauthorizedException, InvalidInputDataException {
-        Sensor s = sensorRepository.checkSensor(sensorCode);
-        Gateway g = gatewayRepository.checkGateway(gatewayCode);
-        userRepository.checkMaintainer(username);
-
-        if (s.getGateway() != null && !s.getGateway().getCode().equals(gatewayCode)){
-            Gateway gTemp = s.getGateway();
-            gTemp.removeSensor(s);
-            gatewayRepository.update(gTemp);
+        // controlli e modifiche alle due (o tre) entità nella stessa unit of work:
+        // le entità lette sono gestite e vengono salvate insieme
+        Gateway updated;
+        try (UnitOfWork unitOfWork = PersistenceManager.beginUnitOfWork()) {
+            Sensor s = sensorRepository.checkSensor(sensorCode);
+            Gateway g = gatewayRepository.checkGateway(gatewayCode);
+            userRepository.checkMaintainer(username);
+
+            if (s.getGateway() != null && !s.getGateway().getCode().equals(gatewayCode)){
+                Gateway gTemp = s.getGateway();
+                gTemp.removeSensor(s);
+                gatewayRepository.update(gTemp);
+            }
+
+            g.addSensor(s);
+            s.setGateway(g);
+
+            sensorRepository.update(s);
+            updated = gatewayRepository.update(g);
+            unitOfWork.commit();
         }
-
-        g.addSensor(s);
-        s.setGateway(g);
-
-        sensorRepository.update(s);
-        return gatewayRepository.update(g);
+        ThresholdIndex.invalidate();
+        return updated;
     }
 
 
@@ -170,17 +195,23 @@ public class TopologyOperationsImplementation implements TopologyOperations{
     @Override
     public Gateway disconnectSensor(String sensorCode, String gatewayCode, String username)
             throws ElementNotFoundException, UnauthorizedException, InvalidInputDataException {
-        Gateway gateway = gatewayRepository.checkGateway(gatewayCode);
-        Sensor sensor = sensorRepository.checkSensor(sensorCode);
-        userRepository.checkMaintainer(username);
+        Gateway updated;
+        try (UnitOfWork unitOfWork = PersistenceManager.beginUnitOfWork()) {
+            Gateway gateway = gatewayRepository.checkGateway(gatewayCode);
+            Sensor sensor = sensorRepository.checkSensor(sensorCode);
+            userRepository.checkMaintainer(username);
 
-        if (sensor.getGateway() == null || !sensor.getGateway().getCode().equals(gatewayCode)) throw new InvalidInputDataException("Il sensore non è connesso a quel gateway");
-        
-        sensor.setGateway(null);
-        gateway.removeSensor(sensor);
+            if (sensor.getGateway() == null || !sensor.getGateway().getCode().equals(gatewayCode)) throw new InvalidInputDataException("Il sensore non è connesso a quel gateway");
+
+            sensor.setGateway(null);
+            gateway.removeSensor(sensor);
 
-        sensorRepository.update(sensor);
-        return gatewayRepository.update(gateway);
+            sensorRepository.update(sensor);
+            updated = gatewayRepository.update(gateway);
+            unitOfWork.commit();
+        }
+        ThresholdIndex.invalidate();
+        return updated;
     }
 
 }
@@ -0,0 +1,135 @@
+package com.weather.report.persistence;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.weather.report.model.entities.ElementCode;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityTransaction;
+
+/**
+ * In-memory copy of the {@link ElementCode} table, which maps the codes of
+ * networks, gateways and sensors to the integer keys stored in the
+ * measurement rows.
+ * <p>
+ * The table is read once and then only looked up: encoding and decoding a
+ * known code are map lookups. A new code is added to the table in its own
+ * transaction, which does not depend on the outcome of the one storing the
+ * measurements: at worst an unused entry is left behind.
+ */
+public final class CodeDictionary {
+
+  private static final Map<String, Integer> ids = new ConcurrentHashMap<>();
+  private static final Map<Integer, String> codes = new ConcurrentHashMap<>();
+  private static volatile boolean loaded;
+
+  static {
+    // il database potrebbe essere stato ricreato: il dizionario va riletto
+    PersistenceManager.addResetListener(CodeDictionary::clear);
+  }
+
+  private CodeDictionary() {
+  }
+
+  /**
+   * Returns the key of a code, adding the code to the dictionary if needed.
+   *
+   * @param code code of a network, gateway or sensor
+   * @return integer key of the code
+   */
+  public static int idOf(String code) {
+    Integer id = ids.get(code);
+    if (id != null) return id;
+    return add(code);
+  }
+
+  /**
+   * Returns the key of a code without adding it.
+   *
+   * @param code code of a network, gateway or sensor
+   * @return integer key of the code, {@code null} if no measurement ever used
+   *         it
+   */
+  public static Integer findId(String code) {
+    Integer id = ids.get(code);
+    if (id != null || loaded) return id;
+    synchronized (CodeDictionary.class) {
+      ensureLoaded();
+    }
+    return ids.get(code);
+  }
+
+  /**
+   * Returns the code of a key.
+   *
+   * @param id integer key
+   * @return code with the given key
+   * @throws IllegalStateException if the key is not in the dictionary
+   */
+  public static String codeOf(int id) {
+    String code = codes.get(id);
+    if (code != null) return code;
+    synchronized (CodeDictionary.class) {
+      // chiave aggiunta da un altro processo
+      reload();
+    }
+    code = codes.get(id);
+    if (code == null) throw new IllegalStateException("Unknown element code key " + id);
+    return code;
+  }
+
+  private static synchronized int add(String code) {
+    ensureLoaded();
+    Integer id = ids.get(code);
+    if (id != null) return id;
+
+    EntityManager em = PersistenceManager.createEntityManager();
+    EntityTransaction tx = em.getTransaction();
+    try {
+      tx.begin();
+      ElementCode entry = new ElementCode(code);
+      em.persist(entry);
+      tx.commit();
+      put(entry.getId(), code);
+      return entry.getId();
+    } catch (RuntimeException e) {
+      if (tx.isActive()) tx.rollback();
+      // il codice potrebbe essere stato aggiunto da un altro processo
+      reload();
+      id = ids.get(code);
+      if (id != null) return id;
+      throw e;
+    } finally {
+      em.close();
+    }
+  }
+
+  private static void ensureLoaded() {
+    if (!loaded) reload();
+  }
+
+  private static void reload() {
+    EntityManager em = PersistenceManager.createEntityManager();
+    try {
+      for (ElementCode entry : em.createQuery("SELECT e FROM ElementCode e", ElementCode.class).getResultList()) {
+        put(entry.getId(), entry.getCode());
+      }
+      loaded = true;
+    } finally {
+      em.close();
+    }
+  }
+
+  private static void put(int id, String code) {
+    codes.put(id, code);
+    ids.put(code, id);
+  }
+
+  private static synchronized void clear() {
+    loaded = false;
+    ids.clear();
+    codes.clear();
+  }
+
+}
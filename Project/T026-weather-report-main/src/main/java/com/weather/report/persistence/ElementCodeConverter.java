@@ -0,0 +1,23 @@
+package com.weather.report.persistence;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Stores the code of a network, gateway or sensor as its integer key in the
+ * {@link CodeDictionary}.
+ */
+@Converter
+public class ElementCodeConverter implements AttributeConverter<String, Integer> {
+
+  @Override
+  public Integer convertToDatabaseColumn(String code) {
+    return code == null ? null : CodeDictionary.idOf(code);
+  }
+
+  @Override
+  public String convertToEntityAttribute(Integer id) {
+    return id == null ? null : CodeDictionary.codeOf(id);
+  }
+
+}
@@ -1,5 +1,20 @@
 package com.weather.report.persistence;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.Persistence;
@@ -7,24 +22,60 @@ import jakarta.persistence.Persistence;
 public class PersistenceManager {
   private static final String TEST_PU_NAME = "weatherReportTestPU";
   private static final String PU_NAME = "weatherReportPU";
+  private static final Logger logger = LogManager.getLogger(PersistenceManager.class);
+
+  /**
+   * System property (or environment variable {@code WEATHER_REPORT_PU})
+   * naming the persistence unit used outside test mode, by default
+   * {@code weatherReportPU}. System properties starting with {@code hibernate.}
+   * or {@code jakarta.persistence.} override the settings of the unit, e.g.
+   * {@code -Djakarta.persistence.jdbc.url=...}.
+   */
+  public static final String PU_PROPERTY = "weatherreport.persistenceUnit";
 
   private static EntityManagerFactory factory;
-  private static String currentPUName = PersistenceManager.PU_NAME;
+  private static String currentPUName = defaultPUName();
 
   private static final ThreadLocal<Boolean> inTransaction = ThreadLocal.withInitial(()->false);
   private static final ThreadLocal<EntityManager> currentManager = ThreadLocal.withInitial(()->null);
+  private static final ThreadLocal<List<Runnable>> afterCommitActions = ThreadLocal.withInitial(ArrayList::new);
+  // cache in memoria da svuotare quando il database viene chiuso o ricreato
+  private static final List<Runnable> resetListeners = new CopyOnWriteArrayList<>();
+
+  /**
+   * Registers an action run whenever the current persistence unit is closed or
+   * switched, so that in-memory copies of database content can be dropped.
+   *
+   * @param listener action to run on reset
+   */
+  public static void addResetListener(Runnable listener) {
+    resetListeners.add(listener);
+  }
 
-  public static void setTestMode() {
+  public static synchronized void setTestMode() {
     if (factory != null && factory.isOpen()) {
-      factory.close();
+      closeFactory();
       factory = null;
     }
     currentPUName = PersistenceManager.TEST_PU_NAME;
+    resetListeners.forEach(Runnable::run);
+  }
+
+  private static String defaultPUName() {
+    String name = System.getProperty(PU_PROPERTY);
+    if (name == null || name.isBlank()) name = System.getenv("WEATHER_REPORT_PU");
+    return (name == null || name.isBlank()) ? PersistenceManager.PU_NAME : name;
   }
 
-  private static EntityManagerFactory getCurrentFactory() {
+  // synchronized: the factory can be requested concurrently by parallel imports
+  private static synchronized EntityManagerFactory getCurrentFactory() {
     if (factory == null || !factory.isOpen()) {
-      factory = Persistence.createEntityManagerFactory(currentPUName);
+      Map<String, Object> overrides = new HashMap<>();
+      System.getProperties().forEach((key, value) -> {
+        String name = key.toString();
+        if (name.startsWith("hibernate.") || name.startsWith("jakarta.persistence.")) overrides.put(name, value);
+      });
+      factory = Persistence.createEntityManagerFactory(currentPUName, overrides);
     }
     return factory;
   }
@@ -32,13 +83,83 @@ public class PersistenceManager {
   public static EntityManager getEntityManager() {
     EntityManager currentEm = currentManager.get();
     if(currentEm == null || !currentEm.isOpen()){
-      IO.println("*** new EntityManager");
+      logger.debug("New EntityManager on thread {}", Thread.currentThread().getName());
       currentEm = getCurrentFactory().createEntityManager();
       currentManager.set(currentEm);
     }
     return currentEm;
   }
 
+  /**
+   * @return a new {@link EntityManager} not bound to the current thread nor to
+   *         its unit of work, to be closed by the caller
+   */
+  static EntityManager createEntityManager() {
+    return getCurrentFactory().createEntityManager();
+  }
+
+  /**
+   * @return a new {@link StatelessSession}, which does not keep the entities
+   *         it reads, to be closed by the caller
+   */
+  public static StatelessSession openStatelessSession() {
+    return getCurrentFactory().unwrap(SessionFactory.class).openStatelessSession();
+  }
+
+  /**
+   * Begins a unit of work on the current thread, or joins the active one (see
+   * {@link UnitOfWork}). Until the outermost unit ends, every
+   * {@link #getEntityManager()} returns the same {@link EntityManager}, whose
+   * transaction is already active, and {@link #closeEntityManager()} leaves it
+   * open.
+   *
+   * @return the unit of work, to be closed by the caller
+   */
+  public static UnitOfWork beginUnitOfWork() {
+    if (inTransaction.get()) return new UnitOfWork(null);
+    EntityManager em = getEntityManager();
+    try {
+      em.getTransaction().begin();
+    } catch (RuntimeException e) {
+      closeEntityManager();
+      throw e;
+    }
+    inTransaction.set(true);
+    return new UnitOfWork(em);
+  }
+
+  /**
+   * @return {@code true} if the current thread is inside a unit of work
+   */
+  public static boolean isInUnitOfWork() {
+    return inTransaction.get();
+  }
+
+  /**
+   * Runs an action once the changes made so far are committed: at the commit
+   * of the current unit of work (and never if it is rolled back), or
+   * immediately outside a unit of work. Used to keep in-memory copies of the
+   * database in line with what other threads can read.
+   *
+   * @param action action to run
+   */
+  public static void afterCommit(Runnable action) {
+    if (inTransaction.get()) afterCommitActions.get().add(action);
+    else action.run();
+  }
+
+  static void runAfterCommitActions() {
+    List<Runnable> actions = afterCommitActions.get();
+    afterCommitActions.remove();
+    actions.forEach(Runnable::run);
+  }
+
+  static void endUnitOfWork() {
+    afterCommitActions.remove();
+    inTransaction.set(false);
+    closeEntityManager();
+  }
+
   public static void closeEntityManager(){
     EntityManager currentEm = currentManager.get();
     if(currentEm!=null && currentEm.isOpen() && !inTransaction.get()){
@@ -47,9 +168,43 @@ public class PersistenceManager {
     }
   }
 
-  public static void close() {
+  public static synchronized void close() {
     if (factory != null && factory.isOpen()) {
-      factory.close();
+      closeFactory();
     }
+    resetListeners.forEach(Runnable::run);
+  }
+
+  // la cache di secondo livello è in-process e non deve sopravvivere al database
+  private static void closeFactory() {
+    factory.getCache().evictAll();
+    factory.close();
+  }
+
+  /**
+   * Returns the hit ratio of each second-level cache region of the current
+   * persistence unit (one per cached entity and collection, named after it)
+   * and of the query cache, under the key {@code "query"}. Regions never
+   * looked up are left out.
+   * <p>
+   * Hibernate counts hits only when {@code hibernate.generate_statistics} is
+   * enabled: it is in test mode, otherwise it can be turned on with
+   * {@code -Dhibernate.generate_statistics=true}.
+   *
+   * @return hit ratio, between 0 and 1, of each region
+   */
+  public static SortedMap<String, Double> getCacheHitRatios() {
+    Statistics statistics = getCurrentFactory().unwrap(SessionFactory.class).getStatistics();
+    SortedMap<String, Double> ratios = new TreeMap<>();
+    for (String region : statistics.getSecondLevelCacheRegionNames()) {
+      CacheRegionStatistics regionStatistics = statistics.getCacheRegionStatistics(region);
+      if (regionStatistics != null) putHitRatio(ratios, region, regionStatistics.getHitCount(), regionStatistics.getMissCount());
+    }
+    putHitRatio(ratios, "query", statistics.getQueryCacheHitCount(), statistics.getQueryCacheMissCount());
+    return ratios;
+  }
+
+  private static void putHitRatio(Map<String, Double> ratios, String name, long hits, long misses) {
+    if (hits + misses > 0) ratios.put(name, (double) hits / (hits + misses));
   }
 }
@@ -0,0 +1,67 @@
+package com.weather.report.persistence;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityTransaction;
+
+/**
+ * Scope in which all the repository calls of the current thread share one
+ * {@link EntityManager} and one transaction, obtained with
+ * {@link PersistenceManager#beginUnitOfWork()} and used in a
+ * try-with-resources block:
+ *
+ * <pre>
+ * try (UnitOfWork unitOfWork = PersistenceManager.beginUnitOfWork()) {
+ *   ... repository calls ...
+ *   unitOfWork.commit();
+ * }
+ * </pre>
+ *
+ * A unit of work begun while another one is active joins it: its
+ * {@link #commit()} and {@link #close()} do nothing and the outer unit decides
+ * the outcome. Closing the outermost unit without committing it rolls back
+ * every change made in its scope.
+ */
+public final class UnitOfWork implements AutoCloseable {
+
+  // null se la unit of work si è unita a una già attiva
+  private final EntityManager entityManager;
+  private boolean committed;
+
+  UnitOfWork(EntityManager entityManager) {
+    this.entityManager = entityManager;
+  }
+
+  /**
+   * @return {@code true} if this unit joined one that was already active
+   */
+  public boolean isJoined() {
+    return entityManager == null;
+  }
+
+  /**
+   * Commits the transaction of the outermost unit and then runs the actions
+   * registered with {@link PersistenceManager#afterCommit(Runnable)}.
+   */
+  public void commit() {
+    if (entityManager == null || committed) return;
+    entityManager.getTransaction().commit();
+    committed = true;
+    PersistenceManager.runAfterCommitActions();
+  }
+
+  /**
+   * Ends the outermost unit, rolling it back if it was not committed, and
+   * closes its {@link EntityManager}.
+   */
+  @Override
+  public void close() {
+    if (entityManager == null) return;
+    try {
+      EntityTransaction transaction = entityManager.getTransaction();
+      if (!committed && transaction.isActive()) transaction.rollback();
+    } finally {
+      PersistenceManager.endUnitOfWork();
+    }
+  }
+
+}
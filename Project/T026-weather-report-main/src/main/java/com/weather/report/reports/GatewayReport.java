@@ -124,4 +124,34 @@ public interface GatewayReport extends Report<Duration> {
   @Override
   public SortedMap<Range<Duration>, Long> getHistogram();
 
+  /**
+   * Median of the inter-arrival times between consecutive measurements of this
+   * gateway within the requested interval (see {@link #getHistogram()}).
+   * Percentiles use the nearest-rank definition: the smallest inter-arrival
+   * time such that at least the given percentage of the inter-arrival times
+   * is less than or equal to it.
+   *
+   * @return 50th percentile of the inter-arrival times, {@code null} with fewer
+   *         than two measurements
+   */
+  public Duration getInterArrivalP50();
+
+  /**
+   * 95th percentile of the inter-arrival times, as defined in
+   * {@link #getInterArrivalP50()}.
+   *
+   * @return 95th percentile of the inter-arrival times, {@code null} with fewer
+   *         than two measurements
+   */
+  public Duration getInterArrivalP95();
+
+  /**
+   * 99th percentile of the inter-arrival times, as defined in
+   * {@link #getInterArrivalP50()}.
+   *
+   * @return 99th percentile of the inter-arrival times, {@code null} with fewer
+   *         than two measurements
+   */
+  public Duration getInterArrivalP99();
+
 }
@@ -1,18 +1,18 @@
 package com.weather.report.reports;
 
 import java.time.Duration;
-import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Comparator;
+import java.util.DoubleSummaryStatistics;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
-import java.util.stream.Collectors;
 
 import com.weather.report.exceptions.InvalidInputDataException;
+import com.weather.report.model.MeasurementColumns;
 import com.weather.report.model.entities.Gateway;
 import com.weather.report.model.entities.Measurement;
 import com.weather.report.model.entities.Parameter;
@@ -28,8 +28,26 @@ public class GatewayReportImplementation implements GatewayReport{
     private Collection<String> outlierSensors;
     private double batteryChargePercentage;
     private SortedMap<Range<Duration>, Long> histogram;
+    private Duration interArrivalP50;
+    private Duration interArrivalP95;
+    private Duration interArrivalP99;
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
 
     public GatewayReportImplementation(Gateway gateway, String startDate, String endDate, List<Measurement> measurements) throws InvalidInputDataException {
+            this(gateway, startDate, endDate, MeasurementColumns.of(measurements));
+        }
+
+    /**
+     * Builds the report from the column store, without entity lists.
+     * Counts, load ratios and outlier sensors include the compacted
+     * measurements of the columns; inter-arrival times only consider the points.
+     * @param gateway gateway on wich the report has to be calculated
+     * @param startDate requested start date (may be null)
+     * @param endDate requested end date (may be null)
+     * @param measurements gateway's measurements in the requested interval
+     */
+    public GatewayReportImplementation(Gateway gateway, String startDate, String endDate, MeasurementColumns measurements) throws InvalidInputDataException {
             this.code = gateway.getCode();
             this.startDate = startDate;
             this.endDate = endDate;
@@ -41,7 +59,7 @@ public class GatewayReportImplementation implements GatewayReport{
      * @param gateway gateway on wich the report has to be calculated
      * @param measurements gateway's measurements
      */
-    private void calculateReport(Gateway gateway, List<Measurement> measurements) throws InvalidInputDataException {
+    private void calculateReport(Gateway gateway, MeasurementColumns measurements) throws InvalidInputDataException {
 
         
         this.mostActiveSensors = new ArrayList<>();
@@ -54,18 +72,26 @@ public class GatewayReportImplementation implements GatewayReport{
         this.batteryChargePercentage = (batteryChargePercentageP != null) ? batteryChargePercentageP.getValue() : 0.0;
 
         /* se non ci sono misurazioni ritorno immediatamente liste e mappe vuote */
-        if (measurements == null || measurements.isEmpty()) {
+        if (measurements == null || measurements.getMeasurementCount() == 0) {
             this.numberOfMeasurements = 0;
             return;
         }
 
-        this.numberOfMeasurements = measurements.size(); //numero totale di misurazioni del Gateway nell’intervallo richiesto
+        this.numberOfMeasurements = measurements.getMeasurementCount(); //numero totale di misurazioni del Gateway nell’intervallo richiesto, comprese quelle compattate
+
+        Parameter expectedMeanP = gateway.getParameter(Parameter.EXPECTED_MEAN_CODE);
+        Parameter expectedStdDevP = gateway.getParameter(Parameter.EXPECTED_STD_DEV_CODE);
+        boolean outliersRequested = expectedMeanP != null && expectedStdDevP != null;
+
+        //conteggi e, se servono per gli outlier, statistiche per sensore, accumulati per partizioni di serie
+        SeriesAccumulator sensors = SeriesAccumulator.of(measurements, measurements::getSensorCode, outliersRequested);
 
-        setCollectionOfSensors(measurements, numberOfMeasurements, mostActiveSensors, leastActiveSensors, sensorLoadRatio);
+        setCollectionOfSensors(sensors.getCounts(), numberOfMeasurements, mostActiveSensors, leastActiveSensors, sensorLoadRatio);
 
-        outlierSensors = getOutlierSensors(measurements, gateway);
+        if (outliersRequested) outlierSensors = getOutlierSensors(sensors.getStatistics(), expectedMeanP.getValue(), expectedStdDevP.getValue());
 
-        histogram = getHistogram(measurements, numberOfMeasurements);
+        //gli intervalli tra misurazioni richiedono i singoli timestamp: solo i punti
+        histogram = getHistogram(measurements, measurements.size());
     }
 
 
@@ -119,19 +145,30 @@ public class GatewayReportImplementation implements GatewayReport{
         return histogram;
     }
 
+    @Override
+    public Duration getInterArrivalP50() {
+        return interArrivalP50;
+    }
+
+    @Override
+    public Duration getInterArrivalP95() {
+        return interArrivalP95;
+    }
+
+    @Override
+    public Duration getInterArrivalP99() {
+        return interArrivalP99;
+    }
+
     /**
      * Analyze sensor data and collect it into related collections according to requests
-     * @param measurements gateway's measurement
+     * @param countMeasurementsForSensor number of measurements of each sensor
      * @param numberOfMeasurements number of gateway's measurement
      * @param mostActiveSensors list containing the sensors with the highest number of measurements
      * @param leastActiveSensors list containing the sensors with the least number of measurements
      * @param sensorsLoadRatio map containing the sensors with the relative percentage of measurements taken by the single sensor compared to the total of the gateway
      */
-    private void setCollectionOfSensors(List<Measurement> measurements, long numberOfMeasurements, Collection<String> mostActiveSensors, Collection<String> leastActiveSensors, Map<String, Double> sensorsLoadRatio) {
-        //ricavo una map che raggruppa le misurazioni per sensore e le conta
-        Map<String, Long> countMeasurementsForSensor = measurements.stream()
-                .collect(Collectors.groupingBy(Measurement::getSensorCode, Collectors.counting()));
-
+    private void setCollectionOfSensors(Map<String, Long> countMeasurementsForSensor, long numberOfMeasurements, Collection<String> mostActiveSensors, Collection<String> leastActiveSensors, Map<String, Double> sensorsLoadRatio) {
         //ricavo il massimo e il minimo numero di misurazioni per i sensori
         long maxCount = countMeasurementsForSensor.values().stream().max(Long::compareTo).orElse((long)0);
         long minCount = countMeasurementsForSensor.values().stream().min(Long::compareTo).orElse((long)0);
@@ -146,26 +183,15 @@ public class GatewayReportImplementation implements GatewayReport{
 
     /**
      * Retrieve a list of sensorCodes whose average detected values ​​are anomalous, comparing the real average with the gateway's expected values
-     * @param measurements gateway's measurement
-     * @param gateway gateway
+     * @param statisticsForSensor statistics of the values of each sensor
+     * @param expectedMean gateway's expected mean
+     * @param expectedStdDev gateway's expected standard deviation
      * @return a list of outlier sensors
      */
-    private Collection<String> getOutlierSensors(List<Measurement> measurements, Gateway gateway) {
-
-        Parameter expectedMeanP = gateway.getParameter(Parameter.EXPECTED_MEAN_CODE);
-        Parameter expectedStdDevP = gateway.getParameter(Parameter.EXPECTED_STD_DEV_CODE);
-
-        if (expectedMeanP!=null && expectedStdDevP!= null) {
-            double expectedMean = expectedMeanP.getValue();
-            double expectedStdDev = expectedStdDevP.getValue();
-            //raggruppo misurazioni per sensore e ne calcolo la media
-            Map<String, Double> meanMeasurementsForSensor = measurements.stream()
-                .collect(Collectors.groupingBy(Measurement::getSensorCode, Collectors.averagingDouble(Measurement::getValue)));
-
-            meanMeasurementsForSensor.forEach((sensorCode, sensorMean) -> {
-                if (checkIfOutlier(expectedMean, expectedStdDev, sensorMean)) outlierSensors.add(sensorCode);
-            });
-        }
+    private Collection<String> getOutlierSensors(Map<String, DoubleSummaryStatistics> statisticsForSensor, double expectedMean, double expectedStdDev) {
+        statisticsForSensor.forEach((sensorCode, statistics) -> {
+            if (checkIfOutlier(expectedMean, expectedStdDev, statistics.getAverage())) outlierSensors.add(sensorCode);
+        });
 
         return outlierSensors;
     }
@@ -182,56 +208,78 @@ public class GatewayReportImplementation implements GatewayReport{
     }
 
     /**
-     * Retrieve the histogram of the inter-arrival times between consecutive gateway measurements in the requested interval.
+     * Retrieve the histogram of the inter-arrival times between consecutive gateway measurements in the requested interval
+     * and sets their percentiles. Timestamps and inter-arrival times are handled as epoch nanoseconds in a single array
+     * sorted in place (in parallel for large arrays).
      * @param measurements gateway's measurement
-     * @param numberOfMeasurements number of gateway's measurement
+     * @param numberOfMeasurements number of gateway's measurement points
      * @return histogram with the duration count for each bucket
      */
-    private SortedMap<Range<Duration>, Long> getHistogram(List<Measurement> measurements, long numberOfMeasurements) {
+    private SortedMap<Range<Duration>, Long> getHistogram(MeasurementColumns measurements, long numberOfMeasurements) {
         final int BUCKETS_NUMBER = 20;
 
         if (numberOfMeasurements < 2) return histogram;
 
-        //ordino le misurazioni in ordine cronologico
-        List<Measurement> sortedMeasurements = measurements.stream().sorted(Comparator.comparing(Measurement::getTimestamp)).toList();
+        //ordino i timestamp di tutte le serie in ordine cronologico, in nanosecondi
+        long[] interArrivalNanos = new long[measurements.size()];
+        for (int i=0; i<interArrivalNanos.length; i++) {
+            interArrivalNanos[i] = measurements.getEpochSecond(i) * NANOS_PER_SECOND;
+        }
+        Arrays.parallelSort(interArrivalNanos);
 
-        //calcolo tutte le differenze temporali tra misurazioni consecutive
-        List<Duration> interArrivalDurations = new ArrayList<>();
-        for (int i=0; i<numberOfMeasurements-1; i++) {
-            LocalDateTime start = sortedMeasurements.get(i).getTimestamp();
-            LocalDateTime end = sortedMeasurements.get(i+1).getTimestamp();
-            interArrivalDurations.add(Duration.between(start, end));
+        //calcolo sul posto le differenze temporali tra misurazioni consecutive e le ordino
+        int interArrivals = interArrivalNanos.length - 1;
+        for (int i=0; i<interArrivals; i++) {
+            interArrivalNanos[i] = interArrivalNanos[i+1] - interArrivalNanos[i];
         }
+        Arrays.parallelSort(interArrivalNanos, 0, interArrivals);
+
+        interArrivalP50 = Duration.ofNanos(percentile(interArrivalNanos, interArrivals, 50));
+        interArrivalP95 = Duration.ofNanos(percentile(interArrivalNanos, interArrivals, 95));
+        interArrivalP99 = Duration.ofNanos(percentile(interArrivalNanos, interArrivals, 99));
 
         //calcolo i 20 intervalli contigui in cui suddividere il range di Duration
-        Duration minDuration = interArrivalDurations.stream().min(Duration::compareTo).orElse(Duration.ZERO);
-        Duration maxDuration = interArrivalDurations.stream().max(Duration::compareTo).orElse(Duration.ZERO);
+        long minDuration = interArrivalNanos[0];
+        long maxDuration = interArrivalNanos[interArrivals - 1];
         //caso limite
-        if (minDuration.equals(maxDuration)) minDuration = Duration.ZERO; // se min = max -> considero arbitrariamente minDuration uguale a 0 per calcolare i bucket come da specifiche del professore
+        if (minDuration == maxDuration) minDuration = 0; // se min = max -> considero arbitrariamente minDuration uguale a 0 per calcolare i bucket come da specifiche del professore
 
-        Duration range = maxDuration.minus(minDuration);
+        long range = maxDuration - minDuration;
 
-        if (range.isZero()) range = Duration.ofNanos(BUCKETS_NUMBER); //se anche maxDuration era 0, creo range fittizio da 20 ns
+        if (range == 0) range = BUCKETS_NUMBER; //se anche maxDuration era 0, creo range fittizio da 20 ns
 
-        Duration bucketRange = range.dividedBy(BUCKETS_NUMBER);
+        long bucketRange = range / BUCKETS_NUMBER;
         
-        if (bucketRange.isZero()) bucketRange = Duration.ofNanos(1); //se range < 20, la divisione intera restituisce 0, imposto ogni bucket da 1 ns per averli forzatamente
+        if (bucketRange == 0) bucketRange = 1; //se range < 20, la divisione intera restituisce 0, imposto ogni bucket da 1 ns per averli forzatamente
 
+        //estremi dei 20 bucket: min + (bucketRange * i), l'ultimo bucket termina in maxDuration
+        long[] bounds = new long[BUCKETS_NUMBER + 1];
         for (int i=0; i<BUCKETS_NUMBER; i++) {
-            //creo i 20 bucket impostando start e end di ogni bucket e un flag che dice se è l'ultimo bucket (end coincide con maxDuration)
-            Duration start = minDuration.plus(bucketRange.multipliedBy(i)); //min + (bucketRange * i)
-            boolean isLast = (i == BUCKETS_NUMBER - 1);
-            Duration end = (isLast) ? maxDuration : minDuration.plus(bucketRange.multipliedBy(i+1)); //min + (bucketRange * (i+1)) se non è l'ultimo
-
-            RangeImplementation<Duration> bucket = new RangeImplementation<>(start, end, isLast);
-
-            //ogni bucket è un intervallo dell'istogramm -> count è il numero di duration di quel bucket
-            long count = interArrivalDurations.stream().filter(d -> bucket.contains(d)).count();
-
-            histogram.put(bucket, count);
+            bounds[i] = minDuration + bucketRange * i;
         }
+        bounds[BUCKETS_NUMBER] = maxDuration;
+
+        //un istogramma per partizione degli intervalli, poi sommati
+        Histogram.OfLong<Duration> durations = SeriesAccumulator.range(interArrivals, interArrivals).collect(
+            () -> new Histogram.OfLong<>(bounds, Duration::ofNanos),
+            (partition, i) -> partition.add(interArrivalNanos[i]),
+            Histogram.OfLong::merge);
+        histogram = durations.toSortedMap();
         
         return histogram;
     }
 
+    /**
+     * Nearest-rank percentile: the smallest value such that at least
+     * {@code p} percent of the values are less than or equal to it.
+     * @param sorted values sorted in ascending order
+     * @param size number of values, at least one
+     * @param p percentile, between 1 and 100
+     * @return the percentile of the values
+     */
+    private static long percentile(long[] sorted, int size, int p) {
+        int rank = (int) Math.ceil(p / 100.0 * size);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
 }
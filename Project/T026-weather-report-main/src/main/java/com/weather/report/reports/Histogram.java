@@ -0,0 +1,167 @@
+package com.weather.report.reports;
+
+import java.util.Arrays;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.DoubleFunction;
+import java.util.function.LongFunction;
+
+import com.weather.report.reports.Report.Range;
+
+/**
+ * One-pass histogram engines shared by the reports.
+ * <p>
+ * The buckets are given as {@code n + 1} ascending bounds: bucket {@code i}
+ * covers {@code [bounds[i], bounds[i+1])} and the last one is closed on the
+ * right, as in {@link RangeImplementation}. All the buckets but the last are
+ * expected to have (about) the same width, so the bucket of a key is computed
+ * arithmetically from its distance from the first bound and then checked
+ * against the bounds, which keeps the result exact also when the bounds are
+ * affected by rounding or the last bucket is shorter. Adding a key is
+ * therefore constant time, instead of a scan of all the buckets.
+ * <p>
+ * Keys live in a primitive space ({@code long} for timestamps and durations,
+ * {@code double} for values) and are converted to the range type only when
+ * the histogram is built.
+ */
+public final class Histogram {
+
+  private Histogram() {
+  }
+
+  /**
+   * Histogram over {@code long} keys, e.g. epoch seconds or nanoseconds.
+   *
+   * @param <T> type of the bounds of the resulting ranges
+   */
+  public static final class OfLong<T extends Comparable<? super T>> {
+
+    private final long[] bounds;
+    private final long[] counts;
+    private final long width;
+    private final LongFunction<T> toRangeBound;
+
+    /**
+     * @param bounds       {@code n + 1} bounds of the {@code n} buckets, not copied
+     * @param toRangeBound conversion of a bound to the type of the ranges
+     */
+    public OfLong(long[] bounds, LongFunction<T> toRangeBound) {
+      if (bounds.length < 2) throw new IllegalArgumentException("A histogram needs at least one bucket");
+      this.bounds = bounds;
+      this.counts = new long[bounds.length - 1];
+      this.toRangeBound = toRangeBound;
+      int nBucket = counts.length;
+      this.width = nBucket > 1 ? Math.max(0, bounds[nBucket - 1] - bounds[0]) / (nBucket - 1) : 0;
+    }
+
+    /**
+     * Counts a key in its bucket, if any.
+     *
+     * @param key key to count
+     */
+    public void add(long key) {
+      add(key, 1);
+    }
+
+    /**
+     * Counts a key several times, e.g. the points of an aggregate that falls
+     * entirely in one bucket.
+     *
+     * @param key   key to count
+     * @param count number of occurrences of the key
+     */
+    public void add(long key, long count) {
+      int last = counts.length - 1;
+      if (key < bounds[0]) return;
+      int bucket = width > 0 ? (int) Math.min((key - bounds[0]) / width, last) : last;
+      // correzione per bucket di ampiezza diversa da quella media
+      while (bucket > 0 && key < bounds[bucket]) bucket--;
+      while (bucket < last && key >= bounds[bucket + 1]) bucket++;
+      boolean inBucket = key >= bounds[bucket] && (bucket == last ? key <= bounds[last + 1] : key < bounds[bucket + 1]);
+      if (inBucket) counts[bucket] += count;
+    }
+
+    /**
+     * Adds the counts of another histogram with the same bounds, e.g. filled
+     * over another partition of the keys. The other histogram is left
+     * unchanged.
+     *
+     * @param other histogram to merge into this one
+     */
+    public void merge(OfLong<T> other) {
+      if (other.bounds != bounds && !Arrays.equals(other.bounds, bounds)) throw new IllegalArgumentException("Histograms with different bounds");
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] += other.counts[i];
+      }
+    }
+
+    /**
+     * @return a new sorted map from each bucket to its count
+     */
+    public SortedMap<Range<T>, Long> toSortedMap() {
+      SortedMap<Range<T>, Long> histogram = new TreeMap<>();
+      for (int i = 0; i < counts.length; i++) {
+        histogram.put(new RangeImplementation<>(toRangeBound.apply(bounds[i]), toRangeBound.apply(bounds[i + 1]),
+            i == counts.length - 1), counts[i]);
+      }
+      return histogram;
+    }
+
+  }
+
+  /**
+   * Histogram over {@code double} keys.
+   *
+   * @param <T> type of the bounds of the resulting ranges
+   */
+  public static final class OfDouble<T extends Comparable<? super T>> {
+
+    private final double[] bounds;
+    private final long[] counts;
+    private final double width;
+    private final DoubleFunction<T> toRangeBound;
+
+    /**
+     * @param bounds       {@code n + 1} bounds of the {@code n} buckets, not copied
+     * @param toRangeBound conversion of a bound to the type of the ranges
+     */
+    public OfDouble(double[] bounds, DoubleFunction<T> toRangeBound) {
+      if (bounds.length < 2) throw new IllegalArgumentException("A histogram needs at least one bucket");
+      this.bounds = bounds;
+      this.counts = new long[bounds.length - 1];
+      this.toRangeBound = toRangeBound;
+      int nBucket = counts.length;
+      this.width = nBucket > 1 ? (bounds[nBucket - 1] - bounds[0]) / (nBucket - 1) : 0;
+    }
+
+    /**
+     * Counts a key in its bucket, if any.
+     *
+     * @param key key to count
+     */
+    public void add(double key) {
+      int last = counts.length - 1;
+      if (!(key >= bounds[0])) return;
+      int bucket = width > 0 ? (int) Math.min((key - bounds[0]) / width, last) : last;
+      // correzione degli errori di arrotondamento vicino agli estremi
+      while (bucket > 0 && key < bounds[bucket]) bucket--;
+      while (bucket < last && key >= bounds[bucket + 1]) bucket++;
+      boolean inBucket = key >= bounds[bucket] && (bucket == last ? key <= bounds[last + 1] : key < bounds[bucket + 1]);
+      if (inBucket) counts[bucket]++;
+    }
+
+    /**
+     * @return a new sorted map from each bucket to its count
+     */
+    public SortedMap<Range<T>, Long> toSortedMap() {
+      SortedMap<Range<T>, Long> histogram = new TreeMap<>();
+      for (int i = 0; i < counts.length; i++) {
+        histogram.put(new RangeImplementation<>(toRangeBound.apply(bounds[i]), toRangeBound.apply(bounds[i + 1]),
+            i == counts.length - 1), counts[i]);
+      }
+      return histogram;
+    }
+
+  }
+
+}
@@ -0,0 +1,21 @@
+package com.weather.report.reports;
+
+import java.util.function.Consumer;
+
+import com.weather.report.model.entities.Measurement;
+
+/**
+ * Source of measurements that can be read more than once, each time with a
+ * new scan (e.g. a new database cursor), without keeping them in memory.
+ */
+@FunctionalInterface
+public interface MeasurementScan {
+
+  /**
+   * Reads all the measurements, always in the same order.
+   *
+   * @param action action performed on each measurement
+   */
+  void forEach(Consumer<Measurement> action);
+
+}
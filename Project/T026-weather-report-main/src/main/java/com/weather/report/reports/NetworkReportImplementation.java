@@ -10,9 +10,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
-import java.util.stream.Collectors;
 
 import com.weather.report.exceptions.InvalidInputDataException;
+import com.weather.report.model.MeasurementColumns;
+import com.weather.report.model.MeasurementRollups;
 import com.weather.report.model.entities.Measurement;
 import com.weather.report.utils.LocalDateTimeUtils;
 
@@ -42,6 +43,87 @@ public class NetworkReportImplementation implements NetworkReport{
     */
 
     public NetworkReportImplementation(String code, String startDate, String endDate, List<Measurement> measurements) throws InvalidInputDataException{
+        this(code, startDate, endDate, MeasurementColumns.of(measurements));
+    }
+
+    /**
+     * Builds the report from the column store, without entity lists. Each
+     * hourly aggregate of compacted measurements of the columns is counted at
+     * its first timestamp, in the same bucket as in the report built from the
+     * rollups when the buckets start on an hour.
+     *
+     * @param code         code of the network
+     * @param startDate    requested start date (may be null)
+     * @param endDate      requested end date (may be null)
+     * @param measurements measurements of the network in the requested interval
+     * @throws InvalidInputDataException when a date has an invalid format
+     */
+    public NetworkReportImplementation(String code, String startDate, String endDate, MeasurementColumns measurements) throws InvalidInputDataException{
+        this(code, startDate, endDate);
+        if(measurements == null || measurements.getMeasurementCount() == 0){
+            return;
+        }     
+        this.numberOfMeasurements = measurements.getMeasurementCount();
+
+        // <codice del gateway, numero di misurazioni del gateway> e limiti temporali, accumulati per partizioni di serie
+        SeriesAccumulator series = SeriesAccumulator.of(measurements, measurements::getGatewayCode, false);
+        setGateways(series.getCounts());
+
+        // i bucket dipendono dai limiti temporali: secondo passaggio, un istogramma per partizione poi sommati
+        long[] bounds = buildBounds(series.getMinEpochSecond(), series.getMaxEpochSecond());
+        MeasurementRollups compacted = measurements.getCompacted();
+        Histogram.OfLong<LocalDateTime> timestamps = SeriesAccumulator.range(measurements.getSeriesCount(), measurements.size()).collect(
+            () -> new Histogram.OfLong<>(bounds, MeasurementColumns::toLocalDateTime),
+            (partition, s) -> {
+                for (int i = measurements.getSeriesStart(s); i < measurements.getSeriesEnd(s); i++) {
+                    partition.add(measurements.getEpochSecond(i));
+                }
+                // le misure compattate non hanno più il proprio timestamp
+                for (int r = compacted.getSeriesStart(s); r < compacted.getSeriesEnd(s); r++) {
+                    partition.add(compacted.getFirstEpochSecond(r), compacted.getCount(r));
+                }
+            },
+            Histogram.OfLong::merge);
+        histogram = timestamps.toSortedMap();
+    }
+
+    /**
+     * Builds the report from hourly rollups, without reading the measurements.
+     * The buckets of the histogram must start on an hour boundary (see
+     * {@link #hasHourAlignedBuckets(String, MeasurementRollups)}), so that
+     * each rollup falls entirely in one bucket.
+     *
+     * @param code      code of the network
+     * @param startDate requested start date (may be null)
+     * @param endDate   requested end date (may be null)
+     * @param rollups   hourly rollups of the network in the requested interval
+     * @throws InvalidInputDataException when a date has an invalid format
+     */
+    public NetworkReportImplementation(String code, String startDate, String endDate, MeasurementRollups rollups) throws InvalidInputDataException{
+        this(code, startDate, endDate);
+        if (!hasHourAlignedBuckets(startDate, rollups)) throw new IllegalArgumentException("Histogram buckets are not aligned to hours");
+        if (rollups.isEmpty()) {
+            return;
+        }
+
+        SeriesAccumulator series = SeriesAccumulator.of(rollups, rollups::getGatewayCode);
+        this.numberOfMeasurements = series.getCount();
+        setGateways(series.getCounts());
+
+        // ogni ora cade interamente in un bucket: la conto con l'inizio dell'ora
+        long[] bounds = buildBounds(series.getMinEpochSecond(), series.getMaxEpochSecond());
+        Histogram.OfLong<LocalDateTime> hours = SeriesAccumulator.range(rollups.getSeriesCount(), rollups.size()).collect(
+            () -> new Histogram.OfLong<>(bounds, MeasurementColumns::toLocalDateTime),
+            (partition, s) -> {
+                for (int r = rollups.getSeriesStart(s); r < rollups.getSeriesEnd(s); r++) {
+                    partition.add(rollups.getHour(r), rollups.getCount(r));
+                }
+            },
+            Histogram.OfLong::merge);
+        histogram = hours.toSortedMap();
+    }
+
+    private NetworkReportImplementation(String code, String startDate, String endDate) {
         this.code = code;
         this.startDate = startDate;
         this.endDate = endDate;
@@ -49,27 +131,82 @@ public class NetworkReportImplementation implements NetworkReport{
         leastActiveGateways = new ArrayList<String>();
         gatewaysLoadRatio = new HashMap<String, Double>();
         histogram = new TreeMap<Range<LocalDateTime>, Long>();
-        if(measurements == null || measurements.isEmpty()){
-            numberOfMeasurements = 0L;            
-            return;
-        }     
-        this.numberOfMeasurements = measurements.size();
-
-        // mappo per ottenere <codice del gateway, numero di misurazioni del gateway>
-        Map<String, Long> measurementCountPerGateway = measurements.stream().collect(Collectors.groupingBy(Measurement::getGatewayCode, Collectors.counting()));
-        // calcolo massimo e minimo di misurazioni tra i gateway
-        Long maxNumberOfMeasurementsOfAllGateways = measurementCountPerGateway.values().stream().max(Long::compareTo).orElse(Long.valueOf(0));
-        Long minNumberOfMeasurementsOfAllGateways = measurementCountPerGateway.values().stream().min(Long::compareTo).orElse(Long.valueOf(0));
-        // inserisco i dati nei valori che manderò in output
-        measurementCountPerGateway.forEach((gateway, count) -> {
-            if(count == maxNumberOfMeasurementsOfAllGateways){mostActiveGateways.add(gateway);}
-            if(count == minNumberOfMeasurementsOfAllGateways){leastActiveGateways.add(gateway);}
-            gatewaysLoadRatio.put(gateway, (count / (double)numberOfMeasurements));
-        });
-        // ottengo istogramma
+        numberOfMeasurements = 0L;
+    }
+
+    /**
+     * Checks whether the histogram of a report built from the given rollups
+     * would start on an hour boundary, i.e. whether the report can be built
+     * from the rollups alone.
+     *
+     * @param startDate requested start date (may be null)
+     * @param rollups   hourly rollups of the network in the requested interval
+     * @return {@code true} if the first bucket starts at minute and second zero
+     *         or there are no measurements
+     * @throws InvalidInputDataException when the date has an invalid format
+     */
+    public static boolean hasHourAlignedBuckets(String startDate, MeasurementRollups rollups) throws InvalidInputDataException {
+        if (rollups.isEmpty()) return true;
+        if (startDate != null) return hasHourAlignedBuckets(startDate);
+        long minEpochSecond = Long.MAX_VALUE;
+        for (int s = 0; s < rollups.getSeriesCount(); s++) {
+            minEpochSecond = Math.min(minEpochSecond, rollups.getFirstEpochSecond(rollups.getSeriesStart(s)));
+        }
+        return isOnTheHour(MeasurementColumns.toLocalDateTime(minEpochSecond));
+    }
+
+    /**
+     * Checks, before reading any measurement, whether the histogram of a report
+     * with the given start date starts on an hour boundary. Without a start date
+     * the first bucket starts at the first measurement, which is only known once
+     * read, so the rollups cannot be chosen in advance.
+     *
+     * @param startDate requested start date (may be null)
+     * @return {@code true} if the start date is given at minute and second zero
+     * @throws InvalidInputDataException when the date has an invalid format
+     */
+    public static boolean hasHourAlignedBuckets(String startDate) throws InvalidInputDataException {
+        if (startDate == null) return false;
+        return isOnTheHour(LocalDateTimeUtils.parseLocalDateTime(startDate, LocalDateTime.MIN));
+    }
+
+    private static boolean isOnTheHour(LocalDateTime start) {
+        return start.getMinute() == 0 && start.getSecond() == 0 && start.getNano() == 0;
+    }
+
+    /**
+     * Fills most/least active gateways and load ratios.
+     *
+     * @param measurementCountPerGateway number of measurements of each gateway
+     */
+    private void setGateways(Map<String, Long> measurementCountPerGateway) {
+        // calcolo massimo e minimo di misurazioni tra i gateway e i rapporti di carico in un solo passaggio
+        long maxNumberOfMeasurementsOfAllGateways = Long.MIN_VALUE;
+        long minNumberOfMeasurementsOfAllGateways = Long.MAX_VALUE;
+        for (Map.Entry<String, Long> entry : measurementCountPerGateway.entrySet()) {
+            long count = entry.getValue();
+            if(count > maxNumberOfMeasurementsOfAllGateways){maxNumberOfMeasurementsOfAllGateways = count; mostActiveGateways.clear();}
+            if(count == maxNumberOfMeasurementsOfAllGateways){mostActiveGateways.add(entry.getKey());}
+            if(count < minNumberOfMeasurementsOfAllGateways){minNumberOfMeasurementsOfAllGateways = count; leastActiveGateways.clear();}
+            if(count == minNumberOfMeasurementsOfAllGateways){leastActiveGateways.add(entry.getKey());}
+            gatewaysLoadRatio.put(entry.getKey(), (count / (double)numberOfMeasurements));
+        }
+    }
+
+    /**
+     * Computes the bounds of the buckets of the histogram (see
+     * {@link #getHistogram()}), in epoch seconds.
+     *
+     * @param minEpochSecond first timestamp of the measurements
+     * @param maxEpochSecond last timestamp of the measurements
+     * @return start of each bucket followed by the (inclusive) end of the last one
+     * @throws InvalidInputDataException when a date has an invalid format
+     */
+    private long[] buildBounds(long minEpochSecond, long maxEpochSecond) throws InvalidInputDataException {
+        List<LocalDateTime> bounds = new ArrayList<>();
         // calcolo limiti temporali
-        LocalDateTime startOfHistogram = LocalDateTimeUtils.parseLocalDateTime(startDate, measurements.stream().map(Measurement::getTimestamp).min(LocalDateTime::compareTo).orElse(LocalDateTime.MIN));
-        LocalDateTime endOfHistogram = LocalDateTimeUtils.parseLocalDateTime(endDate, measurements.stream().map(Measurement::getTimestamp).max(LocalDateTime::compareTo).orElse(LocalDateTime.MAX));
+        LocalDateTime startOfHistogram = LocalDateTimeUtils.parseLocalDateTime(startDate, MeasurementColumns.toLocalDateTime(minEpochSecond));
+        LocalDateTime endOfHistogram = LocalDateTimeUtils.parseLocalDateTime(endDate, MeasurementColumns.toLocalDateTime(maxEpochSecond));
 
         // calcolo il range temporale totale dell'istogramma e scelgo la granularità
         long totalDurationInSeconds = Duration.between(startOfHistogram, endOfHistogram).toSeconds();
@@ -77,18 +214,23 @@ public class NetworkReportImplementation implements NetworkReport{
         ChronoUnit histogramGranularity = (totalDurationInSeconds > granularityTreshold) ? ChronoUnit.DAYS : ChronoUnit.HOURS;
         // itero su currentBucketStart muovendolo di una granularità alla volta
         LocalDateTime currentBucketStart = startOfHistogram;
+        LocalDateTime currentBucketEnd = endOfHistogram;
         while(currentBucketStart.isBefore(endOfHistogram) || currentBucketStart.equals(endOfHistogram)){            
             LocalDateTime nextStep = currentBucketStart.plus(1, histogramGranularity);
             // controllo di non sforare oltre al massimo
             boolean isLastBucket = !nextStep.isBefore(endOfHistogram);
-            LocalDateTime currentBucketEnd = isLastBucket ? endOfHistogram : nextStep;
-            if (currentBucketEnd.equals(currentBucketStart) && !isLastBucket) {currentBucketEnd = nextStep;} // evito problemi in caso intervallo con un singolo punto
-            RangeImplementation<LocalDateTime> range = new RangeImplementation<LocalDateTime>(currentBucketStart,currentBucketEnd,isLastBucket);
-            long count = measurements.stream().filter(m -> range.contains(m.getTimestamp())).count();
-            histogram.put(range, count);
+            currentBucketEnd = isLastBucket ? endOfHistogram : nextStep;
+            bounds.add(currentBucketStart);
             currentBucketStart = nextStep;
             if (isLastBucket || currentBucketStart.isAfter(endOfHistogram)) {break;}
         }
+        bounds.add(currentBucketEnd);
+
+        long[] epochSeconds = new long[bounds.size()];
+        for (int i = 0; i < epochSeconds.length; i++) {
+            epochSeconds[i] = MeasurementColumns.toEpochSecond(bounds.get(i));
+        }
+        return epochSeconds;
     }
 
     /**
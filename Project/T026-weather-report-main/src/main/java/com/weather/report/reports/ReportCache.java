@@ -0,0 +1,222 @@
+package com.weather.report.reports;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.weather.report.exceptions.InvalidInputDataException;
+
+/**
+ * Size-bounded cache of reports, keyed by element code and requested dates.
+ * <p>
+ * Each entry is tagged with the ingest watermark of the element read before
+ * computing the report (see
+ * {@link com.weather.report.repositories.MeasurementRepository#getSensorWatermark(String)}):
+ * a lookup with a different watermark is a miss and replaces the entry. When
+ * the cache is full the least recently used entry is evicted.
+ * <p>
+ * {@link #invalidate(String)} and {@link #clear()} also advance an
+ * invalidation generation, per code and global: a report whose computation
+ * started before is returned to its caller but not cached, since it may have
+ * been computed from what was invalidated.
+ * <p>
+ * Watermarks only advance on the writes of this process, so the cache is
+ * correct only while this process is the single writer of the measurements:
+ * measurements stored by another process do not change the watermarks, and
+ * the reports cached before them keep being returned until the entries are
+ * evicted or invalidated. With several writers, call {@link #clear()} (or
+ * {@link #invalidate(String)}) when their writes must be seen.
+ *
+ * @param <R> type of the cached reports
+ */
+public class ReportCache<R> {
+
+  /** Default maximum number of entries of each report cache. */
+  public static final int DEFAULT_MAX_ENTRIES = 256;
+
+  /** Cache of the sensor reports. */
+  public static final ReportCache<SensorReport> SENSOR_REPORTS = new ReportCache<>(DEFAULT_MAX_ENTRIES);
+  /** Cache of the gateway reports. */
+  public static final ReportCache<GatewayReport> GATEWAY_REPORTS = new ReportCache<>(DEFAULT_MAX_ENTRIES);
+  /** Cache of the network reports. */
+  public static final ReportCache<NetworkReport> NETWORK_REPORTS = new ReportCache<>(DEFAULT_MAX_ENTRIES);
+
+  /**
+   * Computes a report on a cache miss.
+   *
+   * @param <R> type of the report
+   */
+  @FunctionalInterface
+  public interface Loader<R> {
+    /**
+     * @return the new report
+     * @throws InvalidInputDataException when a date has an invalid format
+     */
+    R load() throws InvalidInputDataException;
+  }
+
+  private static final class Entry<R> {
+    private final long watermark;
+    private final R report;
+
+    private Entry(long watermark, R report) {
+      this.watermark = watermark;
+      this.report = report;
+    }
+  }
+
+  private final int maxEntries;
+  private final Map<List<String>, Entry<R>> entries;
+  // generazioni di invalidazione, lette e aggiornate sotto il lock di entries
+  private final Map<String, Long> generations = new HashMap<>();
+  private long clearGeneration;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * @param maxEntries maximum number of cached reports
+   */
+  public ReportCache(int maxEntries) {
+    if (maxEntries < 1) throw new IllegalArgumentException("maxEntries must be positive");
+    this.maxEntries = maxEntries;
+    // in ordine di accesso: il primo elemento è il meno usato di recente
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<List<String>, Entry<R>> eldest) {
+        if (size() <= ReportCache.this.maxEntries) return false;
+        evictions.incrementAndGet();
+        return true;
+      }
+    };
+  }
+
+  /**
+   * Returns the cached report for the given element and dates if it was
+   * computed at the given watermark, otherwise computes and caches it. The
+   * report is computed outside the lock of the cache. Only the writes of this
+   * process advance the watermark, so a cached report does not see the
+   * measurements stored by other processes.
+   *
+   * @param code      code of the element
+   * @param startDate requested start date (may be null)
+   * @param endDate   requested end date (may be null)
+   * @param watermark current ingest watermark of the element, read before the
+   *                  measurements
+   * @param loader    computes the report on a miss
+   * @return the report
+   * @throws InvalidInputDataException when the loader fails
+   */
+  public R get(String code, String startDate, String endDate, long watermark, Loader<R> loader)
+      throws InvalidInputDataException {
+    List<String> key = Arrays.asList(code, startDate, endDate);
+    long generation;
+    long cleared;
+    synchronized (entries) {
+      Entry<R> entry = entries.get(key);
+      if (entry != null && entry.watermark == watermark) {
+        hits.incrementAndGet();
+        return entry.report;
+      }
+      generation = generations.getOrDefault(code, 0L);
+      cleared = clearGeneration;
+    }
+    misses.incrementAndGet();
+    R report = loader.load();
+    synchronized (entries) {
+      // invalidato durante il calcolo: il report può dipendere da dati vecchi
+      if (generation != generations.getOrDefault(code, 0L) || cleared != clearGeneration) return report;
+      Entry<R> entry = entries.get(key);
+      // non sovrascrivo un report calcolato nel frattempo su dati più recenti
+      if (entry == null || entry.watermark <= watermark) {
+        entries.put(key, new Entry<>(watermark, report));
+      }
+    }
+    return report;
+  }
+
+  /**
+   * Returns the cached report for the given element and dates if it was
+   * computed at the given watermark, without computing it otherwise, e.g. to
+   * read the measurements only for the reports that are missing. A report
+   * found counts as a hit; a report not found is not counted, since it is
+   * expected to be looked up again through {@link #get}.
+   *
+   * @param code      code of the element
+   * @param startDate requested start date (may be null)
+   * @param endDate   requested end date (may be null)
+   * @param watermark current ingest watermark of the element, read before the
+   *                  measurements
+   * @return the cached report, or {@code null} if there is none
+   */
+  public R getIfPresent(String code, String startDate, String endDate, long watermark) {
+    synchronized (entries) {
+      Entry<R> entry = entries.get(Arrays.asList(code, startDate, endDate));
+      if (entry == null || entry.watermark != watermark) return null;
+      hits.incrementAndGet();
+      return entry.report;
+    }
+  }
+
+  /**
+   * Drops the reports of an element, e.g. when something other than its
+   * measurements changes, including those being computed.
+   *
+   * @param code code of the element
+   */
+  public void invalidate(String code) {
+    synchronized (entries) {
+      generations.merge(code, 1L, Long::sum);
+      Iterator<List<String>> keys = entries.keySet().iterator();
+      while (keys.hasNext()) {
+        if (code.equals(keys.next().get(0))) keys.remove();
+      }
+    }
+  }
+
+  /**
+   * Drops all the reports, including those being computed. Counters are not
+   * reset.
+   */
+  public void clear() {
+    synchronized (entries) {
+      clearGeneration++;
+      entries.clear();
+    }
+  }
+
+  /**
+   * @return number of cached reports
+   */
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  /**
+   * @return number of lookups answered from the cache
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return number of lookups that computed the report
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * @return number of reports dropped because the cache was full
+   */
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+}
@@ -3,6 +3,7 @@ package com.weather.report.reports;
 import java.util.List;
 import java.util.SortedMap;
 
+import com.weather.report.model.QuantileSketch;
 import com.weather.report.model.entities.Measurement;
 
 /**
@@ -56,6 +57,19 @@ public interface SensorReport extends Report<Double> {
    */
   public double getMaximumMeasuredValue();
 
+  /**
+   * Estimated quantile of the measurements in the requested interval, e.g.
+   * 0.5, 0.9 and 0.99 for p50, p90 and p99. The estimate comes from a
+   * {@link QuantileSketch}: its rank differs from the requested one by at most
+   * about 1.65% of the measurements, and it is exact with fewer than
+   * {@link QuantileSketch#DEFAULT_K} measurements.
+   *
+   * @param fraction fraction of the measurements, in {@code [0, 1]}
+   * @return estimated quantile, {@link Double#NaN} when there are no
+   *         measurements
+   */
+  public double getQuantile(double fraction);
+
   /**
    * Measurements considered outliers in the requested interval.
    *
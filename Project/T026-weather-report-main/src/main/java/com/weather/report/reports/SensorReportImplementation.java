@@ -6,10 +6,15 @@ import java.util.List;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
+import com.weather.report.model.MeasurementColumns;
+import com.weather.report.model.MeasurementRollups;
+import com.weather.report.model.QuantileSketch;
 import com.weather.report.model.entities.Measurement;
 
 public class SensorReportImplementation implements SensorReport{
 
+    private static final int NBUCKETS = 20;
+
     private String code;
     private String startDate, endDate;
     private long numberOfMeasurements;
@@ -20,21 +25,79 @@ public class SensorReportImplementation implements SensorReport{
     private double maximumMeasuredValue;
     private List<Measurement> outliers;
     private SortedMap<Range<Double>, Long> histogram;
+    private final QuantileSketch sketch = new QuantileSketch();
 
     
     public SensorReportImplementation(String code, String startDate, String endDate, Collection<Measurement> misure) {
+        this(code, startDate, endDate, MeasurementColumns.of(misure));
+    }
+
+    /**
+     * Builds the report from measurement columns, without entity lists.
+     * Outliers are rebuilt from the columns as detached measurements that keep
+     * the id of the stored measurement (see
+     * {@link MeasurementColumns#toMeasurement(int, int)}). Count, statistics
+     * and quantiles include the compacted measurements of the columns, while
+     * outliers and histogram only consider the points.
+     *
+     * @param code      code of the sensor
+     * @param startDate requested start date (may be null)
+     * @param endDate   requested end date (may be null)
+     * @param columns   measurements of the sensor in the requested interval
+     */
+    public SensorReportImplementation(String code, String startDate, String endDate, MeasurementColumns columns) {
         this.startDate = startDate;
         this.endDate = endDate;
         this.code = code;
-        calculateVariables(misure);
+        calculateVariables(columns);
     }
 
-    private void calculateVariables(Collection<Measurement> measurements){
-        final int NBUCKETS = 20;
+    /**
+     * Builds the report reading the measurements in three scans, keeping in
+     * memory only the accumulators and the outliers: the statistics are
+     * computed in the first scan, the outliers and the bounds of the
+     * histogram, which depend on the statistics, in the second one, and the
+     * histogram is filled in the third one.
+     *
+     * @param code      code of the sensor
+     * @param startDate requested start date (may be null)
+     * @param endDate   requested end date (may be null)
+     * @param scan      measurements of the sensor in the requested interval,
+     *                  in timestamp order
+     */
+    public SensorReportImplementation(String code, String startDate, String endDate, MeasurementScan scan) {
+        this(code, startDate, endDate, scan, null);
+    }
 
+    /**
+     * Builds the report like {@link #SensorReportImplementation(String, String,
+     * String, MeasurementScan)}, adding the compacted measurements of the
+     * interval to count, statistics and quantiles, as the report built from the
+     * column store does.
+     *
+     * @param code      code of the sensor
+     * @param startDate requested start date (may be null)
+     * @param endDate   requested end date (may be null)
+     * @param scan      measurements of the sensor in the requested interval,
+     *                  in timestamp order
+     * @param compacted aggregates of the compacted measurements of the sensor
+     *                  in the requested interval (may be null)
+     */
+    public SensorReportImplementation(String code, String startDate, String endDate, MeasurementScan scan, MeasurementRollups compacted) {
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.code = code;
+        calculateVariables(scan, compacted);
+    }
+
+    /**
+     * Computes the statistics in a single pass with {@link StreamingStatistics},
+     * then flags the outliers and fills the histogram in a second pass.
+     */
+    private void calculateVariables(MeasurementColumns measurements){
         this.outliers = new ArrayList<>();
         this.histogram = new TreeMap<>(); 
-        if (measurements == null || measurements.isEmpty()) {
+        if (measurements == null || measurements.getMeasurementCount() == 0) {
             this.mean = 0.0;
             this.variance = 0.0;
             this.stdDev = 0.0;
@@ -43,74 +106,131 @@ public class SensorReportImplementation implements SensorReport{
             this.maximumMeasuredValue = 0.0;
             return;
         }
-        this.numberOfMeasurements = measurements.size();
-        double sum = 0.0;
-        double min = Double.MAX_VALUE;       
-        double max = -Double.MAX_VALUE;    
-        
-        for (Measurement m : measurements) {
-            double v = m.getValue(); 
-            sum += v;
-            if (v < min) min = v;
-            if (v > max)  max = v;
+        int n = measurements.size();
+        StreamingStatistics statistics = new StreamingStatistics();
+        for (int i = 0; i < n; i++) {
+            statistics.add(measurements.getValue(i));
+            sketch.add(measurements.getValue(i));
         }
-        this.minimumMeasuredValue = min;
-        this.maximumMeasuredValue = max;
-        this.mean = sum / numberOfMeasurements;  
+        addCompacted(statistics, measurements.getCompacted());
+        setStatistics(statistics);
 
-        double sumSquaredDiffs = 0.0;
+        if (numberOfMeasurements < 2) return;
 
-        for (Measurement m : measurements) {
-            double v = m.getValue();
-            sumSquaredDiffs += Math.pow(v - this.mean, 2);
-        }
-        if(numberOfMeasurements<2){
-            this.variance=0.0;
-            this.stdDev=0.0;
-        }else{
-            this.variance = sumSquaredDiffs / (numberOfMeasurements-1);
-            this.stdDev = Math.sqrt(this.variance);
-            for (Measurement m : measurements) {
-                if(Math.abs(m.getValue()-this.mean)>=2*this.stdDev) this.outliers.add(m);
+        // flag per punto al posto della ricerca nella lista degli outlier
+        boolean[] outlier = new boolean[n];
+        int validCount = 0;
+        double validMin = Double.MAX_VALUE;
+        double validMax = -Double.MAX_VALUE;
+        for (int s = 0; s < measurements.getSeriesCount(); s++) {
+            for (int i = measurements.getSeriesStart(s); i < measurements.getSeriesEnd(s); i++) {
+                double v = measurements.getValue(i);
+                if (isOutlier(v)) {
+                    outlier[i] = true;
+                    this.outliers.add(measurements.toMeasurement(s, i));
+                } else {
+                    validCount++;
+                    if (v < validMin) validMin = v;
+                    if (v > validMax) validMax = v;
+                }
             }
-            calculateHistogram(measurements, this.outliers,NBUCKETS);
         }
+        if (validCount > 0) calculateHistogram(measurements, outlier, validMin, validMax, NBUCKETS);
+    }
+
+    /**
+     * Streaming version of {@link #calculateVariables(MeasurementColumns)}:
+     * one scan for each step instead of random access to the values.
+     */
+    private void calculateVariables(MeasurementScan scan, MeasurementRollups compacted) {
+        this.outliers = new ArrayList<>();
+        this.histogram = new TreeMap<>();
+
+        StreamingStatistics statistics = new StreamingStatistics();
+        scan.forEach(m -> {
+            statistics.add(m.getValue());
+            sketch.add(m.getValue());
+        });
+        if (compacted != null) addCompacted(statistics, compacted);
+        if (statistics.getCount() == 0) {
+            setStatistics(new StreamingStatistics());
+            this.minimumMeasuredValue = 0.0;
+            this.maximumMeasuredValue = 0.0;
+            return;
+        }
+        setStatistics(statistics);
+        if (statistics.getCount() < 2) return;
+
+        // seconda scansione: outlier ed estremi dei valori validi
+        StreamingStatistics valid = new StreamingStatistics();
+        scan.forEach(m -> {
+            if (isOutlier(m.getValue())) this.outliers.add(m);
+            else valid.add(m.getValue());
+        });
+        if (valid.getCount() == 0) return;
 
-        
+        Histogram.OfDouble<Double> values = newHistogram(valid.getMin(), valid.getMax(), NBUCKETS);
+        scan.forEach(m -> {
+            if (!isOutlier(m.getValue())) values.add(m.getValue());
+        });
+        this.histogram = values.toSortedMap();
     }
 
-    private void calculateHistogram(Collection<Measurement> measurements, List<Measurement> outliers, int nBucket) {
-        
-        List<Double> validValues=measurements.stream().filter(m->!outliers.contains(m)).map(m->m.getValue()).toList();
-       
-        if (validValues.isEmpty()) return;
+    /**
+     * Adds the hourly aggregates of compacted measurements, which have no
+     * points, to the statistics and to the sketch.
+     */
+    private void addCompacted(StreamingStatistics statistics, MeasurementRollups compacted) {
+        for (int r = 0; r < compacted.size(); r++) {
+            statistics.merge(compacted.getCount(r), compacted.getMean(r), compacted.getSquaredDeviations(r),
+                    compacted.getMin(r), compacted.getMax(r));
+            if (compacted.getSketch(r) != null) sketch.merge(compacted.getSketch(r));
+        }
+    }
+
+    private void setStatistics(StreamingStatistics statistics) {
+        this.numberOfMeasurements = statistics.getCount();
+        this.minimumMeasuredValue = statistics.getMin();
+        this.maximumMeasuredValue = statistics.getMax();
+        this.mean = statistics.getMean();
+        this.variance = statistics.getVariance();
+        this.stdDev = Math.sqrt(this.variance);
+    }
 
-        double min = Double.MAX_VALUE;
-        double max = -Double.MAX_VALUE;
-        
-        for (Double v : validValues) {
-            if (v < min) min = v;
-            if (v > max) max = v;
+    private boolean isOutlier(double value) {
+        return Math.abs(value - this.mean) >= 2 * this.stdDev;
+    }
+
+    /**
+     * Fills the histogram of the non-outlier values in one pass (see
+     * {@link Histogram}).
+     */
+    private void calculateHistogram(MeasurementColumns measurements, boolean[] outlier, double min, double max, int nBucket) {
+        Histogram.OfDouble<Double> values = newHistogram(min, max, nBucket);
+        for (int i = 0; i < outlier.length; i++) {
+            if (!outlier[i]) values.add(measurements.getValue(i));
         }
+        this.histogram = values.toSortedMap();
+    }
 
+    /**
+     * Creates the histogram of {@code nBucket} buckets of equal width between
+     * {@code min} and {@code max}.
+     */
+    private static Histogram.OfDouble<Double> newHistogram(double min, double max, int nBucket) {
         double step = (max-min)/nBucket;
 
-        
-        double inizio = min;
-        double end=0;
-        boolean isLast=false;
-
-        for(int i=0; i<nBucket; i++){
-            if(i==nBucket-1){ end = max; isLast=true;}
-            else end = inizio+step;
-            Range<Double> range = new RangeImplementation<>(inizio, end, isLast);
-            long count = validValues.stream().filter(d -> range.contains(d)).count();
-            this.histogram.put(range, count);
-            inizio=end;
+        // estremi dei bucket calcolati come somme successive, come le chiavi dell'istogramma
+        double[] bounds = new double[nBucket + 1];
+        bounds[0] = min;
+        for (int i = 1; i < nBucket; i++) {
+            bounds[i] = bounds[i-1] + step;
         }
-        
+        bounds[nBucket] = max;
 
+        return new Histogram.OfDouble<>(bounds, Double::valueOf);
     }
+
     @Override
     public String getCode() {
        return code;
@@ -155,6 +275,11 @@ public class SensorReportImplementation implements SensorReport{
         return maximumMeasuredValue;
     }
 
+    @Override
+    public double getQuantile(double fraction) {
+        return sketch.getQuantile(fraction);
+    }
+
     @Override
     public List<Measurement> getOutliers() {
         return outliers;
@@ -0,0 +1,193 @@
+package com.weather.report.reports;
+
+import java.util.DoubleSummaryStatistics;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+import com.weather.report.model.MeasurementColumns;
+import com.weather.report.model.MeasurementRollups;
+
+/**
+ * Mergeable accumulator of the series of a column store or of a set of
+ * rollups, compacted measurements included: number of points per key (e.g.
+ * the gateway or the sensor code of each series), optionally the statistics
+ * of the values per key, total number of points and time bounds.
+ * <p>
+ * Each partition of the series is filled by its own accumulator and the
+ * accumulators are then {@link #merge(SeriesAccumulator) merged}, so large
+ * inputs are accumulated in parallel on the common fork-join pool (see
+ * {@link #range(int, long)}). Counts, bounds and statistics do not depend on
+ * how the series are partitioned.
+ */
+public final class SeriesAccumulator {
+
+  /** Number of points from which the series are accumulated in parallel. */
+  public static final long PARALLEL_THRESHOLD = 50_000;
+
+  private final Map<String, Long> counts = new HashMap<>();
+  private final Map<String, DoubleSummaryStatistics> statistics;
+  private long count;
+  private long minEpochSecond = Long.MAX_VALUE;
+  private long maxEpochSecond = Long.MIN_VALUE;
+
+  /**
+   * @param withStatistics whether to keep the statistics of the values of each
+   *                       key
+   */
+  public SeriesAccumulator(boolean withStatistics) {
+    this.statistics = withStatistics ? new HashMap<>() : null;
+  }
+
+  /**
+   * Accumulates all the series of a column store.
+   *
+   * @param columns        measurements to accumulate
+   * @param keyOfSeries    key of each series, e.g.
+   *                       {@code columns::getGatewayCode}
+   * @param withStatistics whether to keep the statistics of the values of each
+   *                       key
+   * @return accumulator of all the series
+   */
+  public static SeriesAccumulator of(MeasurementColumns columns, IntFunction<String> keyOfSeries, boolean withStatistics) {
+    return range(columns.getSeriesCount(), columns.size()).collect(() -> new SeriesAccumulator(withStatistics),
+        (accumulator, s) -> accumulator.addSeries(columns, s, keyOfSeries.apply(s)), SeriesAccumulator::merge);
+  }
+
+  /**
+   * Accumulates all the series of a set of rollups, without statistics.
+   *
+   * @param rollups     rollups to accumulate
+   * @param keyOfSeries key of each series, e.g.
+   *                    {@code rollups::getGatewayCode}
+   * @return accumulator of all the series
+   */
+  public static SeriesAccumulator of(MeasurementRollups rollups, IntFunction<String> keyOfSeries) {
+    return range(rollups.getSeriesCount(), rollups.size()).collect(() -> new SeriesAccumulator(false),
+        (accumulator, s) -> accumulator.addSeries(rollups, s, keyOfSeries.apply(s)), SeriesAccumulator::merge);
+  }
+
+  /**
+   * Stream of the indexes {@code [0, size)}, parallel when the work behind them
+   * is large enough to pay for the partitioning.
+   *
+   * @param size   number of indexes, e.g. of series
+   * @param points number of points behind the indexes
+   * @return stream of the indexes
+   */
+  public static IntStream range(int size, long points) {
+    IntStream range = IntStream.range(0, size);
+    return points >= PARALLEL_THRESHOLD ? range.parallel() : range;
+  }
+
+  /**
+   * Adds a series of a column store, with its compacted measurements (see
+   * {@link MeasurementColumns#getCompacted()}).
+   *
+   * @param columns column store
+   * @param series  index of a series
+   * @param key     key the points of the series are counted under
+   */
+  public void addSeries(MeasurementColumns columns, int series, String key) {
+    int first = columns.getSeriesStart(series);
+    int end = columns.getSeriesEnd(series);
+    long seriesCount = end - first;
+    if (end > first) {
+      // ogni serie è ordinata per timestamp
+      minEpochSecond = Math.min(minEpochSecond, columns.getEpochSecond(first));
+      maxEpochSecond = Math.max(maxEpochSecond, columns.getEpochSecond(end - 1));
+    }
+    DoubleSummaryStatistics values = statistics != null
+        ? statistics.computeIfAbsent(key, k -> new DoubleSummaryStatistics()) : null;
+    if (values != null) {
+      for (int i = first; i < end; i++) {
+        values.accept(columns.getValue(i));
+      }
+    }
+    MeasurementRollups compacted = columns.getCompacted();
+    for (int r = compacted.getSeriesStart(series); r < compacted.getSeriesEnd(series); r++) {
+      long hourCount = compacted.getCount(r);
+      seriesCount += hourCount;
+      minEpochSecond = Math.min(minEpochSecond, compacted.getFirstEpochSecond(r));
+      maxEpochSecond = Math.max(maxEpochSecond, compacted.getLastEpochSecond(r));
+      if (values != null) {
+        values.combine(new DoubleSummaryStatistics(hourCount, compacted.getMin(r), compacted.getMax(r),
+            compacted.getMean(r) * hourCount));
+      }
+    }
+    counts.merge(key, seriesCount, Long::sum);
+    count += seriesCount;
+  }
+
+  /**
+   * Adds a series of a set of rollups; statistics, if kept, are not updated.
+   *
+   * @param rollups rollups
+   * @param series  index of a non-empty series
+   * @param key     key the points of the series are counted under
+   */
+  public void addSeries(MeasurementRollups rollups, int series, String key) {
+    int first = rollups.getSeriesStart(series);
+    int end = rollups.getSeriesEnd(series);
+    long seriesCount = 0;
+    for (int r = first; r < end; r++) {
+      seriesCount += rollups.getCount(r);
+    }
+    counts.merge(key, seriesCount, Long::sum);
+    count += seriesCount;
+    minEpochSecond = Math.min(minEpochSecond, rollups.getFirstEpochSecond(first));
+    maxEpochSecond = Math.max(maxEpochSecond, rollups.getLastEpochSecond(end - 1));
+  }
+
+  /**
+   * Adds everything accumulated by another instance, which is left unchanged.
+   *
+   * @param other accumulator of other series
+   */
+  public void merge(SeriesAccumulator other) {
+    other.counts.forEach((key, c) -> counts.merge(key, c, Long::sum));
+    if (statistics != null && other.statistics != null) {
+      other.statistics.forEach((key, values) -> statistics.computeIfAbsent(key, k -> new DoubleSummaryStatistics()).combine(values));
+    }
+    count += other.count;
+    minEpochSecond = Math.min(minEpochSecond, other.minEpochSecond);
+    maxEpochSecond = Math.max(maxEpochSecond, other.maxEpochSecond);
+  }
+
+  /**
+   * @return number of points of each key
+   */
+  public Map<String, Long> getCounts() {
+    return counts;
+  }
+
+  /**
+   * @return statistics of the values of each key, empty if not kept
+   */
+  public Map<String, DoubleSummaryStatistics> getStatistics() {
+    return statistics != null ? statistics : Map.of();
+  }
+
+  /**
+   * @return total number of points
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * @return first timestamp in epoch seconds, {@link Long#MAX_VALUE} if empty
+   */
+  public long getMinEpochSecond() {
+    return minEpochSecond;
+  }
+
+  /**
+   * @return last timestamp in epoch seconds, {@link Long#MIN_VALUE} if empty
+   */
+  public long getMaxEpochSecond() {
+    return maxEpochSecond;
+  }
+
+}
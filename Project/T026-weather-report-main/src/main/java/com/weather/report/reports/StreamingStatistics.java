@@ -0,0 +1,107 @@
+package com.weather.report.reports;
+
+/**
+ * Single-pass accumulator of count, mean, variance, minimum and maximum of a
+ * sequence of values, based on Welford's algorithm: the mean and the sum of
+ * squared differences from the mean are updated at each value, so the variance
+ * does not suffer from the cancellation of the naive sum of squares.
+ */
+public class StreamingStatistics {
+
+  private long count;
+  private double mean;
+  // somma dei quadrati delle differenze dalla media corrente
+  private double m2;
+  private double min = Double.MAX_VALUE;
+  private double max = -Double.MAX_VALUE;
+
+  /**
+   * Adds a value.
+   *
+   * @param value value to add
+   */
+  public void add(double value) {
+    count++;
+    double delta = value - mean;
+    mean += delta / count;
+    m2 += delta * (value - mean);
+    if (value < min) min = value;
+    if (value > max) max = value;
+  }
+
+  /**
+   * Adds all the values accumulated by another instance, as if they had been
+   * added to this one (Chan et al. parallel update).
+   *
+   * @param other statistics to merge into this one
+   */
+  public void merge(StreamingStatistics other) {
+    merge(other.count, other.mean, other.m2, other.min, other.max);
+  }
+
+  /**
+   * Adds a group of values known only by its summary, e.g. an hourly
+   * aggregate of compacted measurements.
+   *
+   * @param otherCount       number of values
+   * @param otherMean        mean of the values
+   * @param squaredDeviation sum of squared differences from the mean
+   * @param otherMin         minimum value
+   * @param otherMax         maximum value
+   */
+  public void merge(long otherCount, double otherMean, double squaredDeviation, double otherMin, double otherMax) {
+    if (otherCount == 0) return;
+    if (count == 0) {
+      count = otherCount;
+      mean = otherMean;
+      m2 = squaredDeviation;
+      min = otherMin;
+      max = otherMax;
+      return;
+    }
+    long total = count + otherCount;
+    double delta = otherMean - mean;
+    mean += delta * otherCount / total;
+    m2 += squaredDeviation + delta * delta * ((double) count * otherCount / total);
+    count = total;
+    if (otherMin < min) min = otherMin;
+    if (otherMax > max) max = otherMax;
+  }
+
+  /**
+   * @return number of added values
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * @return mean of the values, 0 if there are none
+   */
+  public double getMean() {
+    return mean;
+  }
+
+  /**
+   * @return sample variance (divided by {@code n - 1}), 0 with less than two
+   *         values
+   */
+  public double getVariance() {
+    return count < 2 ? 0.0 : m2 / (count - 1);
+  }
+
+  /**
+   * @return minimum value, {@link Double#MAX_VALUE} if there are none
+   */
+  public double getMin() {
+    return min;
+  }
+
+  /**
+   * @return maximum value, {@code -Double.MAX_VALUE} if there are none
+   */
+  public double getMax() {
+    return max;
+  }
+
+}
@@ -1,12 +1,18 @@
 package com.weather.report.repositories;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 
 import com.weather.report.persistence.PersistenceManager;
+import com.weather.report.persistence.UnitOfWork;
+
+import org.hibernate.Session;
+import org.hibernate.jpa.HibernateHints;
+
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Entity;
 import jakarta.persistence.EntityManager;
-import jakarta.persistence.EntityTransaction;
 
 /**
  * Generic repository exposing basic CRUD operations backed by the persistence
@@ -15,12 +21,20 @@ import jakarta.persistence.EntityTransaction;
  * Concrete repositories extend/compose this class to centralise common database
  * access
  * logic for all entities, as described in the README.
+ * <p>
+ * Write methods run in their own transaction, or join the
+ * {@link UnitOfWork} active on the current thread: in that case they share its
+ * {@link EntityManager} and the changes are committed (or rolled back) with
+ * the rest of the unit.
  *
  * @param <T>  entity type
  * @param <ID> identifier (primary key) type
  */
 public class CRUDRepository<T, ID> {
 
+  /** Entities persisted between two flushes in {@link #createAll(Collection)}, equal to {@code hibernate.jdbc.batch_size}. */
+  protected static final int FLUSH_INTERVAL = 50;
+
   protected Class<T> entityClass;
 
   /**
@@ -55,18 +69,38 @@ public class CRUDRepository<T, ID> {
    * @return persisted entity
    */
   public T create(T entity) {
-    EntityManager em = PersistenceManager.getEntityManager();
-    EntityTransaction tx = em.getTransaction();
-    try {
-        tx.begin();
-        em.persist(entity);
-        tx.commit();
+    try (UnitOfWork unitOfWork = PersistenceManager.beginUnitOfWork()) {
+        PersistenceManager.getEntityManager().persist(entity);
+        unitOfWork.commit();
         return entity;
-    } catch (Exception e) {
-        if (tx.isActive()) tx.rollback();
-        throw e;
-    } finally {
-        PersistenceManager.closeEntityManager();
+    }
+  }
+
+  /**
+   * Persists a group of new entities in a single transaction.
+   * <p>
+   * The persistence context is flushed and cleared every
+   * {@link #FLUSH_INTERVAL} entities, so that inserts are sent to the database
+   * in JDBC batches and the context does not grow with the size of the group.
+   * Inside a unit of work the context is only flushed, since it may hold
+   * entities still used by the caller.
+   *
+   * @param entities entities to persist
+   * @return number of persisted entities
+   */
+  public int createAll(Collection<T> entities) {
+    int count = 0;
+    try (UnitOfWork unitOfWork = PersistenceManager.beginUnitOfWork()) {
+        EntityManager em = PersistenceManager.getEntityManager();
+        for (T entity : entities) {
+            em.persist(entity);
+            if (++count % FLUSH_INTERVAL == 0) {
+                em.flush();
+                if (!unitOfWork.isJoined()) em.clear();
+            }
+        }
+        unitOfWork.commit();
+        return count;
     }
   }
 
@@ -87,14 +121,36 @@ public class CRUDRepository<T, ID> {
   }
 
   /**
-   * Reads all entities of the managed type.
+   * Reads several entities by identifier at once: entities found in the
+   * second-level cache are not read again, and the others are read with as few
+   * queries as possible instead of one each.
+   *
+   * @param ids identifiers (primary keys)
+   * @return found entities, in the order of {@code ids}, with {@code null} for
+   *         the absent ones
+   */
+  public List<T> read(List<ID> ids) {
+    EntityManager entityManager = PersistenceManager.getEntityManager();
+    try {
+      return entityManager.unwrap(Session.class).byMultipleIds(entityClass).multiLoad(ids);
+    } finally {
+      PersistenceManager.closeEntityManager();
+    }
+  }
+
+  /**
+   * Reads all entities of the managed type. For entities in the second-level
+   * cache the result goes in the query cache, which Hibernate drops whenever
+   * the table changes.
    *
    * @return list of all entities
    */
   public List<T> read() {
     EntityManager em = PersistenceManager.getEntityManager();
     try {
-        return em.createQuery("SELECT e FROM " + getEntityName() + " e", entityClass).getResultList();
+        return em.createQuery("SELECT e FROM " + getEntityName() + " e", entityClass)
+            .setHint(HibernateHints.HINT_CACHEABLE, entityClass.isAnnotationPresent(Cacheable.class))
+            .getResultList();
     } finally {
         PersistenceManager.closeEntityManager();
     }
@@ -107,21 +163,10 @@ public class CRUDRepository<T, ID> {
    * @return updated entity
    */
   public T update(T entity) {
-    EntityManager entityManager = PersistenceManager.getEntityManager();
-    EntityTransaction transaction = entityManager.getTransaction();
-
-    try {
-      transaction.begin();
-      T mergedEntity = entityManager.merge(entity);
-      transaction.commit();
+    try (UnitOfWork unitOfWork = PersistenceManager.beginUnitOfWork()) {
+      T mergedEntity = PersistenceManager.getEntityManager().merge(entity);
+      unitOfWork.commit();
       return mergedEntity;
-    } catch (RuntimeException e) {
-      if (transaction.isActive()) {
-        transaction.rollback();
-      }
-      throw e;
-    } finally {
-      PersistenceManager.closeEntityManager();
     }
   }
 
@@ -132,22 +177,14 @@ public class CRUDRepository<T, ID> {
    * @return deleted entity
    */
   public T delete(ID id) {
-    EntityManager em = PersistenceManager.getEntityManager();
-    EntityTransaction tx = em.getTransaction();
-    T entity = null;
-    try {
-        tx.begin();
-        entity = em.find(entityClass, id);
+    try (UnitOfWork unitOfWork = PersistenceManager.beginUnitOfWork()) {
+        EntityManager em = PersistenceManager.getEntityManager();
+        T entity = em.find(entityClass, id);
         if (entity != null) {
             em.remove(entity);
         }
-        tx.commit();
+        unitOfWork.commit();
         return entity;
-    } catch (Exception e) {
-        if (tx.isActive()) tx.rollback();
-        throw e;
-    } finally {
-        PersistenceManager.closeEntityManager();
     }
   }
 
@@ -0,0 +1,236 @@
+package com.weather.report.repositories;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.weather.report.model.MeasurementRollups;
+import com.weather.report.model.QuantileSketch;
+
+/**
+ * Hourly aggregates of a series, sorted by hour, in parallel primitive arrays.
+ * Quantile sketches are only kept when asked for, since updating one costs
+ * far more than the other aggregates.
+ */
+final class HourlyRollups {
+  private static final int INITIAL_CAPACITY = 16;
+
+  long[] hours = new long[INITIAL_CAPACITY];
+  long[] counts = new long[INITIAL_CAPACITY];
+  double[] means = new double[INITIAL_CAPACITY];
+  double[] squaredDeviations = new double[INITIAL_CAPACITY];
+  double[] minimums = new double[INITIAL_CAPACITY];
+  double[] maximums = new double[INITIAL_CAPACITY];
+  long[] firsts = new long[INITIAL_CAPACITY];
+  long[] lasts = new long[INITIAL_CAPACITY];
+  // null senza sketch; una posizione è null se l'aggregato unito non ne aveva uno
+  QuantileSketch[] sketches;
+  int size;
+
+  /**
+   * @param withSketches whether to keep a quantile sketch of each hour
+   */
+  HourlyRollups(boolean withSketches) {
+    sketches = withSketches ? new QuantileSketch[INITIAL_CAPACITY] : null;
+  }
+
+  /**
+   * Adds a point to the rollup of its hour (Welford update of mean and
+   * squared deviations).
+   */
+  void add(long epochSecond, double value) {
+    long hour = MeasurementRollups.hourOf(epochSecond);
+    int i = size > 0 && hours[size - 1] == hour ? size - 1 : lowerBound(hour);
+    if (i == size || hours[i] != hour) {
+      insertEmpty(i, hour);
+      minimums[i] = value;
+      maximums[i] = value;
+      firsts[i] = epochSecond;
+      lasts[i] = epochSecond;
+    }
+    counts[i]++;
+    double delta = value - means[i];
+    means[i] += delta / counts[i];
+    squaredDeviations[i] += delta * (value - means[i]);
+    if (value < minimums[i]) minimums[i] = value;
+    if (value > maximums[i]) maximums[i] = value;
+    if (epochSecond < firsts[i]) firsts[i] = epochSecond;
+    if (epochSecond > lasts[i]) lasts[i] = epochSecond;
+    if (sketches != null) sketches[i].add(value);
+  }
+
+  /**
+   * Merges an aggregate of the points of an hour in its rollup (pairwise
+   * update of mean and squared deviations).
+   */
+  void merge(long hour, long count, double mean, double squaredDeviation, double minimum, double maximum,
+      long first, long last, QuantileSketch sketch) {
+    int i = lowerBound(hour);
+    if (i == size || hours[i] != hour) {
+      insertEmpty(i, hour);
+      minimums[i] = minimum;
+      maximums[i] = maximum;
+      firsts[i] = first;
+      lasts[i] = last;
+    }
+    long total = counts[i] + count;
+    double delta = mean - means[i];
+    squaredDeviations[i] += squaredDeviation + delta * delta * counts[i] / total * count;
+    means[i] += delta * count / total;
+    counts[i] = total;
+    if (minimum < minimums[i]) minimums[i] = minimum;
+    if (maximum > maximums[i]) maximums[i] = maximum;
+    if (first < firsts[i]) firsts[i] = first;
+    if (last > lasts[i]) lasts[i] = last;
+    if (sketches != null && sketch != null) sketches[i].merge(sketch);
+  }
+
+  /**
+   * Merges the rollup {@code i} of another series of rollups.
+   */
+  void merge(HourlyRollups source, int i) {
+    merge(source.hours[i], source.counts[i], source.means[i], source.squaredDeviations[i], source.minimums[i],
+        source.maximums[i], source.firsts[i], source.lasts[i], source.sketches == null ? null : source.sketches[i]);
+  }
+
+  /**
+   * Appends a copy of a rollup of a later hour.
+   */
+  void append(HourlyRollups source, int i) {
+    insertEmpty(size, source.hours[i]);
+    int j = size - 1;
+    counts[j] = source.counts[i];
+    means[j] = source.means[i];
+    squaredDeviations[j] = source.squaredDeviations[i];
+    minimums[j] = source.minimums[i];
+    maximums[j] = source.maximums[i];
+    firsts[j] = source.firsts[i];
+    lasts[j] = source.lasts[i];
+    if (sketches != null) sketches[j] = source.sketches == null ? null : source.sketches[i].copy();
+  }
+
+  /**
+   * @return copies of the rollups lying entirely in {@code [from, to]}, from
+   *         their first to their last timestamp, or {@code null} if there are
+   *         none
+   */
+  HourlyRollups collectContained(long from, long to) {
+    HourlyRollups result = null;
+    int i = from == Long.MIN_VALUE ? 0 : lowerBound(MeasurementRollups.hourOf(from));
+    for (; i < size && hours[i] <= to; i++) {
+      if (firsts[i] < from || lasts[i] > to) continue;
+      if (result == null) result = new HourlyRollups(sketches != null);
+      result.append(this, i);
+    }
+    return result;
+  }
+
+  /**
+   * @return start of the first hour entirely inside an interval starting at
+   *         {@code from}
+   */
+  static long firstFullHour(long from) {
+    if (from == Long.MIN_VALUE) return Long.MIN_VALUE;
+    long hour = MeasurementRollups.hourOf(from);
+    return from == hour ? hour : hour + MeasurementRollups.HOUR_SECONDS;
+  }
+
+  /**
+   * @return start of the last hour entirely inside an interval ending at
+   *         {@code to}
+   */
+  static long lastFullHour(long to) {
+    if (to == Long.MAX_VALUE) return Long.MAX_VALUE;
+    long hour = MeasurementRollups.hourOf(to);
+    return to == hour + MeasurementRollups.HOUR_SECONDS - 1 ? hour : hour - MeasurementRollups.HOUR_SECONDS;
+  }
+
+  /**
+   * @return index of the first rollup whose hour is {@code >= hour}
+   */
+  int lowerBound(long hour) {
+    return MeasurementStore.lowerBound(hours, size, hour);
+  }
+
+  private void insertEmpty(int i, long hour) {
+    if (size == hours.length) {
+      int capacity = size * 2;
+      hours = Arrays.copyOf(hours, capacity);
+      counts = Arrays.copyOf(counts, capacity);
+      means = Arrays.copyOf(means, capacity);
+      squaredDeviations = Arrays.copyOf(squaredDeviations, capacity);
+      minimums = Arrays.copyOf(minimums, capacity);
+      maximums = Arrays.copyOf(maximums, capacity);
+      firsts = Arrays.copyOf(firsts, capacity);
+      lasts = Arrays.copyOf(lasts, capacity);
+      if (sketches != null) sketches = Arrays.copyOf(sketches, capacity);
+    }
+    int moved = size - i;
+    System.arraycopy(hours, i, hours, i + 1, moved);
+    System.arraycopy(counts, i, counts, i + 1, moved);
+    System.arraycopy(means, i, means, i + 1, moved);
+    System.arraycopy(squaredDeviations, i, squaredDeviations, i + 1, moved);
+    System.arraycopy(minimums, i, minimums, i + 1, moved);
+    System.arraycopy(maximums, i, maximums, i + 1, moved);
+    System.arraycopy(firsts, i, firsts, i + 1, moved);
+    System.arraycopy(lasts, i, lasts, i + 1, moved);
+    hours[i] = hour;
+    counts[i] = 0;
+    means[i] = 0;
+    squaredDeviations[i] = 0;
+    if (sketches != null) {
+      System.arraycopy(sketches, i, sketches, i + 1, moved);
+      sketches[i] = new QuantileSketch();
+    }
+    size++;
+  }
+
+  /**
+   * Copies the rollups of several series, {@code null} for none, in a single
+   * set of rollups, with {@code null} sketches for the rollups kept without.
+   *
+   * @param networkCodes network code of each series
+   * @param gatewayCodes gateway code of each series
+   * @param sensorCodes  sensor code of each series
+   * @param collected    rollups of each series, or {@code null}
+   * @return rollups of all the series, in the given order
+   */
+  static MeasurementRollups toRollups(String[] networkCodes, String[] gatewayCodes, String[] sensorCodes,
+      List<HourlyRollups> collected) {
+    int count = 0;
+    for (HourlyRollups r : collected) {
+      if (r != null) count += r.size;
+    }
+    int seriesCount = collected.size();
+    int[] offsets = new int[seriesCount + 1];
+    long[] hours = new long[count];
+    long[] counts = new long[count];
+    double[] means = new double[count];
+    double[] squaredDeviations = new double[count];
+    double[] minimums = new double[count];
+    double[] maximums = new double[count];
+    long[] firsts = new long[count];
+    long[] lasts = new long[count];
+    QuantileSketch[] sketches = new QuantileSketch[count];
+    int position = 0;
+    for (int i = 0; i < seriesCount; i++) {
+      HourlyRollups r = collected.get(i);
+      offsets[i] = position;
+      if (r == null) continue;
+      System.arraycopy(r.hours, 0, hours, position, r.size);
+      System.arraycopy(r.counts, 0, counts, position, r.size);
+      System.arraycopy(r.means, 0, means, position, r.size);
+      System.arraycopy(r.squaredDeviations, 0, squaredDeviations, position, r.size);
+      System.arraycopy(r.minimums, 0, minimums, position, r.size);
+      System.arraycopy(r.maximums, 0, maximums, position, r.size);
+      System.arraycopy(r.firsts, 0, firsts, position, r.size);
+      System.arraycopy(r.lasts, 0, lasts, position, r.size);
+      // gli sketch raccolti sono già copie indipendenti da quelli dello store
+      if (r.sketches != null) System.arraycopy(r.sketches, 0, sketches, position, r.size);
+      position += r.size;
+    }
+    offsets[seriesCount] = position;
+    return new MeasurementRollups(networkCodes, gatewayCodes, sensorCodes, offsets, hours, counts, means,
+        squaredDeviations, minimums, maximums, firsts, lasts, sketches);
+  }
+
+}
@@ -1,11 +1,862 @@
 package com.weather.report.repositories;
 
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.StatelessSession;
+import org.hibernate.query.SelectionQuery;
+
+import com.weather.report.model.MeasurementColumns;
+import com.weather.report.model.MeasurementRollups;
+import com.weather.report.model.QuantileSketch;
 import com.weather.report.model.entities.Measurement;
+import com.weather.report.model.entities.MeasurementAggregate;
+import com.weather.report.persistence.CodeDictionary;
+import com.weather.report.persistence.PersistenceManager;
+import com.weather.report.persistence.UnitOfWork;
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+
+/**
+ * Repository of the measurements.
+ * <p>
+ * Reports read columns and hourly rollups of the measurements of a code in a
+ * time interval. By default each read runs the indexed range queries on the
+ * measurements and on the aggregates of the compacted ones, and builds the
+ * columns of that range only; rollups of the hours lying entirely in the
+ * interval are computed by the database, grouped by hour, so that only the
+ * rows of the partial hours at its edges are read. With the system property
+ * {@value #COLUMN_STORE_PROPERTY} set to {@code true} (or
+ * {@link #setColumnStoreEnabled(boolean)}) reads are answered by a shared
+ * {@link MeasurementStore} instead, which holds the whole table in memory and
+ * only sees the writes of this process: it suits a single process owning the
+ * database.
+ */
 public class MeasurementRepository extends CRUDRepository<Measurement, Long> {
 
+  /** Default number of rows fetched at a time by {@link #scrollBySensor}. */
+  public static final int DEFAULT_FETCH_SIZE = 1000;
+
+  /**
+   * System property enabling the shared in-memory column store, disabled by
+   * default.
+   */
+  public static final String COLUMN_STORE_PROPERTY = "weatherreport.columnStore";
+
+  private static final String POINT_COLUMNS = "m.id, m.networkCode, m.gatewayCode, m.sensorCode, m.timestamp, m.value";
+  private static final String AGGREGATE_COLUMNS = "a.networkCode, a.gatewayCode, a.sensorCode, a.hour, a.count, a.mean,"
+      + " a.squaredDeviation, a.minimum, a.maximum, a.firstTimestamp, a.lastTimestamp, a.sketch";
+  // aggregati di ogni serie e ora calcolati dal database, con la varianza al posto della somma dei quadrati
+  private static final String HOURLY_GROUP_COLUMNS = "m.networkCode, m.gatewayCode, m.sensorCode,"
+      + " truncate(m.timestamp, hour), count(m), avg(m.value), var_pop(m.value), min(m.value), max(m.value),"
+      + " min(m.timestamp), max(m.timestamp)";
+
+  // condiviso da tutte le istanze, come la tabella che rispecchia; i watermark sono tenuti anche se è disabilitato
+  private static final MeasurementStore store = new MeasurementStore(MeasurementRepository::loadStore);
+  private static volatile boolean columnStoreEnabled = Boolean.getBoolean(COLUMN_STORE_PROPERTY);
+
+  static {
+    PersistenceManager.addResetListener(store::invalidate);
+  }
+
   public MeasurementRepository() {
     super(Measurement.class);
   }
 
+  /**
+   * Enables or disables the shared in-memory column store (see
+   * {@link #COLUMN_STORE_PROPERTY}). Its content is dropped either way.
+   *
+   * @param enabled whether reports read from the store
+   */
+  public static void setColumnStoreEnabled(boolean enabled) {
+    columnStoreEnabled = enabled;
+    store.invalidate();
+  }
+
+  /**
+   * @return {@code true} if reports read from the shared column store
+   */
+  public static boolean isColumnStoreEnabled() {
+    return columnStoreEnabled;
+  }
+
+  // lo store riceve le misure solo dopo il commit, anche dentro una unit of work
+  @Override
+  public Measurement create(Measurement entity) {
+    long generation = store.getGeneration();
+    Measurement created = super.create(entity);
+    PersistenceManager.afterCommit(() -> store.append(generation, List.of(created)));
+    return created;
+  }
+
+  @Override
+  public int createAll(Collection<Measurement> entities) {
+    long generation = store.getGeneration();
+    int count = super.createAll(entities);
+    // il chiamante potrebbe riusare la collezione prima del commit
+    Collection<Measurement> created = PersistenceManager.isInUnitOfWork() ? new ArrayList<>(entities) : entities;
+    PersistenceManager.afterCommit(() -> store.append(generation, created));
+    return count;
+  }
+
+  @Override
+  public Measurement update(Measurement entity) {
+    try {
+      return super.update(entity);
+    } finally {
+      invalidateStore();
+    }
+  }
+
+  @Override
+  public Measurement delete(Long id) {
+    try {
+      return super.delete(id);
+    } finally {
+      invalidateStore();
+    }
+  }
+
+  // dentro una unit of work lo store potrebbe essere ricaricato prima del
+  // commit, senza la modifica: va svuotato di nuovo dopo il commit
+  private static void invalidateStore() {
+    store.invalidate();
+    if (PersistenceManager.isInUnitOfWork()) PersistenceManager.afterCommit(store::invalidate);
+  }
+
+  /**
+   * Reads the measurements of a sensor taken in the interval {@code [start, end]}
+   * as columns.
+   *
+   * @param sensorCode code of the sensor
+   * @param start      inclusive lower bound ({@code null} or {@link LocalDateTime#MIN} for no bound)
+   * @param end        inclusive upper bound ({@code null} or {@link LocalDateTime#MAX} for no bound)
+   * @return columns of the measurements of the sensor in the interval
+   */
+  public MeasurementColumns readColumnsBySensor(String sensorCode, LocalDateTime start, LocalDateTime end) {
+    if (columnStoreEnabled) return store.readBySensor(sensorCode, lowerBound(start), upperBound(end));
+    return collect("sensorCode", List.of(sensorCode), start, end, true).toColumns();
+  }
+
+  /**
+   * Reads the measurements of several sensors taken in the interval
+   * {@code [start, end]} as columns, in a single read.
+   *
+   * @param sensorCodes codes of the sensors
+   * @param start       inclusive lower bound ({@code null} or {@link LocalDateTime#MIN} for no bound)
+   * @param end         inclusive upper bound ({@code null} or {@link LocalDateTime#MAX} for no bound)
+   * @return columns of the measurements of each sensor in the interval, in the
+   *         order of {@code sensorCodes}
+   */
+  public Map<String, MeasurementColumns> readColumnsBySensors(Collection<String> sensorCodes, LocalDateTime start,
+      LocalDateTime end) {
+    if (columnStoreEnabled) return store.readBySensors(sensorCodes, lowerBound(start), upperBound(end));
+    return collect("sensorCode", sensorCodes, start, end, true).toColumnsBySensor(sensorCodes);
+  }
+
+  /**
+   * Reads the measurements of a gateway taken in the interval {@code [start, end]}
+   * as columns.
+   *
+   * @param gatewayCode code of the gateway
+   * @param start       inclusive lower bound ({@code null} or {@link LocalDateTime#MIN} for no bound)
+   * @param end         inclusive upper bound ({@code null} or {@link LocalDateTime#MAX} for no bound)
+   * @return columns of the measurements of the gateway in the interval
+   */
+  public MeasurementColumns readColumnsByGateway(String gatewayCode, LocalDateTime start, LocalDateTime end) {
+    if (columnStoreEnabled) return store.readByGateway(gatewayCode, lowerBound(start), upperBound(end));
+    return collect("gatewayCode", List.of(gatewayCode), start, end, true).toColumns();
+  }
+
+  /**
+   * Reads the measurements of a network taken in the interval {@code [start, end]}
+   * as columns.
+   *
+   * @param networkCode code of the network
+   * @param start       inclusive lower bound ({@code null} or {@link LocalDateTime#MIN} for no bound)
+   * @param end         inclusive upper bound ({@code null} or {@link LocalDateTime#MAX} for no bound)
+   * @return columns of the measurements of the network in the interval
+   */
+  public MeasurementColumns readColumnsByNetwork(String networkCode, LocalDateTime start, LocalDateTime end) {
+    if (columnStoreEnabled) return store.readByNetwork(networkCode, lowerBound(start), upperBound(end));
+    return collect("networkCode", List.of(networkCode), start, end, true).toColumns();
+  }
+
+  /**
+   * Reads the hourly rollups of a sensor in the interval {@code [start, end]}.
+   *
+   * @param sensorCode   code of the sensor
+   * @param start        inclusive lower bound ({@code null} or {@link LocalDateTime#MIN} for no bound)
+   * @param end          inclusive upper bound ({@code null} or {@link LocalDateTime#MAX} for no bound)
+   * @param withSketches whether to compute the quantile sketch of each hour,
+   *                     which needs all the points of the interval
+   * @return hourly rollups of the measurements of the sensor in the interval
+   */
+  public MeasurementRollups readRollupsBySensor(String sensorCode, LocalDateTime start, LocalDateTime end,
+      boolean withSketches) {
+    if (columnStoreEnabled) return store.readRollupsBySensor(sensorCode, lowerBound(start), upperBound(end), withSketches);
+    return readRollupsInRange("sensorCode", sensorCode, start, end, withSketches);
+  }
+
+  /**
+   * Reads the hourly rollups of a gateway in the interval {@code [start, end]}.
+   *
+   * @param gatewayCode  code of the gateway
+   * @param start        inclusive lower bound ({@code null} or {@link LocalDateTime#MIN} for no bound)
+   * @param end          inclusive upper bound ({@code null} or {@link LocalDateTime#MAX} for no bound)
+   * @param withSketches whether to compute the quantile sketch of each hour,
+   *                     which needs all the points of the interval
+   * @return hourly rollups of the measurements of the gateway in the interval
+   */
+  public MeasurementRollups readRollupsByGateway(String gatewayCode, LocalDateTime start, LocalDateTime end,
+      boolean withSketches) {
+    if (columnStoreEnabled) return store.readRollupsByGateway(gatewayCode, lowerBound(start), upperBound(end), withSketches);
+    return readRollupsInRange("gatewayCode", gatewayCode, start, end, withSketches);
+  }
+
+  /**
+   * Reads the hourly rollups of a network in the interval {@code [start, end]}.
+   *
+   * @param networkCode  code of the network
+   * @param start        inclusive lower bound ({@code null} or {@link LocalDateTime#MIN} for no bound)
+   * @param end          inclusive upper bound ({@code null} or {@link LocalDateTime#MAX} for no bound)
+   * @param withSketches whether to compute the quantile sketch of each hour,
+   *                     which needs all the points of the interval
+   * @return hourly rollups of the measurements of the network in the interval
+   */
+  public MeasurementRollups readRollupsByNetwork(String networkCode, LocalDateTime start, LocalDateTime end,
+      boolean withSketches) {
+    if (columnStoreEnabled) return store.readRollupsByNetwork(networkCode, lowerBound(start), upperBound(end), withSketches);
+    return readRollupsInRange("networkCode", networkCode, start, end, withSketches);
+  }
+
+  /**
+   * Reads the aggregates of the compacted measurements of a sensor lying
+   * entirely in the interval {@code [start, end]}, without its measurements,
+   * e.g. to add them to a report that reads the measurements through
+   * {@link #scrollBySensor}.
+   *
+   * @param sensorCode code of the sensor
+   * @param start      inclusive lower bound ({@code null} or {@link LocalDateTime#MIN} for no bound)
+   * @param end        inclusive upper bound ({@code null} or {@link LocalDateTime#MAX} for no bound)
+   * @return hourly aggregates of the compacted measurements of the sensor in
+   *         the interval
+   */
+  public MeasurementRollups readCompactedBySensor(String sensorCode, LocalDateTime start, LocalDateTime end) {
+    if (columnStoreEnabled) return store.readCompactedBySensor(sensorCode, lowerBound(start), upperBound(end));
+    return collect("sensorCode", List.of(sensorCode), start, end, false).toCompacted();
+  }
+
+  /**
+   * Returns the ingest watermark of a sensor: a number that changes whenever
+   * measurements of the sensor are stored, updated or deleted, so results
+   * computed from its measurements can be reused while it does not change.
+   * It must be read before the measurements.
+   * <p>
+   * The watermarks are kept in memory and only advance on the writes and
+   * deletions made through this process, including with the column store
+   * disabled: results reused while the watermark does not change are correct
+   * only as long as this process is the single writer of the measurements.
+   *
+   * @param sensorCode code of the sensor
+   * @return current watermark of the sensor
+   */
+  public long getSensorWatermark(String sensorCode) {
+    return store.getSensorWatermark(sensorCode);
+  }
+
+  /**
+   * Returns the ingest watermark of a gateway (see {@link #getSensorWatermark(String)}).
+   *
+   * @param gatewayCode code of the gateway
+   * @return current watermark of the gateway
+   */
+  public long getGatewayWatermark(String gatewayCode) {
+    return store.getGatewayWatermark(gatewayCode);
+  }
+
+  /**
+   * Returns the ingest watermark of a network (see {@link #getSensorWatermark(String)}).
+   *
+   * @param networkCode code of the network
+   * @return current watermark of the network
+   */
+  public long getNetworkWatermark(String networkCode) {
+    return store.getNetworkWatermark(networkCode);
+  }
+
+  /**
+   * Reads the measurements and aggregates of the given codes that intersect
+   * {@code [start, end]} without going through a store.
+   *
+   * @param withPoints {@code false} to read only the aggregates
+   */
+  private RangeCollector collect(String codeAttribute, Collection<String> codes, LocalDateTime start,
+      LocalDateTime end, boolean withPoints) {
+    RangeCollector collector = new RangeCollector(lowerBound(start), upperBound(end));
+    loadRange(collector, codeAttribute, codes, start, end, withPoints);
+    return collector;
+  }
+
+  /**
+   * Reads the hourly rollups of a code in {@code [start, end]} from the
+   * database. Without sketches the hours entirely inside the interval are
+   * aggregated by the database, grouped by series and hour, and only the rows
+   * of the partial hours at the edges are read; with sketches all the rows of
+   * the interval are read.
+   */
+  private MeasurementRollups readRollupsInRange(String codeAttribute, String code, LocalDateTime start,
+      LocalDateTime end, boolean withSketches) {
+    long from = lowerBound(start);
+    long to = upperBound(end);
+    RangeCollector collector = new RangeCollector(from, to);
+    // un codice mai usato non ha misure, e la query lo aggiungerebbe al dizionario
+    if (code == null || CodeDictionary.findId(code) == null) return collector.toRollups(withSketches);
+    List<String> codes = List.of(code);
+
+    long fullFrom = HourlyRollups.firstFullHour(from);
+    long fullTo = HourlyRollups.lastFullHour(to);
+    EntityManager em = PersistenceManager.getEntityManager();
+    try {
+      if (withSketches || fullFrom > fullTo) {
+        addPoints(collector, em, codeAttribute, codes, start, end);
+      } else {
+        // le ore intere finiscono un nanosecondo prima dell'ora successiva
+        LocalDateTime fullStart = fullFrom == Long.MIN_VALUE ? null : MeasurementColumns.toLocalDateTime(fullFrom);
+        LocalDateTime fullEnd = fullTo == Long.MAX_VALUE ? null
+            : MeasurementColumns.toLocalDateTime(fullTo + MeasurementRollups.HOUR_SECONDS).minusNanos(1);
+        if (from < fullFrom) addPoints(collector, em, codeAttribute, codes, start, fullStart.minusNanos(1));
+        addHourlyGroups(collector, em, codeAttribute, codes, fullStart, fullEnd);
+        if (fullEnd != null && to > fullTo + MeasurementRollups.HOUR_SECONDS - 1) {
+          addPoints(collector, em, codeAttribute, codes, fullEnd.plusNanos(1), end);
+        }
+      }
+      addAggregates(collector, em, codeAttribute, codes, start, end);
+    } finally {
+      PersistenceManager.closeEntityManager();
+    }
+    return collector.toRollups(withSketches);
+  }
+
+  /**
+   * @return first epoch second not before {@code start}
+   */
+  private static long lowerBound(LocalDateTime start) {
+    if (start == null || start.equals(LocalDateTime.MIN)) return Long.MIN_VALUE;
+    long second = MeasurementColumns.toEpochSecond(start);
+    return start.getNano() == 0 ? second : second + 1;
+  }
+
+  /**
+   * @return last epoch second not after {@code end}
+   */
+  private static long upperBound(LocalDateTime end) {
+    if (end == null || end.equals(LocalDateTime.MAX)) return Long.MAX_VALUE;
+    return MeasurementColumns.toEpochSecond(end);
+  }
+
+  /**
+   * Returns the time partitions holding measurements or aggregates.
+   *
+   * @return partitions in ascending order (see {@link Measurement#partitionOf(LocalDateTime)})
+   */
+  public SortedSet<Integer> getPartitions() {
+    EntityManager em = PersistenceManager.getEntityManager();
+    try {
+      SortedSet<Integer> partitions = new TreeSet<>(
+          em.createQuery("SELECT DISTINCT m.partition FROM Measurement m", Integer.class).getResultList());
+      partitions.addAll(
+          em.createQuery("SELECT DISTINCT a.partition FROM MeasurementAggregate a", Integer.class).getResultList());
+      return partitions;
+    } finally {
+      PersistenceManager.closeEntityManager();
+    }
+  }
+
+  /**
+   * Drops all the measurements and aggregates of the partitions before the
+   * given one. Each table is cleared with a single statement on the partition
+   * index, without loading the rows.
+   *
+   * @param partition first partition to keep
+   * @return number of deleted rows
+   */
+  public int dropPartitionsBefore(int partition) {
+    try (UnitOfWork unitOfWork = PersistenceManager.beginUnitOfWork()) {
+      EntityManager em = PersistenceManager.getEntityManager();
+      int dropped = em.createQuery("DELETE FROM Measurement m WHERE m.partition < :partition")
+          .setParameter("partition", partition).executeUpdate();
+      dropped += em.createQuery("DELETE FROM MeasurementAggregate a WHERE a.partition < :partition")
+          .setParameter("partition", partition).executeUpdate();
+      invalidateStore();
+      unitOfWork.commit();
+      return dropped;
+    }
+  }
+
+  /**
+   * Replaces the measurements taken before {@code cutoff} with one
+   * {@link MeasurementAggregate} per series and hour, one partition at a time,
+   * each in its own transaction.
+   * <p>
+   * Reports still count the compacted measurements lying in their interval,
+   * whether they are computed from columns, rollups or a cursor on the
+   * measurements: count, mean, variance, minimum, maximum and quantiles of
+   * sensor reports, counts, load ratios and outlier sensors of gateway reports,
+   * counts, load ratios and time histogram of network reports (with an hour
+   * counted at its first timestamp). Only an hour lying entirely in the
+   * interval is counted, since its points can no longer be told apart.
+   * What needs single points only sees the measurements still stored: the
+   * outliers and the value histogram of sensor reports and the inter-arrival
+   * times of gateway reports. Quantiles of compacted hours come from their
+   * reduced sketches (see {@link MeasurementAggregate}), exact only for hours
+   * of at most {@link MeasurementAggregate#SKETCH_ITEMS} points.
+   * <p>
+   * {@code cutoff} is expected to be the start of an hour; measurements of the
+   * compacted range stored while it is being compacted may be lost, so it
+   * should be well in the past.
+   *
+   * @param cutoff first timestamp to keep as raw measurement
+   * @return number of compacted measurements
+   */
+  public long compactBefore(LocalDateTime cutoff) {
+    int lastPartition = Measurement.partitionOf(cutoff);
+    long compacted = 0;
+    for (int partition : getPartitions()) {
+      if (partition > lastPartition) break;
+      compacted += compactPartition(partition, cutoff);
+    }
+    return compacted;
+  }
+
+  private int compactPartition(int partition, LocalDateTime cutoff) {
+    try (UnitOfWork unitOfWork = PersistenceManager.beginUnitOfWork()) {
+      EntityManager em = PersistenceManager.getEntityManager();
+      HourlyAggregator aggregator = new HourlyAggregator();
+      // ordinate per serie e per tempo: ogni ora di una serie è un gruppo contiguo
+      try (Stream<Object[]> rows = em.createQuery(
+          "SELECT m.networkCode, m.gatewayCode, m.sensorCode, m.timestamp, m.value FROM Measurement m"
+              + " WHERE m.partition = :partition AND m.timestamp < :cutoff"
+              + " ORDER BY m.sensorCode, m.gatewayCode, m.networkCode, m.timestamp",
+          Object[].class).setParameter("partition", partition).setParameter("cutoff", cutoff).getResultStream()) {
+        rows.forEach(row -> aggregator.add((String) row[0], (String) row[1], (String) row[2], (LocalDateTime) row[3],
+            (Double) row[4]));
+      }
+      List<MeasurementAggregate> aggregates = aggregator.finish();
+      for (int i = 0; i < aggregates.size(); i++) {
+        em.persist(aggregates.get(i));
+        if ((i + 1) % FLUSH_INTERVAL == 0) em.flush();
+      }
+      int compacted = em.createQuery("DELETE FROM Measurement m WHERE m.partition = :partition AND m.timestamp < :cutoff")
+          .setParameter("partition", partition).setParameter("cutoff", cutoff).executeUpdate();
+      invalidateStore();
+      unitOfWork.commit();
+      return compacted;
+    }
+  }
+
+  /**
+   * Fills the column store with all the measurements, in timestamp order so
+   * that points are appended to their series, and with the aggregates of the
+   * compacted ones.
+   *
+   * @param target store to fill
+   */
+  private static void loadStore(MeasurementStore target) {
+    EntityManager em = PersistenceManager.getEntityManager();
+    try {
+      addPoints(target, em.createQuery("SELECT " + POINT_COLUMNS + " FROM Measurement m ORDER BY m.timestamp",
+          Object[].class));
+      addAggregates(target, em.createQuery("SELECT " + AGGREGATE_COLUMNS + " FROM MeasurementAggregate a",
+          Object[].class));
+    } finally {
+      PersistenceManager.closeEntityManager();
+    }
+  }
+
+  /**
+   * Reads the measurements of the given codes in {@code [start, end]},
+   * through the (code, timestamp) indexes, and the aggregates of the hours
+   * that intersect the interval: one query for the points of all the codes
+   * and one for their aggregates, whatever the number of codes.
+   *
+   * @param target        collector receiving the rows
+   * @param codeAttribute name of the code attribute of {@link Measurement}
+   * @param codes         values of the code
+   * @param start         inclusive lower bound
+   * @param end           inclusive upper bound
+   * @param withPoints    {@code false} to load only the aggregates
+   */
+  private void loadRange(RangeCollector target, String codeAttribute, Collection<String> codes, LocalDateTime start,
+      LocalDateTime end, boolean withPoints) {
+    // un codice mai usato non ha misure, e la query lo aggiungerebbe al dizionario
+    List<String> known = codes.stream().filter(code -> code != null && CodeDictionary.findId(code) != null)
+        .distinct().toList();
+    if (known.isEmpty()) return;
+
+    // una query per i punti e una per gli aggregati di tutti i codici, divisi poi per serie
+    EntityManager em = PersistenceManager.getEntityManager();
+    try {
+      if (withPoints) addPoints(target, em, codeAttribute, known, start, end);
+      addAggregates(target, em, codeAttribute, known, start, end);
+    } finally {
+      PersistenceManager.closeEntityManager();
+    }
+  }
+
+  /**
+   * Adds to a collector the points of the given codes in
+   * {@code [start, end]}, in timestamp order for each code.
+   */
+  private void addPoints(RangeCollector target, EntityManager em, String codeAttribute, Collection<String> codes,
+      LocalDateTime start, LocalDateTime end) {
+    boolean hasStart = hasStart(start);
+    boolean hasEnd = hasEnd(end);
+    TypedQuery<Object[]> points = em.createQuery(rangeSelection(POINT_COLUMNS, codeAttribute, hasStart, hasEnd)
+        + " ORDER BY m." + codeAttribute + ", m.timestamp", Object[].class).setParameter("codes", codes);
+    if (hasStart) points.setParameter("start", start);
+    if (hasEnd) points.setParameter("end", end);
+    addPoints(target, points);
+  }
+
+  /**
+   * Adds to a collector the measurements of the given codes in
+   * {@code [start, end]}, aggregated by the database for each series and hour.
+   */
+  private void addHourlyGroups(RangeCollector target, EntityManager em, String codeAttribute,
+      Collection<String> codes, LocalDateTime start, LocalDateTime end) {
+    boolean hasStart = hasStart(start);
+    boolean hasEnd = hasEnd(end);
+    TypedQuery<Object[]> groups = em.createQuery(rangeSelection(HOURLY_GROUP_COLUMNS, codeAttribute, hasStart, hasEnd)
+        + " GROUP BY m.networkCode, m.gatewayCode, m.sensorCode, truncate(m.timestamp, hour)", Object[].class)
+        .setParameter("codes", codes);
+    if (hasStart) groups.setParameter("start", start);
+    if (hasEnd) groups.setParameter("end", end);
+    try (Stream<Object[]> rows = groups.getResultStream()) {
+      rows.forEach(row -> {
+        long count = (Long) row[4];
+        target.addHourlyGroup((String) row[0], (String) row[1], (String) row[2],
+            MeasurementColumns.toEpochSecond((LocalDateTime) row[3]), count, (Double) row[5], (Double) row[6] * count,
+            (Double) row[7], (Double) row[8], MeasurementColumns.toEpochSecond((LocalDateTime) row[9]),
+            MeasurementColumns.toEpochSecond((LocalDateTime) row[10]));
+      });
+    }
+  }
+
+  /**
+   * Adds to a collector the aggregates of the given codes whose hour
+   * intersects {@code [start, end]}.
+   */
+  private static void addAggregates(RangeCollector target, EntityManager em, String codeAttribute,
+      Collection<String> codes, LocalDateTime start, LocalDateTime end) {
+    boolean hasStart = hasStart(start);
+    boolean hasEnd = hasEnd(end);
+    TypedQuery<Object[]> aggregates = em.createQuery(aggregateQuery(codeAttribute, hasStart, hasEnd), Object[].class)
+        .setParameter("codes", codes);
+    if (hasStart) aggregates.setParameter("start", start.truncatedTo(ChronoUnit.HOURS));
+    if (hasEnd) aggregates.setParameter("end", end);
+    addAggregates(target, aggregates);
+  }
+
+  /**
+   * Adds to a store or collector the points selected by a query on
+   * {@link #POINT_COLUMNS}, in timestamp order.
+   */
+  private static void addPoints(MeasurementSink target, TypedQuery<Object[]> query) {
+    try (Stream<Object[]> rows = query.getResultStream()) {
+      rows.forEach(row -> target.add((Long) row[0], (String) row[1], (String) row[2], (String) row[3],
+          (LocalDateTime) row[4], (Double) row[5]));
+    }
+  }
+
+  /**
+   * Adds to a store or collector the aggregates selected by a query on
+   * {@link #AGGREGATE_COLUMNS}.
+   */
+  private static void addAggregates(MeasurementSink target, TypedQuery<Object[]> query) {
+    try (Stream<Object[]> rows = query.getResultStream()) {
+      rows.forEach(row -> addAggregate(target, row));
+    }
+  }
+
+  /**
+   * Adds to a store or collector an aggregate read as {@link #AGGREGATE_COLUMNS}.
+   */
+  private static void addAggregate(MeasurementSink target, Object[] row) {
+    target.addAggregate((String) row[0], (String) row[1], (String) row[2],
+        MeasurementColumns.toEpochSecond((LocalDateTime) row[3]), (Long) row[4], (Double) row[5], (Double) row[6],
+        (Double) row[7], (Double) row[8], MeasurementColumns.toEpochSecond((LocalDateTime) row[9]),
+        MeasurementColumns.toEpochSecond((LocalDateTime) row[10]),
+        row[11] == null ? null : QuantileSketch.fromBytes((byte[]) row[11]));
+  }
+
+  /**
+   * Reads the measurements of a sensor taken in the interval {@code [start, end]}.
+   *
+   * @param sensorCode code of the sensor
+   * @param start      inclusive lower bound ({@code null} or {@link LocalDateTime#MIN} for no bound)
+   * @param end        inclusive upper bound ({@code null} or {@link LocalDateTime#MAX} for no bound)
+   * @return measurements of the sensor in the interval, ordered by timestamp
+   */
+  public List<Measurement> readBySensor(String sensorCode, LocalDateTime start, LocalDateTime end) {
+    return readInRange("sensorCode", sensorCode, start, end);
+  }
+
+  /**
+   * Reads the measurements of a gateway taken in the interval {@code [start, end]}.
+   *
+   * @param gatewayCode code of the gateway
+   * @param start       inclusive lower bound ({@code null} or {@link LocalDateTime#MIN} for no bound)
+   * @param end         inclusive upper bound ({@code null} or {@link LocalDateTime#MAX} for no bound)
+   * @return measurements of the gateway in the interval, ordered by timestamp
+   */
+  public List<Measurement> readByGateway(String gatewayCode, LocalDateTime start, LocalDateTime end) {
+    return readInRange("gatewayCode", gatewayCode, start, end);
+  }
+
+  /**
+   * Reads the measurements of a network taken in the interval {@code [start, end]}.
+   *
+   * @param networkCode code of the network
+   * @param start       inclusive lower bound ({@code null} or {@link LocalDateTime#MIN} for no bound)
+   * @param end         inclusive upper bound ({@code null} or {@link LocalDateTime#MAX} for no bound)
+   * @return measurements of the network in the interval, ordered by timestamp
+   */
+  public List<Measurement> readByNetwork(String networkCode, LocalDateTime start, LocalDateTime end) {
+    return readInRange("networkCode", networkCode, start, end);
+  }
+
+  /**
+   * Builds and runs the range query on the given code attribute. Open bounds are
+   * left out of the query so that the (code, timestamp) indexes are used as a
+   * plain prefix scan.
+   *
+   * @param codeAttribute name of the code attribute of {@link Measurement}
+   * @param code          value of the code
+   * @param start         inclusive lower bound
+   * @param end           inclusive upper bound
+   * @return matching measurements ordered by timestamp
+   */
+  private List<Measurement> readInRange(String codeAttribute, String code, LocalDateTime start, LocalDateTime end) {
+    // un codice mai usato non ha misure, e la query lo aggiungerebbe al dizionario
+    if (code == null || CodeDictionary.findId(code) == null) return new ArrayList<>();
+
+    boolean hasStart = hasStart(start);
+    boolean hasEnd = hasEnd(end);
+
+    EntityManager em = PersistenceManager.getEntityManager();
+    try {
+      TypedQuery<Measurement> query = em.createQuery(rangeQuery(codeAttribute, hasStart, hasEnd), entityClass)
+          .setParameter("codes", List.of(code));
+      if (hasStart) query.setParameter("start", start);
+      if (hasEnd) query.setParameter("end", end);
+      return query.getResultList();
+    } finally {
+      PersistenceManager.closeEntityManager();
+    }
+  }
+
+  /**
+   * Reads the measurements of a sensor taken in the interval {@code [start, end]}
+   * through a forward-only database cursor, {@code fetchSize} rows at a time.
+   * The measurements are read by a stateless session and are not kept after
+   * being passed to {@code action}, so memory use does not depend on the size
+   * of the interval.
+   *
+   * @param sensorCode code of the sensor
+   * @param start      inclusive lower bound ({@code null} or {@link LocalDateTime#MIN} for no bound)
+   * @param end        inclusive upper bound ({@code null} or {@link LocalDateTime#MAX} for no bound)
+   * @param fetchSize  number of rows fetched at a time
+   * @param action     action performed on each measurement, in timestamp order
+   * @return number of measurements read
+   */
+  public long scrollBySensor(String sensorCode, LocalDateTime start, LocalDateTime end, int fetchSize,
+      Consumer<Measurement> action) {
+    try (StatelessSession session = PersistenceManager.openStatelessSession()) {
+      return scrollBySensor(session, sensorCode, start, end, fetchSize, action);
+    }
+  }
+
+  /**
+   * Opens a read-only snapshot of the measurements, for reads that must see
+   * the same measurements, such as the scans of a streaming report (see
+   * {@link MeasurementSnapshot}). It reads the database even when the shared
+   * column store is enabled.
+   *
+   * @return the snapshot, to be closed by the caller
+   */
+  public MeasurementSnapshot openSnapshot() {
+    return new MeasurementSnapshot(this, PersistenceManager.openStatelessSession());
+  }
+
+  /**
+   * Runs the cursor of {@link #scrollBySensor(String, LocalDateTime, LocalDateTime, int, Consumer)}
+   * in the given session.
+   */
+  long scrollBySensor(StatelessSession session, String sensorCode, LocalDateTime start, LocalDateTime end,
+      int fetchSize, Consumer<Measurement> action) {
+    if (fetchSize < 1) throw new IllegalArgumentException("fetchSize must be positive");
+    if (sensorCode == null || CodeDictionary.findId(sensorCode) == null) return 0;
+
+    boolean hasStart = hasStart(start);
+    boolean hasEnd = hasEnd(end);
+    long count = 0;
+    SelectionQuery<Measurement> query = session
+        .createSelectionQuery(rangeQuery("sensorCode", hasStart, hasEnd), Measurement.class)
+        .setParameter("codes", List.of(sensorCode)).setFetchSize(fetchSize);
+    if (hasStart) query.setParameter("start", start);
+    if (hasEnd) query.setParameter("end", end);
+    try (ScrollableResults<Measurement> rows = query.scroll(ScrollMode.FORWARD_ONLY)) {
+      while (rows.next()) {
+        action.accept(rows.get());
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Reads in the given session the aggregates of the compacted measurements of
+   * a sensor lying entirely in {@code [start, end]} (see
+   * {@link #readCompactedBySensor(String, LocalDateTime, LocalDateTime)}).
+   */
+  MeasurementRollups readCompactedBySensor(StatelessSession session, String sensorCode, LocalDateTime start,
+      LocalDateTime end) {
+    RangeCollector collector = new RangeCollector(lowerBound(start), upperBound(end));
+    if (sensorCode == null || CodeDictionary.findId(sensorCode) == null) return collector.toCompacted();
+
+    boolean hasStart = hasStart(start);
+    boolean hasEnd = hasEnd(end);
+    SelectionQuery<Object[]> query = session
+        .createSelectionQuery(aggregateQuery("sensorCode", hasStart, hasEnd), Object[].class)
+        .setParameter("codes", List.of(sensorCode));
+    if (hasStart) query.setParameter("start", start.truncatedTo(ChronoUnit.HOURS));
+    if (hasEnd) query.setParameter("end", end);
+    try (Stream<Object[]> rows = query.getResultStream()) {
+      rows.forEach(row -> addAggregate(collector, row));
+    }
+    return collector.toCompacted();
+  }
+
+  private static boolean hasStart(LocalDateTime start) {
+    return start != null && !start.equals(LocalDateTime.MIN);
+  }
+
+  private static boolean hasEnd(LocalDateTime end) {
+    return end != null && !end.equals(LocalDateTime.MAX);
+  }
+
+  /**
+   * Builds the range query on the given code attribute, with the
+   * {@code :codes}, {@code :start} and {@code :end} parameters.
+   */
+  private String rangeQuery(String codeAttribute, boolean hasStart, boolean hasEnd) {
+    return rangeQuery("m", codeAttribute, hasStart, hasEnd);
+  }
+
+  /**
+   * Builds the range query on the given code attribute selecting the given
+   * expressions of {@code m}.
+   */
+  private String rangeQuery(String selection, String codeAttribute, boolean hasStart, boolean hasEnd) {
+    return rangeSelection(selection, codeAttribute, hasStart, hasEnd) + " ORDER BY m.timestamp";
+  }
+
+  /**
+   * Builds the range selection on the given code attribute, without ordering.
+   */
+  private String rangeSelection(String selection, String codeAttribute, boolean hasStart, boolean hasEnd) {
+    StringBuilder jpql = new StringBuilder("SELECT ").append(selection).append(" FROM ").append(getEntityName())
+        .append(" m WHERE m.").append(codeAttribute).append(" IN :codes");
+    if (hasStart) jpql.append(" AND m.timestamp >= :start");
+    if (hasEnd) jpql.append(" AND m.timestamp <= :end");
+    return jpql.toString();
+  }
+
+  /**
+   * Builds the query on the aggregates of the given code attribute whose hour
+   * intersects the interval, with the {@code :codes}, {@code :start} (start of
+   * its hour) and {@code :end} parameters. The hours at the edges are read
+   * whole: only the aggregates lying entirely in the interval are then used.
+   */
+  private static String aggregateQuery(String codeAttribute, boolean hasStart, boolean hasEnd) {
+    StringBuilder jpql = new StringBuilder("SELECT ").append(AGGREGATE_COLUMNS)
+        .append(" FROM MeasurementAggregate a WHERE a.").append(codeAttribute).append(" IN :codes");
+    if (hasStart) jpql.append(" AND a.hour >= :start");
+    if (hasEnd) jpql.append(" AND a.hour <= :end");
+    return jpql.toString();
+  }
+
+  /**
+   * Builds the hourly aggregates of measurements read grouped by series and
+   * hour. The sketch of each hour is reduced to
+   * {@link MeasurementAggregate#SKETCH_ITEMS} items before being stored.
+   */
+  private static final class HourlyAggregator {
+    private final List<MeasurementAggregate> aggregates = new ArrayList<>();
+    private String networkCode;
+    private String gatewayCode;
+    private String sensorCode;
+    private LocalDateTime hour;
+    private long count;
+    private double mean;
+    private double squaredDeviation;
+    private double minimum;
+    private double maximum;
+    private LocalDateTime first;
+    private LocalDateTime last;
+    private QuantileSketch sketch;
+
+    void add(String networkCode, String gatewayCode, String sensorCode, LocalDateTime timestamp, double value) {
+      LocalDateTime pointHour = timestamp.truncatedTo(ChronoUnit.HOURS);
+      if (count == 0 || !pointHour.equals(hour) || !Objects.equals(sensorCode, this.sensorCode)
+          || !Objects.equals(gatewayCode, this.gatewayCode) || !Objects.equals(networkCode, this.networkCode)) {
+        emit();
+        this.networkCode = networkCode;
+        this.gatewayCode = gatewayCode;
+        this.sensorCode = sensorCode;
+        this.hour = pointHour;
+        mean = 0;
+        squaredDeviation = 0;
+        minimum = value;
+        maximum = value;
+        first = timestamp;
+        sketch = new QuantileSketch();
+      }
+      count++;
+      double delta = value - mean;
+      mean += delta / count;
+      squaredDeviation += delta * (value - mean);
+      minimum = Math.min(minimum, value);
+      maximum = Math.max(maximum, value);
+      last = timestamp;
+      sketch.add(value);
+    }
+
+    List<MeasurementAggregate> finish() {
+      emit();
+      return aggregates;
+    }
+
+    private void emit() {
+      if (count == 0) return;
+      aggregates.add(new MeasurementAggregate(networkCode, gatewayCode, sensorCode, hour, count, mean,
+          squaredDeviation, minimum, maximum, first, last, sketch.compactedTo(MeasurementAggregate.SKETCH_ITEMS).toBytes()));
+      count = 0;
+    }
+  }
+
 }
@@ -0,0 +1,44 @@
+package com.weather.report.repositories;
+
+import java.time.LocalDateTime;
+
+import com.weather.report.model.QuantileSketch;
+
+/**
+ * Receives the points and the compacted aggregates read from the database.
+ */
+interface MeasurementSink {
+
+  /**
+   * Adds a point. The points of a series are received in timestamp order.
+   *
+   * @param id          id of the measurement of the point
+   * @param networkCode network code of the point
+   * @param gatewayCode gateway code of the point
+   * @param sensorCode  sensor code of the point
+   * @param timestamp   timestamp of the point
+   * @param value       value of the point
+   */
+  void add(long id, String networkCode, String gatewayCode, String sensorCode, LocalDateTime timestamp, double value);
+
+  /**
+   * Adds a compacted hourly aggregate.
+   *
+   * @param networkCode       network code of the aggregate
+   * @param gatewayCode       gateway code of the aggregate
+   * @param sensorCode        sensor code of the aggregate
+   * @param hour              start of the hour in epoch seconds
+   * @param count             number of points
+   * @param mean              mean value
+   * @param squaredDeviation  sum of squared differences from the mean
+   * @param minimum           minimum value
+   * @param maximum           maximum value
+   * @param first             first timestamp in epoch seconds
+   * @param last              last timestamp in epoch seconds
+   * @param sketch            quantile sketch of the values, {@code null} for
+   *                          aggregates compacted without one
+   */
+  void addAggregate(String networkCode, String gatewayCode, String sensorCode, long hour, long count, double mean,
+      double squaredDeviation, double minimum, double maximum, long first, long last, QuantileSketch sketch);
+
+}
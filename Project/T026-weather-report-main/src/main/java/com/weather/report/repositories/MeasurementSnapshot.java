@@ -0,0 +1,94 @@
+package com.weather.report.repositories;
+
+import java.sql.Connection;
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
+
+import org.hibernate.StatelessSession;
+
+import com.weather.report.model.MeasurementRollups;
+import com.weather.report.model.entities.Measurement;
+
+/**
+ * Read-only view of the measurements as they were when it was opened, for
+ * reports that read them more than once.
+ * <p>
+ * All its reads run in a single read-only transaction at
+ * {@link Connection#TRANSACTION_REPEATABLE_READ} isolation, so they see the
+ * same measurements and aggregates even while others are being stored or
+ * compacted. It holds a database connection until it is closed.
+ */
+public final class MeasurementSnapshot implements AutoCloseable {
+
+  private final MeasurementRepository repository;
+  private final StatelessSession session;
+  private final int isolation;
+
+  MeasurementSnapshot(MeasurementRepository repository, StatelessSession session) {
+    this.repository = repository;
+    this.session = session;
+    try {
+      // l'isolamento va impostato prima che la transazione inizi
+      isolation = session.doReturningWork(connection -> {
+        int previous = connection.getTransactionIsolation();
+        connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        connection.setReadOnly(true);
+        return previous;
+      });
+      session.beginTransaction();
+    } catch (RuntimeException e) {
+      session.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Reads the measurements of a sensor in the snapshot, like
+   * {@link MeasurementRepository#scrollBySensor(String, LocalDateTime, LocalDateTime, int, Consumer)}.
+   *
+   * @param sensorCode code of the sensor
+   * @param start      inclusive lower bound ({@code null} or {@link LocalDateTime#MIN} for no bound)
+   * @param end        inclusive upper bound ({@code null} or {@link LocalDateTime#MAX} for no bound)
+   * @param fetchSize  number of rows fetched at a time
+   * @param action     action performed on each measurement, in timestamp order
+   * @return number of measurements read
+   */
+  public long scrollBySensor(String sensorCode, LocalDateTime start, LocalDateTime end, int fetchSize,
+      Consumer<Measurement> action) {
+    return repository.scrollBySensor(session, sensorCode, start, end, fetchSize, action);
+  }
+
+  /**
+   * Reads the aggregates of the compacted measurements of a sensor in the
+   * snapshot, like
+   * {@link MeasurementRepository#readCompactedBySensor(String, LocalDateTime, LocalDateTime)}.
+   *
+   * @param sensorCode code of the sensor
+   * @param start      inclusive lower bound ({@code null} or {@link LocalDateTime#MIN} for no bound)
+   * @param end        inclusive upper bound ({@code null} or {@link LocalDateTime#MAX} for no bound)
+   * @return hourly aggregates of the compacted measurements of the sensor in
+   *         the interval
+   */
+  public MeasurementRollups readCompactedBySensor(String sensorCode, LocalDateTime start, LocalDateTime end) {
+    return repository.readCompactedBySensor(session, sensorCode, start, end);
+  }
+
+  /**
+   * Ends the transaction and releases the connection.
+   */
+  @Override
+  public void close() {
+    try {
+      // solo letture: la transazione può essere annullata
+      if (session.getTransaction().isActive()) session.getTransaction().rollback();
+      // la connessione torna al pool con le impostazioni di prima
+      session.doWork(connection -> {
+        connection.setReadOnly(false);
+        connection.setTransactionIsolation(isolation);
+      });
+    } finally {
+      session.close();
+    }
+  }
+
+}
@@ -0,0 +1,571 @@
+package com.weather.report.repositories;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.weather.report.model.MeasurementColumns;
+import com.weather.report.model.MeasurementRollups;
+import com.weather.report.model.QuantileSketch;
+import com.weather.report.model.entities.Measurement;
+
+/**
+ * In-memory, column-oriented copy of the measurement table used to compute
+ * reports without reading and materialising entities.
+ * <p>
+ * Each series (network, gateway and sensor code) keeps its points in time
+ * chunks of primitive {@code long} ids and epoch seconds and {@code double}
+ * values,
+ * sorted by timestamp, so that the points of a time range are found with
+ * binary searches, and next to them hourly rollups (count, mean, sum of squared
+ * differences from the mean, minimum and maximum) updated at each insert, so
+ * that whole hours can be aggregated without reading their points. Quantile
+ * sketches are not kept for the points: rollups read with sketches are
+ * computed from the points of the interval. The store is shared by
+ * {@link MeasurementRepository} when enabled: it is loaded with the whole
+ * table on first use, then kept up to date after each committed insert, and
+ * any other change, or an insert racing with a load, drops it so that it is
+ * loaded again.
+ * <p>
+ * Compacted measurements only exist as hourly aggregates: they are merged in
+ * the rollups of their series and also kept apart, but have no points. Every
+ * read includes the aggregates lying entirely inside its interval, from their
+ * first to their last timestamp, and leaves out the others: the rollups
+ * include them with the hours they fall in, and the columns carry them next
+ * to the points (see {@link MeasurementColumns#getCompacted()}), so the same
+ * compacted measurements are counted whichever is read.
+ * <p>
+ * The store also keeps a watermark for each sensor, gateway and network code,
+ * advanced by every insert of measurements with that code and by every drop,
+ * so that results computed from the measurements of a code can be reused as
+ * long as its watermark does not change.
+ */
+class MeasurementStore implements MeasurementSink {
+
+  /** Maximum number of points of a chunk. */
+  static final int CHUNK_CAPACITY = 4096;
+  private static final int INITIAL_CHUNK_CAPACITY = 16;
+
+  /**
+   * Fills an empty store with the content of the database.
+   */
+  interface Loader {
+    /**
+     * @param store store to fill through {@link MeasurementStore#add}
+     */
+    void loadInto(MeasurementStore store);
+  }
+
+  private final Loader loader;
+  private final Map<List<String>, Series> series = new HashMap<>();
+  private final Map<String, List<Series>> bySensor = new HashMap<>();
+  private final Map<String, List<Series>> byGateway = new HashMap<>();
+  private final Map<String, List<Series>> byNetwork = new HashMap<>();
+  private boolean loaded;
+  // incrementato a ogni caricamento o svuotamento dello store
+  private long generation;
+  // incrementato a ogni scrittura, i watermark sono i valori dell'ultima scrittura di ogni codice
+  private long version;
+  private long droppedVersion;
+  private final Map<String, Long> sensorWatermarks = new HashMap<>();
+  private final Map<String, Long> gatewayWatermarks = new HashMap<>();
+  private final Map<String, Long> networkWatermarks = new HashMap<>();
+
+  MeasurementStore(Loader loader) {
+    this.loader = loader;
+  }
+
+  /**
+   * @return current generation, to be read before committing an insert and
+   *         passed to {@link #append(long, Collection)}
+   */
+  synchronized long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Drops the content of the store, which is loaded again on next read.
+   */
+  synchronized void invalidate() {
+    series.clear();
+    bySensor.clear();
+    byGateway.clear();
+    byNetwork.clear();
+    loaded = false;
+    generation++;
+    // tutti i watermark avanzano: quelli dei singoli codici non servono più
+    droppedVersion = ++version;
+    sensorWatermarks.clear();
+    gatewayWatermarks.clear();
+    networkWatermarks.clear();
+  }
+
+  synchronized long getSensorWatermark(String code) {
+    return Math.max(droppedVersion, sensorWatermarks.getOrDefault(code, 0L));
+  }
+
+  synchronized long getGatewayWatermark(String code) {
+    return Math.max(droppedVersion, gatewayWatermarks.getOrDefault(code, 0L));
+  }
+
+  synchronized long getNetworkWatermark(String code) {
+    return Math.max(droppedVersion, networkWatermarks.getOrDefault(code, 0L));
+  }
+
+  /**
+   * Adds committed measurements to a loaded store. If the store was loaded or
+   * dropped after {@code writeGeneration} was read, the load may already
+   * contain them and the store is dropped instead.
+   *
+   * @param writeGeneration generation read before the commit
+   * @param measurements    committed measurements
+   */
+  synchronized void append(long writeGeneration, Collection<Measurement> measurements) {
+    advanceWatermarks(measurements);
+    if (!loaded) return;
+    if (writeGeneration != generation) {
+      invalidate();
+      return;
+    }
+    Series last = null;
+    for (Measurement m : measurements) {
+      if (last == null || !last.matches(m.getNetworkCode(), m.getGatewayCode(), m.getSensorCode())) {
+        last = seriesOf(m.getNetworkCode(), m.getGatewayCode(), m.getSensorCode());
+      }
+      last.add(m.getId() == null ? MeasurementColumns.NO_ID : m.getId(), MeasurementColumns.toEpochSecond(m.getTimestamp()),
+          m.getValue());
+    }
+  }
+
+  private void advanceWatermarks(Collection<Measurement> measurements) {
+    version++;
+    Measurement last = null;
+    for (Measurement m : measurements) {
+      // le misure di un lotto sono di solito raggruppate per sensore
+      if (last == null || !Objects.equals(last.getSensorCode(), m.getSensorCode())
+          || !Objects.equals(last.getGatewayCode(), m.getGatewayCode())
+          || !Objects.equals(last.getNetworkCode(), m.getNetworkCode())) {
+        sensorWatermarks.put(m.getSensorCode(), version);
+        gatewayWatermarks.put(m.getGatewayCode(), version);
+        networkWatermarks.put(m.getNetworkCode(), version);
+      }
+      last = m;
+    }
+  }
+
+  // le misure arrivano solo mentre lo store viene caricato
+  @Override
+  public void add(long id, String networkCode, String gatewayCode, String sensorCode, LocalDateTime timestamp,
+      double value) {
+    seriesOf(networkCode, gatewayCode, sensorCode).add(id, MeasurementColumns.toEpochSecond(timestamp), value);
+  }
+
+  // un aggregato compattato entra nei rollup della sua serie ed è tenuto anche a parte per le letture delle colonne
+  @Override
+  public void addAggregate(String networkCode, String gatewayCode, String sensorCode, long hour, long count, double mean,
+      double squaredDeviation, double minimum, double maximum, long first, long last, QuantileSketch sketch) {
+    Series s = seriesOf(networkCode, gatewayCode, sensorCode);
+    s.rollups.merge(hour, count, mean, squaredDeviation, minimum, maximum, first, last, sketch);
+    s.compacted.merge(hour, count, mean, squaredDeviation, minimum, maximum, first, last, sketch);
+  }
+
+  synchronized MeasurementColumns readBySensor(String code, long from, long to) {
+    return read(bySensor, code, from, to);
+  }
+
+  /**
+   * Reads the points of several sensors at once, under a single lock.
+   *
+   * @return columns of each sensor, in the order of {@code codes}
+   */
+  synchronized Map<String, MeasurementColumns> readBySensors(Collection<String> codes, long from, long to) {
+    Map<String, MeasurementColumns> columns = new LinkedHashMap<>();
+    for (String code : codes) {
+      columns.put(code, read(bySensor, code, from, to));
+    }
+    return columns;
+  }
+
+  synchronized MeasurementColumns readByGateway(String code, long from, long to) {
+    return read(byGateway, code, from, to);
+  }
+
+  synchronized MeasurementColumns readByNetwork(String code, long from, long to) {
+    return read(byNetwork, code, from, to);
+  }
+
+  synchronized MeasurementRollups readRollupsBySensor(String code, long from, long to, boolean withSketches) {
+    return readRollups(bySensor, code, from, to, withSketches);
+  }
+
+  synchronized MeasurementRollups readRollupsByGateway(String code, long from, long to, boolean withSketches) {
+    return readRollups(byGateway, code, from, to, withSketches);
+  }
+
+  synchronized MeasurementRollups readRollupsByNetwork(String code, long from, long to, boolean withSketches) {
+    return readRollups(byNetwork, code, from, to, withSketches);
+  }
+
+  /**
+   * Reads only the aggregates of the compacted measurements of a sensor lying
+   * entirely in {@code [from, to]}, without copying its points.
+   */
+  synchronized MeasurementRollups readCompactedBySensor(String code, long from, long to) {
+    ensureLoaded();
+    List<Series> selected = new ArrayList<>();
+    List<HourlyRollups> collected = new ArrayList<>();
+    for (Series s : bySensor.getOrDefault(code, List.of())) {
+      HourlyRollups compacted = s.collectCompacted(from, to);
+      if (compacted != null) {
+        selected.add(s);
+        collected.add(compacted);
+      }
+    }
+    return toRollups(selected, collected);
+  }
+
+  private void ensureLoaded() {
+    if (loaded) return;
+    generation++;
+    try {
+      loader.loadInto(this);
+      loaded = true;
+    } catch (RuntimeException e) {
+      invalidate();
+      throw e;
+    }
+  }
+
+  /**
+   * Copies the points of the selected series in {@code [from, to]}.
+   */
+  private MeasurementColumns read(Map<String, List<Series>> index, String code, long from, long to) {
+    ensureLoaded();
+
+    // solo le serie con almeno un punto o un aggregato compattato nell'intervallo
+    List<Series> selected = new ArrayList<>();
+    List<HourlyRollups> compacted = new ArrayList<>();
+    int count = 0;
+    boolean anyCompacted = false;
+    for (Series s : index.getOrDefault(code, List.of())) {
+      int seriesCount = s.count(from, to);
+      HourlyRollups seriesCompacted = s.collectCompacted(from, to);
+      if (seriesCount > 0 || seriesCompacted != null) {
+        selected.add(s);
+        compacted.add(seriesCompacted);
+        count += seriesCount;
+        anyCompacted |= seriesCompacted != null;
+      }
+    }
+    if (selected.isEmpty()) return MeasurementColumns.empty();
+
+    String[] networkCodes = new String[selected.size()];
+    String[] gatewayCodes = new String[selected.size()];
+    String[] sensorCodes = new String[selected.size()];
+    int[] offsets = new int[selected.size() + 1];
+    long[] ids = new long[count];
+    long[] epochSeconds = new long[count];
+    double[] values = new double[count];
+    int point = 0;
+    for (int i = 0; i < selected.size(); i++) {
+      Series s = selected.get(i);
+      networkCodes[i] = s.networkCode;
+      gatewayCodes[i] = s.gatewayCode;
+      sensorCodes[i] = s.sensorCode;
+      offsets[i] = point;
+      point = s.copy(from, to, ids, epochSeconds, values, point);
+    }
+    offsets[selected.size()] = point;
+    return new MeasurementColumns(networkCodes, gatewayCodes, sensorCodes, offsets, ids, epochSeconds, values,
+        anyCompacted ? toRollups(selected, compacted) : null);
+  }
+
+  /**
+   * Collects the hourly rollups of the selected series in {@code [from, to]}.
+   * Hours entirely inside the interval are copied from the rollups kept by the
+   * store; only the points of the partial hours at the edges are read, with
+   * the compacted aggregates lying entirely inside the interval. The rollups
+   * kept by the store have no sketches: with {@code withSketches} all the
+   * hours are computed from their points.
+   */
+  private MeasurementRollups readRollups(Map<String, List<Series>> index, String code, long from, long to,
+      boolean withSketches) {
+    ensureLoaded();
+
+    List<Series> selected = new ArrayList<>();
+    List<HourlyRollups> collected = new ArrayList<>();
+    for (Series s : index.getOrDefault(code, List.of())) {
+      HourlyRollups rollups = s.collectRollups(from, to, withSketches);
+      if (rollups.size > 0) {
+        selected.add(s);
+        collected.add(rollups);
+      }
+    }
+    return toRollups(selected, collected);
+  }
+
+  /**
+   * Copies the collected rollups of each selected series, {@code null} for
+   * none, in a single set of rollups.
+   */
+  private static MeasurementRollups toRollups(List<Series> selected, List<HourlyRollups> collected) {
+    String[] networkCodes = new String[selected.size()];
+    String[] gatewayCodes = new String[selected.size()];
+    String[] sensorCodes = new String[selected.size()];
+    for (int i = 0; i < selected.size(); i++) {
+      networkCodes[i] = selected.get(i).networkCode;
+      gatewayCodes[i] = selected.get(i).gatewayCode;
+      sensorCodes[i] = selected.get(i).sensorCode;
+    }
+    return HourlyRollups.toRollups(networkCodes, gatewayCodes, sensorCodes, collected);
+  }
+
+  private Series seriesOf(String networkCode, String gatewayCode, String sensorCode) {
+    return series.computeIfAbsent(Arrays.asList(networkCode, gatewayCode, sensorCode), k -> {
+      Series s = new Series(networkCode, gatewayCode, sensorCode);
+      bySensor.computeIfAbsent(sensorCode, c -> new ArrayList<>()).add(s);
+      byGateway.computeIfAbsent(gatewayCode, c -> new ArrayList<>()).add(s);
+      byNetwork.computeIfAbsent(networkCode, c -> new ArrayList<>()).add(s);
+      return s;
+    });
+  }
+
+  /**
+   * @return index of the first element of {@code a[0, size)} that is
+   *         {@code >= key}
+   */
+  static int lowerBound(long[] a, int size, long key) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (a[mid] < key) low = mid + 1;
+      else high = mid;
+    }
+    return low;
+  }
+
+  /**
+   * @return index of the first element of {@code a[0, size)} that is
+   *         {@code > key}
+   */
+  private static int upperBound(long[] a, int size, long key) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (a[mid] <= key) low = mid + 1;
+      else high = mid;
+    }
+    return low;
+  }
+
+  /**
+   * Points of a network, gateway and sensor code combination, split into
+   * chunks of consecutive time ranges.
+   */
+  private static final class Series {
+    private final String networkCode;
+    private final String gatewayCode;
+    private final String sensorCode;
+    private final List<Chunk> chunks = new ArrayList<>();
+    // senza sketch: aggiornarne uno a ogni punto costerebbe più di tutto il resto
+    private final HourlyRollups rollups = new HourlyRollups(false);
+    // solo gli aggregati compattati, già compresi in rollups, con i loro sketch ridotti
+    private final HourlyRollups compacted = new HourlyRollups(true);
+
+    Series(String networkCode, String gatewayCode, String sensorCode) {
+      this.networkCode = networkCode;
+      this.gatewayCode = gatewayCode;
+      this.sensorCode = sensorCode;
+    }
+
+    boolean matches(String networkCode, String gatewayCode, String sensorCode) {
+      return Objects.equals(this.sensorCode, sensorCode) && Objects.equals(this.gatewayCode, gatewayCode)
+          && Objects.equals(this.networkCode, networkCode);
+    }
+
+    void add(long id, long epochSecond, double value) {
+      if (chunks.isEmpty()) chunks.add(new Chunk(INITIAL_CHUNK_CAPACITY));
+
+      int c = chunkFor(epochSecond);
+      Chunk chunk = chunks.get(c);
+      if (chunk.size == CHUNK_CAPACITY) {
+        if (c == chunks.size() - 1 && epochSecond >= chunk.last()) {
+          // inserimento in coda, il caso normale dell'import
+          chunk = new Chunk(INITIAL_CHUNK_CAPACITY);
+          chunks.add(chunk);
+        } else {
+          Chunk upper = chunk.splitUpperHalf();
+          chunks.add(c + 1, upper);
+          if (epochSecond >= upper.first()) chunk = upper;
+        }
+      }
+      chunk.insert(id, epochSecond, value);
+      rollups.add(epochSecond, value);
+    }
+
+    /**
+     * @return rollups of the points in {@code [from, to]}, computed from the
+     *         points only for the hours not entirely inside the interval, or
+     *         for all of them with {@code withSketches}
+     */
+    HourlyRollups collectRollups(long from, long to, boolean withSketches) {
+      long hour = MeasurementRollups.HOUR_SECONDS;
+      long fullFrom = HourlyRollups.firstFullHour(from);
+      long fullTo = HourlyRollups.lastFullHour(to);
+
+      HourlyRollups result = new HourlyRollups(withSketches);
+      if (withSketches || fullFrom > fullTo) {
+        addPartialHours(from, to, result);
+        return result;
+      }
+      if (from < fullFrom) addPartialHours(from, fullFrom - 1, result);
+      for (int i = rollups.lowerBound(fullFrom); i < rollups.size && rollups.hours[i] <= fullTo; i++) {
+        result.append(rollups, i);
+      }
+      if (to != Long.MAX_VALUE && to > fullTo + hour - 1) addPartialHours(fullTo + hour, to, result);
+      return result;
+    }
+
+    /**
+     * @return aggregates of the compacted points lying entirely in
+     *         {@code [from, to]}, or {@code null} if there are none
+     */
+    HourlyRollups collectCompacted(long from, long to) {
+      return compacted.collectContained(from, to);
+    }
+
+    /**
+     * Adds the points in {@code [from, to]}, inside one or two partial hours,
+     * and the compacted aggregates lying entirely in it.
+     */
+    private void addPartialHours(long from, long to, HourlyRollups target) {
+      addPoints(from, to, target);
+      HourlyRollups partial = collectCompacted(from, to);
+      for (int i = 0; partial != null && i < partial.size; i++) {
+        target.merge(partial, i);
+      }
+    }
+
+    private void addPoints(long from, long to, HourlyRollups target) {
+      for (int c = firstChunkEndingFrom(from); c < chunks.size() && chunks.get(c).first() <= to; c++) {
+        Chunk chunk = chunks.get(c);
+        int end = upperBound(chunk.epochSeconds, chunk.size, to);
+        for (int i = lowerBound(chunk.epochSeconds, chunk.size, from); i < end; i++) {
+          target.add(chunk.epochSeconds[i], chunk.values[i]);
+        }
+      }
+    }
+
+    /**
+     * @return index of the last chunk starting at or before the timestamp, or 0
+     */
+    private int chunkFor(long epochSecond) {
+      int low = 0;
+      int high = chunks.size() - 1;
+      while (low < high) {
+        int mid = (low + high + 1) >>> 1;
+        if (chunks.get(mid).first() <= epochSecond) low = mid;
+        else high = mid - 1;
+      }
+      return low;
+    }
+
+    /**
+     * @return index of the first chunk ending at or after the timestamp
+     */
+    private int firstChunkEndingFrom(long epochSecond) {
+      int low = 0;
+      int high = chunks.size();
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (chunks.get(mid).last() < epochSecond) low = mid + 1;
+        else high = mid;
+      }
+      return low;
+    }
+
+    int count(long from, long to) {
+      int count = 0;
+      for (int c = firstChunkEndingFrom(from); c < chunks.size() && chunks.get(c).first() <= to; c++) {
+        Chunk chunk = chunks.get(c);
+        count += upperBound(chunk.epochSeconds, chunk.size, to) - lowerBound(chunk.epochSeconds, chunk.size, from);
+      }
+      return count;
+    }
+
+    int copy(long from, long to, long[] ids, long[] epochSeconds, double[] values, int position) {
+      for (int c = firstChunkEndingFrom(from); c < chunks.size() && chunks.get(c).first() <= to; c++) {
+        Chunk chunk = chunks.get(c);
+        int start = lowerBound(chunk.epochSeconds, chunk.size, from);
+        int length = upperBound(chunk.epochSeconds, chunk.size, to) - start;
+        System.arraycopy(chunk.ids, start, ids, position, length);
+        System.arraycopy(chunk.epochSeconds, start, epochSeconds, position, length);
+        System.arraycopy(chunk.values, start, values, position, length);
+        position += length;
+      }
+      return position;
+    }
+  }
+
+  /**
+   * Sorted points of a time range of a series.
+   */
+  private static final class Chunk {
+    private long[] ids;
+    private long[] epochSeconds;
+    private double[] values;
+    private int size;
+
+    Chunk(int capacity) {
+      ids = new long[capacity];
+      epochSeconds = new long[capacity];
+      values = new double[capacity];
+    }
+
+    long first() {
+      return epochSeconds[0];
+    }
+
+    long last() {
+      return epochSeconds[size - 1];
+    }
+
+    void insert(long id, long epochSecond, double value) {
+      if (size == epochSeconds.length) {
+        int capacity = Math.min(CHUNK_CAPACITY, size * 2);
+        ids = Arrays.copyOf(ids, capacity);
+        epochSeconds = Arrays.copyOf(epochSeconds, capacity);
+        values = Arrays.copyOf(values, capacity);
+      }
+      // a parità di timestamp il nuovo punto va dopo quelli esistenti
+      int position = size == 0 || epochSecond >= last() ? size : upperBound(epochSeconds, size, epochSecond);
+      System.arraycopy(ids, position, ids, position + 1, size - position);
+      System.arraycopy(epochSeconds, position, epochSeconds, position + 1, size - position);
+      System.arraycopy(values, position, values, position + 1, size - position);
+      ids[position] = id;
+      epochSeconds[position] = epochSecond;
+      values[position] = value;
+      size++;
+    }
+
+    Chunk splitUpperHalf() {
+      int half = size / 2;
+      Chunk upper = new Chunk(CHUNK_CAPACITY);
+      upper.size = size - half;
+      System.arraycopy(ids, half, upper.ids, 0, upper.size);
+      System.arraycopy(epochSeconds, half, upper.epochSeconds, 0, upper.size);
+      System.arraycopy(values, half, upper.values, 0, upper.size);
+      size = half;
+      return upper;
+    }
+  }
+
+}
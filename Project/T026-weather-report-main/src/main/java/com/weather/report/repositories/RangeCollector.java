@@ -0,0 +1,250 @@
+package com.weather.report.repositories;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.weather.report.model.MeasurementColumns;
+import com.weather.report.model.MeasurementRollups;
+import com.weather.report.model.QuantileSketch;
+
+/**
+ * Collects the rows of a single range read straight into the arrays of its
+ * result, without the indexes kept by {@link MeasurementStore}.
+ * <p>
+ * Points are expected in the interval {@code [from, to]} and are kept in the
+ * order they are received; hours aggregated by the database are only used by
+ * rollups; compacted aggregates are merged by series and hour, and only those
+ * lying entirely in the interval are returned, as in {@link MeasurementStore}.
+ */
+final class RangeCollector implements MeasurementSink {
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final long from;
+  private final long to;
+  private final Map<List<String>, Series> series = new LinkedHashMap<>();
+  private Series last;
+
+  /**
+   * @param from first epoch second of the interval
+   * @param to   last epoch second of the interval
+   */
+  RangeCollector(long from, long to) {
+    this.from = from;
+    this.to = to;
+  }
+
+  @Override
+  public void add(long id, String networkCode, String gatewayCode, String sensorCode, LocalDateTime timestamp,
+      double value) {
+    seriesOf(networkCode, gatewayCode, sensorCode).add(id, MeasurementColumns.toEpochSecond(timestamp), value);
+  }
+
+  @Override
+  public void addAggregate(String networkCode, String gatewayCode, String sensorCode, long hour, long count,
+      double mean, double squaredDeviation, double minimum, double maximum, long first, long last,
+      QuantileSketch sketch) {
+    seriesOf(networkCode, gatewayCode, sensorCode).compacted.merge(hour, count, mean, squaredDeviation, minimum,
+        maximum, first, last, sketch);
+  }
+
+  /**
+   * Adds the measurements of an hour of a series aggregated by the database.
+   *
+   * @param networkCode      network code of the series
+   * @param gatewayCode      gateway code of the series
+   * @param sensorCode       sensor code of the series
+   * @param hour             start of the hour in epoch seconds
+   * @param count            number of measurements
+   * @param mean             mean value
+   * @param squaredDeviation sum of squared differences from the mean
+   * @param minimum          minimum value
+   * @param maximum          maximum value
+   * @param first            first timestamp in epoch seconds
+   * @param last             last timestamp in epoch seconds
+   */
+  void addHourlyGroup(String networkCode, String gatewayCode, String sensorCode, long hour, long count, double mean,
+      double squaredDeviation, double minimum, double maximum, long first, long last) {
+    Series s = seriesOf(networkCode, gatewayCode, sensorCode);
+    if (s.groups == null) s.groups = new HourlyRollups(false);
+    s.groups.merge(hour, count, mean, squaredDeviation, minimum, maximum, first, last, null);
+  }
+
+  /**
+   * @return columns of all the collected series
+   */
+  MeasurementColumns toColumns() {
+    return toColumns(series.values());
+  }
+
+  /**
+   * @param sensorCodes codes of the sensors
+   * @return columns of the collected series of each sensor, in the order of
+   *         {@code sensorCodes}
+   */
+  Map<String, MeasurementColumns> toColumnsBySensor(Collection<String> sensorCodes) {
+    Map<String, List<Series>> bySensor = new LinkedHashMap<>();
+    for (String code : sensorCodes) {
+      bySensor.put(code, new ArrayList<>());
+    }
+    for (Series s : series.values()) {
+      List<Series> selected = bySensor.get(s.sensorCode);
+      if (selected != null) selected.add(s);
+    }
+    Map<String, MeasurementColumns> columns = new LinkedHashMap<>();
+    bySensor.forEach((code, selected) -> columns.put(code, toColumns(selected)));
+    return columns;
+  }
+
+  /**
+   * @return aggregates of the compacted measurements lying entirely in the
+   *         interval, without the points
+   */
+  MeasurementRollups toCompacted() {
+    List<Series> selected = new ArrayList<>();
+    List<HourlyRollups> collected = new ArrayList<>();
+    for (Series s : series.values()) {
+      HourlyRollups compacted = s.compacted.collectContained(from, to);
+      if (compacted != null) {
+        selected.add(s);
+        collected.add(compacted);
+      }
+    }
+    return toRollups(selected, collected);
+  }
+
+  /**
+   * @param withSketches whether to compute the quantile sketch of each hour
+   *                     from the points
+   * @return hourly rollups of the points, of the hours aggregated by the
+   *         database and of the compacted aggregates lying entirely in the
+   *         interval
+   */
+  MeasurementRollups toRollups(boolean withSketches) {
+    List<Series> selected = new ArrayList<>();
+    List<HourlyRollups> collected = new ArrayList<>();
+    for (Series s : series.values()) {
+      HourlyRollups rollups = new HourlyRollups(withSketches);
+      for (int i = 0; i < s.size; i++) {
+        rollups.add(s.epochSeconds[i], s.values[i]);
+      }
+      for (int i = 0; s.groups != null && i < s.groups.size; i++) {
+        rollups.merge(s.groups, i);
+      }
+      HourlyRollups compacted = s.compacted.collectContained(from, to);
+      for (int i = 0; compacted != null && i < compacted.size; i++) {
+        rollups.merge(compacted, i);
+      }
+      if (rollups.size > 0) {
+        selected.add(s);
+        collected.add(rollups);
+      }
+    }
+    return toRollups(selected, collected);
+  }
+
+  private MeasurementColumns toColumns(Collection<Series> candidates) {
+    // solo le serie con almeno un punto o un aggregato compattato nell'intervallo
+    List<Series> selected = new ArrayList<>();
+    List<HourlyRollups> compacted = new ArrayList<>();
+    int count = 0;
+    boolean anyCompacted = false;
+    for (Series s : candidates) {
+      HourlyRollups seriesCompacted = s.compacted.collectContained(from, to);
+      if (s.size > 0 || seriesCompacted != null) {
+        selected.add(s);
+        compacted.add(seriesCompacted);
+        count += s.size;
+        anyCompacted |= seriesCompacted != null;
+      }
+    }
+    if (selected.isEmpty()) return MeasurementColumns.empty();
+
+    String[] networkCodes = new String[selected.size()];
+    String[] gatewayCodes = new String[selected.size()];
+    String[] sensorCodes = new String[selected.size()];
+    int[] offsets = new int[selected.size() + 1];
+    long[] ids = new long[count];
+    long[] epochSeconds = new long[count];
+    double[] values = new double[count];
+    int point = 0;
+    for (int i = 0; i < selected.size(); i++) {
+      Series s = selected.get(i);
+      networkCodes[i] = s.networkCode;
+      gatewayCodes[i] = s.gatewayCode;
+      sensorCodes[i] = s.sensorCode;
+      offsets[i] = point;
+      System.arraycopy(s.ids, 0, ids, point, s.size);
+      System.arraycopy(s.epochSeconds, 0, epochSeconds, point, s.size);
+      System.arraycopy(s.values, 0, values, point, s.size);
+      point += s.size;
+    }
+    offsets[selected.size()] = point;
+    return new MeasurementColumns(networkCodes, gatewayCodes, sensorCodes, offsets, ids, epochSeconds, values,
+        anyCompacted ? toRollups(selected, compacted) : null);
+  }
+
+  private static MeasurementRollups toRollups(List<Series> selected, List<HourlyRollups> collected) {
+    String[] networkCodes = new String[selected.size()];
+    String[] gatewayCodes = new String[selected.size()];
+    String[] sensorCodes = new String[selected.size()];
+    for (int i = 0; i < selected.size(); i++) {
+      networkCodes[i] = selected.get(i).networkCode;
+      gatewayCodes[i] = selected.get(i).gatewayCode;
+      sensorCodes[i] = selected.get(i).sensorCode;
+    }
+    return HourlyRollups.toRollups(networkCodes, gatewayCodes, sensorCodes, collected);
+  }
+
+  private Series seriesOf(String networkCode, String gatewayCode, String sensorCode) {
+    // le righe arrivano di solito raggruppate per serie
+    if (last != null && Objects.equals(last.sensorCode, sensorCode) && Objects.equals(last.gatewayCode, gatewayCode)
+        && Objects.equals(last.networkCode, networkCode)) {
+      return last;
+    }
+    last = series.computeIfAbsent(Arrays.asList(networkCode, gatewayCode, sensorCode),
+        k -> new Series(networkCode, gatewayCode, sensorCode));
+    return last;
+  }
+
+  /**
+   * Points of a series in the interval, in the order they are read, its hours
+   * aggregated by the database and its compacted aggregates.
+   */
+  private static final class Series {
+    private final String networkCode;
+    private final String gatewayCode;
+    private final String sensorCode;
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private long[] epochSeconds = new long[INITIAL_CAPACITY];
+    private double[] values = new double[INITIAL_CAPACITY];
+    private int size;
+    private HourlyRollups groups;
+    private final HourlyRollups compacted = new HourlyRollups(true);
+
+    Series(String networkCode, String gatewayCode, String sensorCode) {
+      this.networkCode = networkCode;
+      this.gatewayCode = gatewayCode;
+      this.sensorCode = sensorCode;
+    }
+
+    void add(long id, long epochSecond, double value) {
+      if (size == ids.length) {
+        int capacity = size * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        epochSeconds = Arrays.copyOf(epochSeconds, capacity);
+        values = Arrays.copyOf(values, capacity);
+      }
+      ids[size] = id;
+      epochSeconds[size] = epochSecond;
+      values[size] = value;
+      size++;
+    }
+  }
+
+}
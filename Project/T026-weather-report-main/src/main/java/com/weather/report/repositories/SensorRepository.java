@@ -1,5 +1,7 @@
 package com.weather.report.repositories;
 
+import java.util.List;
+
 import com.weather.report.exceptions.ElementNotFoundException;
 import com.weather.report.exceptions.IdAlreadyInUseException;
 import com.weather.report.exceptions.InvalidInputDataException;
@@ -45,4 +47,23 @@ public class SensorRepository extends CRUDRepository<Sensor, String>{
         if(s==null) throw new ElementNotFoundException("sensor does not exist");
         return s;
     }
+
+    /**
+     * Same checks as {@link #checkSensor(String)} for several sensors, read
+     * all together.
+     * @param sensorCodes sensor unique codes (mandatory, must follow
+     *                    {@code S_######})
+     * @return checked sensors, in the order of {@code sensorCodes}
+     * @throws InvalidInputDataException when a code is missing or invalid
+     * @throws ElementNotFoundException  when a sensor does not exist
+     */
+    public List<Sensor> checkSensors(List<String> sensorCodes) throws ElementNotFoundException, InvalidInputDataException{
+        for (String sensorCode : sensorCodes) {
+            if (sensorCode == null) throw new InvalidInputDataException("Mandatory data are missing");
+            if (!sensorCode.matches("S_\\d{6}")) throw new InvalidInputDataException("Invalid code format. Must be S_xxxxxx");
+        }
+        List<Sensor> sensors = this.read(sensorCodes);
+        if (sensors.contains(null)) throw new ElementNotFoundException("sensor does not exist");
+        return sensors;
+    }
 }
@@ -1,21 +1,73 @@
 package com.weather.report.repositories;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import com.weather.report.exceptions.InvalidInputDataException;
 import com.weather.report.exceptions.UnauthorizedException;
 import com.weather.report.model.UserType;
 import com.weather.report.model.entities.User;
+import com.weather.report.persistence.PersistenceManager;
 
 public class UserRepository extends CRUDRepository<User, String>{
 
+    // utenti già verificati, condivisi da tutte le istanze: i controlli di
+    // autorizzazione non leggono il database e non allocano
+    private static final Map<String, User> users = new ConcurrentHashMap<>();
+
+    static {
+        PersistenceManager.addResetListener(users::clear);
+    }
+
     public UserRepository() {
         super(User.class);
     }
 
+    /**
+     * Drops a user from the authorization cache, so that the next check reads
+     * it again from the database. To be called whenever a user is written
+     * without going through this repository, e.g. by
+     * {@link com.weather.report.WeatherReport#createUser}.
+     *
+     * @param username user to drop
+     */
+    public static void invalidate(String username) {
+        if (username != null) users.remove(username);
+    }
+
+    @Override
+    public User create(User entity) {
+        try {
+            return super.create(entity);
+        } finally {
+            invalidate(entity.getUsername());
+        }
+    }
+
+    @Override
+    public User update(User entity) {
+        try {
+            return super.update(entity);
+        } finally {
+            invalidate(entity.getUsername());
+        }
+    }
+
+    @Override
+    public User delete(String username) {
+        try {
+            return super.delete(username);
+        } finally {
+            invalidate(username);
+        }
+    }
+
     /**
      * Checks:
      *  - username not null
      *  - user in repository
-     * Retrieve user if it exists, otherwise throw an exception
+     * Retrieve user if it exists, otherwise throw an exception.
+     * Users found are kept in memory, unknown ones are looked up every time.
      * @param username    user performing the action
      * @return checked User
      * @throws InvalidInputDataException when mandatory data are invalid
@@ -26,10 +78,15 @@ public class UserRepository extends CRUDRepository<User, String>{
         if(userCode == null){
             throw new InvalidInputDataException("Mandatory data are missing");
         }
+        out = users.get(userCode);
+        if(out != null){
+            return out;
+        }
         out = this.read(userCode);
         if(out == null){
             throw new UnauthorizedException("User not found");
         }
+        users.put(userCode, out);
         return out;
     }
 
@@ -0,0 +1,239 @@
+package com.weather.report.services;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.weather.report.model.entities.Operator;
+
+/**
+ * Asynchronous dispatcher of threshold violation alerts.
+ * <p>
+ * {@link #submit(Collection, String)} never blocks: the first violation of a
+ * sensor enqueues an alert in a bounded queue, and the following ones, until
+ * the alert is dispatched, are only counted in it (coalesced). A worker thread
+ * wakes up once per window, drains the queue and sends each operator a single
+ * message listing all its alerts. When the queue is full the alert is dropped
+ * and counted. After {@link #close()} alerts are sent on the submitting thread.
+ */
+public class AlertDispatcher implements AutoCloseable {
+
+  /** Default maximum number of sensors with a pending alert. */
+  public static final int DEFAULT_CAPACITY = 1024;
+  /** Default time between two dispatches. */
+  public static final Duration DEFAULT_WINDOW = Duration.ofSeconds(1);
+
+  private static final Logger logger = LogManager.getLogger(AlertDispatcher.class);
+
+  /**
+   * Alert of a sensor, with the number of violations it stands for.
+   */
+  public static final class Alert {
+    private final String sensorCode;
+    private final Collection<Operator> operators;
+    private final AtomicLong violations = new AtomicLong(1);
+
+    private Alert(String sensorCode, Collection<Operator> operators) {
+      this.sensorCode = sensorCode;
+      this.operators = operators;
+    }
+
+    public String getSensorCode() {
+      return sensorCode;
+    }
+
+    /**
+     * @return number of violations of the sensor coalesced in this alert
+     */
+    public long getViolations() {
+      return violations.get();
+    }
+  }
+
+  /**
+   * Sends the alerts of a dispatch to one operator.
+   */
+  @FunctionalInterface
+  public interface Sender {
+    /**
+     * @param operator operator to alert
+     * @param alerts   alerts for the operator, at least one
+     */
+    void send(Operator operator, List<Alert> alerts);
+  }
+
+  private final BlockingQueue<Alert> queue;
+  private final Map<String, Alert> pending = new ConcurrentHashMap<>();
+  private final long windowNanos;
+  private final Sender sender;
+  private final AtomicLong submitted = new AtomicLong();
+  private final AtomicLong coalesced = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong dispatched = new AtomicLong();
+  private Thread worker;
+  private volatile boolean closed;
+
+  /**
+   * @param capacity maximum number of sensors with a pending alert
+   * @param window   time between two dispatches, i.e. how long violations of
+   *                 a sensor are coalesced
+   * @param sender   delivery of the alerts
+   */
+  public AlertDispatcher(int capacity, Duration window, Sender sender) {
+    if (capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+    if (window.isNegative() || window.isZero()) throw new IllegalArgumentException("window must be positive");
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.windowNanos = window.toNanos();
+    this.sender = sender;
+  }
+
+  /**
+   * Submits a violation of a sensor, without waiting for its delivery.
+   *
+   * @param operators  operators to alert
+   * @param sensorCode code of the sensor
+   */
+  public void submit(Collection<Operator> operators, String sensorCode) {
+    submitted.incrementAndGet();
+    Alert alert = pending.get(sensorCode);
+    if (alert != null) {
+      // se il worker lo sta già inviando la violazione può non comparire nel conteggio
+      alert.violations.incrementAndGet();
+      coalesced.incrementAndGet();
+      return;
+    }
+    Alert created = new Alert(sensorCode, operators);
+    alert = pending.putIfAbsent(sensorCode, created);
+    if (alert != null) {
+      alert.violations.incrementAndGet();
+      coalesced.incrementAndGet();
+      return;
+    }
+    ensureStarted();
+    if (!queue.offer(created)) {
+      pending.remove(sensorCode, created);
+      dropped.incrementAndGet();
+    } else if (closed) {
+      // senza worker l'avviso parte subito
+      flush();
+    }
+  }
+
+  /**
+   * Dispatches the pending alerts on the calling thread.
+   *
+   * @return number of operators alerted
+   */
+  public int flush() {
+    List<Alert> alerts = new ArrayList<>(queue.size());
+    queue.drainTo(alerts);
+    if (alerts.isEmpty()) return 0;
+
+    Map<String, Operator> operators = new LinkedHashMap<>();
+    Map<String, List<Alert>> alertsByOperator = new LinkedHashMap<>();
+    for (Alert alert : alerts) {
+      pending.remove(alert.sensorCode, alert);
+      for (Operator operator : alert.operators) {
+        operators.putIfAbsent(operator.getEmail(), operator);
+        alertsByOperator.computeIfAbsent(operator.getEmail(), e -> new ArrayList<>()).add(alert);
+      }
+    }
+    for (Map.Entry<String, List<Alert>> entry : alertsByOperator.entrySet()) {
+      try {
+        sender.send(operators.get(entry.getKey()), entry.getValue());
+      } catch (RuntimeException e) {
+        logger.error("Failed to alert operator " + entry.getKey(), e);
+      }
+    }
+    dispatched.addAndGet(alerts.size());
+    return alertsByOperator.size();
+  }
+
+  private synchronized void ensureStarted() {
+    if (worker != null || closed) return;
+    worker = Thread.ofPlatform().daemon().name("alert-dispatcher").start(this::runWorker);
+  }
+
+  private void runWorker() {
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(windowNanos);
+      } catch (InterruptedException e) {
+        break;
+      }
+      flush();
+    }
+    // gli avvisi rimasti vengono comunque inviati
+    flush();
+  }
+
+  /**
+   * @return number of alerts waiting in the queue
+   */
+  public int getQueueDepth() {
+    return queue.size();
+  }
+
+  /**
+   * @return number of violations submitted
+   */
+  public long getSubmitted() {
+    return submitted.get();
+  }
+
+  /**
+   * @return number of violations merged in an alert already pending
+   */
+  public long getCoalesced() {
+    return coalesced.get();
+  }
+
+  /**
+   * @return number of alerts dropped because the queue was full
+   */
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  /**
+   * @return number of alerts dispatched
+   */
+  public long getDispatched() {
+    return dispatched.get();
+  }
+
+  /**
+   * Stops the worker after dispatching the pending alerts.
+   */
+  @Override
+  public void close() {
+    Thread stopped;
+    synchronized (this) {
+      closed = true;
+      stopped = worker;
+      worker = null;
+    }
+    if (stopped == null) {
+      flush();
+      return;
+    }
+    stopped.interrupt();
+    try {
+      stopped.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
@@ -1,11 +1,13 @@
 package com.weather.report.services;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.weather.report.model.entities.Operator;
+import com.weather.report.services.AlertDispatcher.Alert;
 
 /**
  * Service handling user notifications (email/SMS) for threshold violations and
@@ -15,24 +17,48 @@ import com.weather.report.model.entities.Operator;
 public class AlertingService {
 
   private static final Logger logger = LogManager.getLogger(AlertingService.class);
+  private static final AlertDispatcher dispatcher = new AlertDispatcher(AlertDispatcher.DEFAULT_CAPACITY,
+      AlertDispatcher.DEFAULT_WINDOW, AlertingService::sendAlerts);
+
+  static {
+    // il worker è un thread daemon: senza questo l'ultima finestra di avvisi andrebbe persa all'uscita
+    Runtime.getRuntime().addShutdownHook(
+        Thread.ofPlatform().name("alert-dispatcher-shutdown").unstarted(dispatcher::close));
+  }
 
   /**
-   * Notifies operators when a measurement exceeds a sensor threshold.
+   * Notifies operators when a measurement exceeds a sensor threshold. The
+   * alert is queued and sent in background (see {@link AlertDispatcher}), so
+   * the caller never waits for the delivery. Alerts still pending when the
+   * JVM exits are dispatched by a shutdown hook.
    *
    * @param operators  operators to alert
    * @param sensorCode code of the sensor that triggered the alert
    */
   public static void notifyThresholdViolation(Collection<Operator> operators, String sensorCode) {
-    StringBuilder builder = new StringBuilder().append("Measured a value out of threshold bounds for sensor ")
-        .append(sensorCode).append(", alerting operators");
+    dispatcher.submit(operators, sensorCode);
+  }
+
+  /**
+   * @return dispatcher of the threshold violation alerts, e.g. to read its
+   *         queue depth and drop count
+   */
+  public static AlertDispatcher getDispatcher() {
+    return dispatcher;
+  }
+
+  private static void sendAlerts(Operator operator, List<Alert> alerts) {
+    StringBuilder builder = new StringBuilder().append("Measured values out of threshold bounds for sensors");
+    for (Alert alert : alerts) {
+      builder.append(' ').append(alert.getSensorCode()).append(" (").append(alert.getViolations()).append(')');
+    }
+    builder.append(", alerting operator ").append(operator.getEmail());
 
     logger.warn(builder);
 
-    for (Operator operator : operators) {
-      sendEmail(operator);
-      if (operator.getPhoneNumber() != null) {
-        sendSMS(operator);
-      }
+    sendEmail(operator);
+    if (operator.getPhoneNumber() != null) {
+      sendSMS(operator);
     }
   }
 
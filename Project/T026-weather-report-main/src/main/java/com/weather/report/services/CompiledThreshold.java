@@ -0,0 +1,94 @@
+package com.weather.report.services;
+
+import java.util.BitSet;
+import java.util.function.DoublePredicate;
+
+import com.weather.report.model.ThresholdType;
+import com.weather.report.model.entities.Threshold;
+
+/**
+ * Threshold compiled into a primitive predicate on the measured value.
+ * <p>
+ * The type of the threshold is resolved once, when the threshold is compiled:
+ * {@link #test(double)} checks a single value without going through the
+ * {@link ThresholdType} switch, and {@link #violations(double[], int)} checks a
+ * whole batch of values of a sensor in a loop without branches, which the JIT
+ * can vectorize.
+ */
+public final class CompiledThreshold implements DoublePredicate {
+
+  private static final CompiledThreshold NEVER = new CompiledThreshold(null, Double.NaN);
+
+  private final ThresholdType type;
+  private final double limit;
+  private final DoublePredicate predicate;
+
+  private CompiledThreshold(ThresholdType type, double limit) {
+    this.type = type;
+    this.limit = limit;
+    this.predicate = type == null ? v -> false : switch (type) {
+      case EQUAL -> v -> v == limit;
+      case GREATER_THAN -> v -> v > limit;
+      case GREATER_OR_EQUAL -> v -> v >= limit;
+      case LESS_THAN -> v -> v < limit;
+      case LESS_OR_EQUAL -> v -> v <= limit;
+      case NOT_EQUAL -> v -> v != limit;
+    };
+  }
+
+  /**
+   * Compiles a threshold.
+   *
+   * @param threshold threshold to compile
+   * @return compiled threshold; a threshold without a type is never violated
+   */
+  public static CompiledThreshold compile(Threshold threshold) {
+    if (threshold.getType() == null) return NEVER;
+    return new CompiledThreshold(threshold.getType(), threshold.getValue());
+  }
+
+  /**
+   * @param value measured value
+   * @return {@code true} if the value is out of threshold bounds
+   */
+  @Override
+  public boolean test(double value) {
+    return predicate.test(value);
+  }
+
+  /**
+   * Checks a batch of values of the sensor.
+   *
+   * @param values measured values
+   * @param length number of values to check, from the first one
+   * @return bitmap with bit {@code i} set if {@code values[i]} is out of
+   *         threshold bounds
+   */
+  public BitSet violations(double[] values, int length) {
+    if (type == null) return new BitSet();
+    long[] words = new long[(length + 63) >>> 6];
+    // un ciclo per tipo: il confronto non dipende da un ramo sul tipo
+    switch (type) {
+      case EQUAL -> {
+        for (int i = 0; i < length; i++) words[i >>> 6] |= (values[i] == limit ? 1L : 0L) << i;
+      }
+      case GREATER_THAN -> {
+        for (int i = 0; i < length; i++) words[i >>> 6] |= (values[i] > limit ? 1L : 0L) << i;
+      }
+      case GREATER_OR_EQUAL -> {
+        for (int i = 0; i < length; i++) words[i >>> 6] |= (values[i] >= limit ? 1L : 0L) << i;
+      }
+      case LESS_THAN -> {
+        for (int i = 0; i < length; i++) words[i >>> 6] |= (values[i] < limit ? 1L : 0L) << i;
+      }
+      case LESS_OR_EQUAL -> {
+        for (int i = 0; i < length; i++) words[i >>> 6] |= (values[i] <= limit ? 1L : 0L) << i;
+      }
+      case NOT_EQUAL -> {
+        for (int i = 0; i < length; i++) words[i >>> 6] |= (values[i] != limit ? 1L : 0L) << i;
+      }
+    }
+    return BitSet.valueOf(words);
+  }
+
+}
@@ -1,24 +1,28 @@
 package com.weather.report.services;
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.regex.PatternSyntaxException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
-import com.weather.report.WeatherReport;
-import com.weather.report.model.ThresholdType;
 import com.weather.report.model.entities.Measurement;
-import com.weather.report.model.entities.Network;
 import com.weather.report.model.entities.Operator;
-import com.weather.report.model.entities.Sensor;
-import com.weather.report.model.entities.Threshold;
-import com.weather.report.repositories.CRUDRepository;
 import com.weather.report.repositories.MeasurementRepository;
-import com.weather.report.repositories.NetworkRepository;
 
 /**
  * Service responsible for importing measurements from CSV files and validating
@@ -27,7 +31,12 @@ import com.weather.report.repositories.NetworkRepository;
  */
 public class DataImportingService {
 
-  private static final NetworkRepository repo = new NetworkRepository();
+  /** Default number of rows committed in a single transaction. */
+  public static final int DEFAULT_BATCH_SIZE = 5000;
+  /** Default maximum number of files imported at the same time by a directory import. */
+  public static final int DEFAULT_MAX_IN_FLIGHT_FILES = Runtime.getRuntime().availableProcessors();
+
+  private static final Logger logger = LogManager.getLogger(DataImportingService.class);
   private static final MeasurementRepository repository = new MeasurementRepository();
 
   private DataImportingService(){
@@ -36,107 +45,241 @@ public class DataImportingService {
 
   /**
    * Reads measurements from CSV files, persists them through repositories and
-   * invokes {@link #checkMeasurement(Measurement)} after each insertion. 
+   * invokes {@link #checkMeasurements(List, ThresholdIndex)} after each insertion. 
    * The time window format and CSV location are defined in the README.
    *
    * @param filePath path to the CSV file to import
+   * @return summary of the import
    */
-  
-  public static void storeMeasurements(String filePath) {
-    // use this try-with-resources for automatic close of file in case of error
-    try (BufferedReader br = new BufferedReader(new FileReader(filePath.replace("%20", " ")))) {
-      String line = br.readLine(); // Read header line to skip it
-
-      while ((line = br.readLine()) != null) {
-        try {
-          String[] data = line.split(",");
-          /* data[0] = date        | LocalDateTime   | *
-           * data[1] = networkCode | String          | *
-           * data[2] = gatewayCode | String          | *
-           * data[3] = sensorCode  | String          | *
-           * data[4] = value       | Double          | */
-          LocalDateTime timestamp = LocalDateTime.parse(data[0], WeatherReport.DATE_TIME_FORMATTER);
-          String networkCode = data[1].trim();
-          String gatewayCode = data[2].trim();
-          String sensorCode = data[3].trim();
-          Double value = Double.parseDouble(data[4]);
-          // create measurement
-          Measurement newMeasurement = new Measurement(networkCode, gatewayCode, sensorCode, value, timestamp);
-          // save measurement
-          repository.create(newMeasurement);
-          // check measurement
-          checkMeasurement(newMeasurement);
-        } catch (DateTimeParseException | PatternSyntaxException | NumberFormatException e) {
-          // in caso di errori ignoro e vado avanti
-          System.err.println("Skipping invalid line: " + line);
-        }
+  public static ImportSummary storeMeasurements(String filePath) {
+    return storeMeasurements(filePath, DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * Reads measurements from a CSV file and persists them in transactions of
+   * {@code batchSize} rows. Each measurement is checked with
+   * {@link #checkMeasurements(List, ThresholdIndex)} once its batch has been committed.
+   *
+   * @param filePath  path to the CSV file to import
+   * @param batchSize number of rows committed in a single transaction
+   * @return summary of the import
+   */
+  public static ImportSummary storeMeasurements(String filePath, int batchSize) {
+    if (batchSize < 1) throw new IllegalArgumentException("batchSize must be positive");
+    return importFile(filePath, batchSize, ThresholdIndex.load());
+  }
+
+  /**
+   * Imports all the files of a directory matching a glob pattern. Files are
+   * parsed and stored concurrently, one virtual thread per file, with at most
+   * {@code maxInFlight} files being imported at the same time; the rows of each
+   * file are stored in file order.
+   *
+   * @param dirPath     path of the directory
+   * @param glob        glob pattern of the file names to import (e.g. {@code S_1*.csv})
+   * @param maxInFlight maximum number of files imported at the same time
+   * @return aggregate summary of the import
+   */
+  public static ImportSummary storeMeasurementsFromDirectory(String dirPath, String glob, int maxInFlight) {
+    if (maxInFlight < 1) throw new IllegalArgumentException("maxInFlight must be positive");
+    long startTime = System.nanoTime();
+    List<Path> files = listFiles(dirPath, glob);
+    ThresholdIndex thresholds = ThresholdIndex.load();
+    Semaphore inFlight = new Semaphore(maxInFlight);
+    List<Future<ImportSummary>> results = new ArrayList<>();
+
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (Path file : files) {
+        inFlight.acquire(); // blocca l'invio di nuovi file finché uno non termina
+        results.add(executor.submit(() -> {
+          try {
+            return importFile(file.toString(), DEFAULT_BATCH_SIZE, thresholds);
+          } finally {
+            inFlight.release();
+          }
+        }));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    int importedFiles = 0;
+    long storedRows = 0;
+    long rejectedRows = 0;
+    for (Future<ImportSummary> result : results) {
+      ImportSummary fileSummary = awaitResult(result);
+      importedFiles += fileSummary.getFiles();
+      storedRows += fileSummary.getStoredRows();
+      rejectedRows += fileSummary.getRejectedRows();
+    }
+    ImportSummary summary = new ImportSummary(importedFiles, storedRows, rejectedRows, System.nanoTime() - startTime);
+    logger.info("Imported " + dirPath + "/" + glob + ": " + summary);
+    return summary;
+  }
+
+  /**
+   * Lists the regular files of a directory whose name matches a glob pattern.
+   *
+   * @param dirPath path of the directory
+   * @param glob    glob pattern of the file names
+   * @return matching files sorted by name, empty if the directory cannot be read
+   */
+  private static List<Path> listFiles(String dirPath, String glob) {
+    List<Path> files = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(Path.of(dirPath.replace("%20", " ")), glob)) {
+      for (Path file : stream) {
+        if (Files.isRegularFile(file)) files.add(file);
       }
-    } catch (FileNotFoundException e) {
+    } catch (IOException e) {
+      System.err.println("Error reading directory: " + dirPath);
+    }
+    files.sort(null);
+    return files;
+  }
+
+  /**
+   * Waits for the import of a file, rethrowing the exception that made it fail.
+   *
+   * @param result pending import of a file
+   * @return summary of the file import
+   */
+  private static ImportSummary awaitResult(Future<ImportSummary> result) {
+    try {
+      return result.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException cause) throw cause;
+      throw new IllegalStateException("Import failed", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Import interrupted", e);
+    }
+  }
+
+  /**
+   * Imports a single CSV file using the given threshold index.
+   *
+   * @param filePath   path to the CSV file to import
+   * @param batchSize  number of rows committed in a single transaction
+   * @param thresholds threshold index of the current import
+   * @return summary of the file import
+   */
+  private static ImportSummary importFile(String filePath, int batchSize, ThresholdIndex thresholds) {
+    long startTime = System.nanoTime();
+    FileImport fileImport = new FileImport(batchSize, thresholds);
+
+    try {
+      MeasurementCsvParser.parse(Path.of(filePath.replace("%20", " ")), fileImport);
+      fileImport.files = 1;
+    } catch (NoSuchFileException | InvalidPathException e) {
       System.err.println("File not found: " + filePath);
     } catch (IOException e) {
+      fileImport.files = 1;
       System.err.println("Error reading file: " + e.getMessage());
     }
+    // le righe lette prima di un eventuale errore di I/O vengono comunque salvate
+    fileImport.storedRows += storeBatch(fileImport.batch, thresholds);
+
+    ImportSummary summary = new ImportSummary(fileImport.files, fileImport.storedRows, fileImport.rejectedRows,
+        System.nanoTime() - startTime);
+    logger.info("Imported " + filePath + ": " + summary);
+    return summary;
   }
 
   /**
-   * Validates the saved measurement against the threshold of the corresponding
-   * sensor
-   * and notifies operators when the value is out of bounds. To be implemented in
-   * R1.
+   * State of the import of a single file: receives the rows decoded by
+   * {@link MeasurementCsvParser} and stores them in batches.
+   */
+  private static final class FileImport implements MeasurementCsvParser.RowHandler {
+    private final int batchSize;
+    private final ThresholdIndex thresholds;
+    private final List<Measurement> batch;
+    private int files;
+    private long storedRows;
+    private long rejectedRows;
+
+    FileImport(int batchSize, ThresholdIndex thresholds) {
+      this.batchSize = batchSize;
+      this.thresholds = thresholds;
+      this.batch = new ArrayList<>(batchSize);
+    }
+
+    @Override
+    public void accept(String networkCode, String gatewayCode, String sensorCode, double value, LocalDateTime timestamp) {
+      batch.add(new Measurement(networkCode, gatewayCode, sensorCode, value, timestamp));
+      if (batch.size() == batchSize) {
+        storedRows += storeBatch(batch, thresholds);
+      }
+    }
+
+    @Override
+    public void reject(String line) {
+      // in caso di errori ignoro e vado avanti
+      rejectedRows++;
+      System.err.println("Skipping invalid line: " + line);
+    }
+  }
+
+  /**
+   * Saves a batch of measurements in one transaction, checks them and empties
+   * the batch.
    *
-   * @param measurement newly stored measurement
+   * @param batch      measurements to save
+   * @param thresholds threshold index of the current import
+   * @return number of saved measurements
    */
-  private static void checkMeasurement(Measurement measurement) {
-    /***********************************************************************/
-    /* Do not change these lines, use currentSensor to check for possible */
-    /* threshold violation, tests mocks this db interaction */
-    /***********************************************************************/
-    CRUDRepository<Sensor, String> sensorRepository = new CRUDRepository<>(Sensor.class);
-    Sensor currentSensor = sensorRepository.read().stream()
-        .filter(s -> measurement.getSensorCode().equals(s.getCode()))
-        .findFirst()
-        .orElse(null);
-    /***********************************************************************/
-    if(currentSensor != null){
-      Threshold t = currentSensor.getThreshold();
-      if(t != null){
-        try {
-          Network network = repo.checkNetwork(measurement.getNetworkCode());
-          Collection<Operator> ops = network.getOperators();
-          String sensorCode = currentSensor.getCode();
-          double val = measurement.getValue();
-          double lim = t.getValue();
-          ThresholdType type = t.getType();
-          switch (type) {
-            case EQUAL:
-              if(val==lim){
-                AlertingService.notifyThresholdViolation(ops, sensorCode);
-              }break;
-            case GREATER_THAN:
-              if(val>lim){
-                AlertingService.notifyThresholdViolation(ops, sensorCode);
-              }break;
-            case GREATER_OR_EQUAL:
-              if(val>=lim){
-                AlertingService.notifyThresholdViolation(ops, sensorCode);
-              }break;
-            case LESS_THAN:
-              if(val<lim){
-                AlertingService.notifyThresholdViolation(ops, sensorCode);
-              }break;
-            case LESS_OR_EQUAL:
-              if(val<=lim){
-                AlertingService.notifyThresholdViolation(ops, sensorCode);
-              }break;
-            case NOT_EQUAL:
-              if(val!=lim){
-                AlertingService.notifyThresholdViolation(ops, sensorCode);
-              }break;
-          }
-        }catch (Exception e) {
-          return;
+  private static int storeBatch(List<Measurement> batch, ThresholdIndex thresholds) {
+    if (batch.isEmpty()) return 0;
+    int stored = repository.createAll(batch);
+    checkMeasurements(batch, thresholds);
+    batch.clear();
+    return stored;
+  }
+
+  /**
+   * Validates the saved measurements against the thresholds of the
+   * corresponding sensors and notifies operators for each value out of bounds.
+   * The thresholds and the operators are looked up in the index loaded for the
+   * current import.
+   * <p>
+   * Consecutive measurements of the same sensor (usually the whole batch, since
+   * files hold one sensor) are checked together by
+   * {@link CompiledThreshold#violations(double[], int)}.
+   *
+   * @param batch      newly stored measurements, in import order
+   * @param thresholds threshold index of the current import
+   */
+  private static void checkMeasurements(List<Measurement> batch, ThresholdIndex thresholds) {
+    double[] values = new double[batch.size()];
+    int runStart = 0;
+    while (runStart < batch.size()) {
+      String sensorCode = batch.get(runStart).getSensorCode();
+      int runEnd = runStart + 1;
+      while (runEnd < batch.size() && sensorCode.equals(batch.get(runEnd).getSensorCode())) runEnd++;
+
+      CompiledThreshold threshold = thresholds.getThreshold(sensorCode);
+      if (threshold != null) {
+        int length = runEnd - runStart;
+        for (int i = 0; i < length; i++) values[i] = batch.get(runStart + i).getValue();
+        BitSet violations = threshold.violations(values, length);
+        for (int i = violations.nextSetBit(0); i >= 0; i = violations.nextSetBit(i + 1)) {
+          notifyViolation(batch.get(runStart + i), thresholds);
         }
       }
+      runStart = runEnd;
+    }
+  }
+
+  /**
+   * Notifies the operators of the network of a measurement out of bounds.
+   *
+   * @param measurement measurement out of threshold bounds
+   * @param thresholds  threshold index of the current import
+   */
+  private static void notifyViolation(Measurement measurement, ThresholdIndex thresholds) {
+    // la rete viene letta solo in caso di violazione
+    Collection<Operator> ops = thresholds.getOperators(measurement.getNetworkCode());
+    if (ops != null) {
+      AlertingService.notifyThresholdViolation(ops, measurement.getSensorCode());
     }
   }
 
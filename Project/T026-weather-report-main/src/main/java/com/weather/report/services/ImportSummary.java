@@ -0,0 +1,71 @@
+package com.weather.report.services;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of a measurement import: number of imported files, stored and
+ * rejected rows and wall-clock duration.
+ */
+public class ImportSummary {
+
+  private final int files;
+  private final long storedRows;
+  private final long rejectedRows;
+  private final long elapsedNanos;
+
+  /**
+   * @param files        number of imported files
+   * @param storedRows   rows persisted as measurements
+   * @param rejectedRows malformed rows that were skipped
+   * @param elapsedNanos wall-clock duration of the import in nanoseconds
+   */
+  public ImportSummary(int files, long storedRows, long rejectedRows, long elapsedNanos) {
+    this.files = files;
+    this.storedRows = storedRows;
+    this.rejectedRows = rejectedRows;
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  /**
+   * @return number of imported files
+   */
+  public int getFiles() {
+    return files;
+  }
+
+  /**
+   * @return rows persisted as measurements
+   */
+  public long getStoredRows() {
+    return storedRows;
+  }
+
+  /**
+   * @return malformed rows that were skipped
+   */
+  public long getRejectedRows() {
+    return rejectedRows;
+  }
+
+  /**
+   * @return wall-clock duration of the import in milliseconds
+   */
+  public long getElapsedMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+  }
+
+  /**
+   * @return stored rows per second of wall-clock time
+   */
+  public double getRowsPerSecond() {
+    if (elapsedNanos <= 0) return 0.0;
+    return storedRows * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d file(s), %d rows stored, %d rows rejected in %d ms (%.0f rows/s)",
+        files, storedRows, rejectedRows, getElapsedMillis(), getRowsPerSecond());
+  }
+
+}
@@ -0,0 +1,295 @@
+package com.weather.report.services;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+
+import com.weather.report.WeatherReport;
+
+/**
+ * Parser of the measurement CSV files (see README for the format).
+ * <p>
+ * The file is memory-mapped and each row is decoded directly from the mapped
+ * bytes: the timestamp is read with a fixed-layout {@code yyyy-MM-dd HH:mm:ss}
+ * decoder, plain decimal values with an exact fast path and repeated codes
+ * reuse the previously decoded string. Rows that do not fit the fast path are
+ * parsed as before, with {@code split}, {@link LocalDateTime#parse} and
+ * {@link Double#parseDouble}, so malformed rows are accepted or rejected
+ * exactly as they were.
+ */
+public class MeasurementCsvParser {
+
+  /**
+   * Receives the rows decoded by the parser.
+   */
+  public interface RowHandler {
+
+    /**
+     * Called for every valid row, in file order.
+     *
+     * @param networkCode code of the network
+     * @param gatewayCode code of the gateway
+     * @param sensorCode  code of the sensor
+     * @param value       measured value
+     * @param timestamp   time of the measurement
+     */
+    void accept(String networkCode, String gatewayCode, String sensorCode, double value, LocalDateTime timestamp);
+
+    /**
+     * Called for every malformed row, in file order.
+     *
+     * @param line content of the row
+     */
+    void reject(String line);
+  }
+
+  /** Largest portion of the file mapped at once. */
+  private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+  private static final int TIMESTAMP_LENGTH = WeatherReport.DATE_FORMAT.length();
+  /** Values with at most this many digits are exactly representable as a {@code long} mantissa in a double. */
+  private static final int MAX_FAST_DIGITS = 15;
+  private static final double[] POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+  };
+
+  private final RowHandler handler;
+  private final CodeCache networkCodes = new CodeCache();
+  private final CodeCache gatewayCodes = new CodeCache();
+  private final CodeCache sensorCodes = new CodeCache();
+  private final int[] commas = new int[4];
+
+  private MeasurementCsvParser(RowHandler handler) {
+    this.handler = handler;
+  }
+
+  /**
+   * Parses a measurement file, skipping the header line.
+   *
+   * @param file    CSV file to parse
+   * @param handler receiver of the parsed rows
+   * @throws IOException if the file cannot be read
+   */
+  public static void parse(Path file, RowHandler handler) throws IOException {
+    new MeasurementCsvParser(handler).parseFile(file);
+  }
+
+  private void parseFile(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      long position = 0;
+      boolean header = true;
+
+      while (position < size) {
+        int length = (int) Math.min(WINDOW_SIZE, size - position);
+        boolean lastWindow = position + length == size;
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+        int lineStart = 0;
+        for (int i = 0; i < length; i++) {
+          if (buffer.get(i) == '\n') {
+            if (header) header = false;
+            else parseLine(buffer, lineStart, i);
+            lineStart = i + 1;
+          }
+        }
+
+        if (lastWindow) {
+          // ultima riga senza terminatore
+          if (lineStart < length && !header) parseLine(buffer, lineStart, length);
+          position = size;
+        } else if (lineStart == 0) {
+          throw new IOException("Line longer than " + WINDOW_SIZE + " bytes in " + file);
+        } else {
+          // la riga incompleta viene riletta all'inizio della finestra successiva
+          position += lineStart;
+        }
+      }
+    }
+  }
+
+  /**
+   * Decodes the row in {@code [start, end)}, falling back to
+   * {@link #parseSlow(String)} when the row does not fit the fast path.
+   */
+  private void parseLine(ByteBuffer buffer, int start, int end) {
+    if (end > start && buffer.get(end - 1) == '\r') end--;
+
+    int found = 0;
+    int valueEnd = end;
+    for (int i = start; i < end; i++) {
+      if (buffer.get(i) == ',') {
+        if (found == commas.length) {
+          valueEnd = i; // i campi oltre il quinto vengono ignorati, come con split
+          break;
+        }
+        commas[found++] = i;
+      }
+    }
+
+    if (found == commas.length) {
+      LocalDateTime timestamp = decodeTimestamp(buffer, start, commas[0]);
+      String networkCode = networkCodes.get(buffer, commas[0] + 1, commas[1]);
+      String gatewayCode = gatewayCodes.get(buffer, commas[1] + 1, commas[2]);
+      String sensorCode = sensorCodes.get(buffer, commas[2] + 1, commas[3]);
+      double value = decodeValue(buffer, commas[3] + 1, valueEnd);
+      if (timestamp != null && networkCode != null && gatewayCode != null && sensorCode != null && !Double.isNaN(value)) {
+        handler.accept(networkCode, gatewayCode, sensorCode, value, timestamp);
+        return;
+      }
+    }
+    parseSlow(decode(buffer, start, end));
+  }
+
+  /**
+   * Parses a row with the original split/parse logic.
+   *
+   * @param line content of the row
+   */
+  private void parseSlow(String line) {
+    try {
+      String[] data = line.split(",");
+      LocalDateTime timestamp = LocalDateTime.parse(data[0], WeatherReport.DATE_TIME_FORMATTER);
+      String networkCode = data[1].trim();
+      String gatewayCode = data[2].trim();
+      String sensorCode = data[3].trim();
+      double value = Double.parseDouble(data[4]);
+      handler.accept(networkCode, gatewayCode, sensorCode, value, timestamp);
+    } catch (DateTimeParseException | NumberFormatException | ArrayIndexOutOfBoundsException e) {
+      handler.reject(line);
+    }
+  }
+
+  /**
+   * Decodes a {@code yyyy-MM-dd HH:mm:ss} timestamp.
+   *
+   * @return the timestamp, or {@code null} if the field does not have exactly
+   *         that layout or is not a valid date
+   */
+  private static LocalDateTime decodeTimestamp(ByteBuffer buffer, int start, int end) {
+    if (end - start != TIMESTAMP_LENGTH
+        || buffer.get(start + 4) != '-' || buffer.get(start + 7) != '-' || buffer.get(start + 10) != ' '
+        || buffer.get(start + 13) != ':' || buffer.get(start + 16) != ':') {
+      return null;
+    }
+    int year = digits(buffer, start, 4);
+    int month = digits(buffer, start + 5, 2);
+    int day = digits(buffer, start + 8, 2);
+    int hour = digits(buffer, start + 11, 2);
+    int minute = digits(buffer, start + 14, 2);
+    int second = digits(buffer, start + 17, 2);
+    if ((year | month | day | hour | minute | second) < 0) return null;
+    try {
+      return LocalDateTime.of(year, month, day, hour, minute, second);
+    } catch (DateTimeException e) {
+      // es. 31 febbraio: lasciato al formatter, che lo risolve come prima
+      return null;
+    }
+  }
+
+  /**
+   * @return the decimal number written with {@code count} digits at
+   *         {@code start}, or -1 if a byte is not a digit
+   */
+  private static int digits(ByteBuffer buffer, int start, int count) {
+    int result = 0;
+    for (int i = start; i < start + count; i++) {
+      int digit = buffer.get(i) - '0';
+      if (digit < 0 || digit > 9) return -1;
+      result = result * 10 + digit;
+    }
+    return result;
+  }
+
+  /**
+   * Decodes a plain decimal value ({@code [-+]digits[.digits]}, surrounded by
+   * optional blanks) with at most {@link #MAX_FAST_DIGITS} digits. Both the
+   * mantissa and the power of ten are exact doubles, so the division gives the
+   * same correctly rounded result as {@link Double#parseDouble}.
+   *
+   * @return the value, or {@code NaN} if the field does not fit the fast path
+   */
+  private static double decodeValue(ByteBuffer buffer, int start, int end) {
+    while (start < end && buffer.get(start) <= ' ' && buffer.get(start) >= 0) start++;
+    while (end > start && buffer.get(end - 1) <= ' ' && buffer.get(end - 1) >= 0) end--;
+    if (start == end) return Double.NaN;
+
+    boolean negative = false;
+    byte first = buffer.get(start);
+    if (first == '-' || first == '+') {
+      negative = first == '-';
+      start++;
+    }
+
+    long mantissa = 0;
+    int digitCount = 0;
+    int fractionDigits = 0;
+    boolean point = false;
+    for (int i = start; i < end; i++) {
+      byte b = buffer.get(i);
+      if (b == '.' && !point) {
+        point = true;
+      } else if (b >= '0' && b <= '9') {
+        if (++digitCount > MAX_FAST_DIGITS) return Double.NaN;
+        mantissa = mantissa * 10 + (b - '0');
+        if (point) fractionDigits++;
+      } else {
+        return Double.NaN;
+      }
+    }
+    if (digitCount == 0) return Double.NaN;
+
+    double value = mantissa / POWERS_OF_TEN[fractionDigits];
+    return negative ? -value : value;
+  }
+
+  private static String decode(ByteBuffer buffer, int start, int end) {
+    byte[] bytes = new byte[end - start];
+    buffer.get(start, bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Trims and decodes a code field, reusing the last decoded string while the
+   * bytes do not change (rows of a file usually share the same codes).
+   */
+  private static final class CodeCache {
+    private byte[] bytes = new byte[0];
+    private String value;
+
+    /**
+     * @return the trimmed field, or {@code null} if it contains non-ASCII bytes
+     */
+    String get(ByteBuffer buffer, int start, int end) {
+      while (start < end && buffer.get(start) <= ' ' && buffer.get(start) >= 0) start++;
+      while (end > start && buffer.get(end - 1) <= ' ' && buffer.get(end - 1) >= 0) end--;
+      int length = end - start;
+
+      if (value != null && sameBytes(buffer, start, length)) {
+        return value;
+      }
+      byte[] field = new byte[length];
+      buffer.get(start, field);
+      for (byte b : field) {
+        if (b < 0) return null;
+      }
+      bytes = field;
+      value = new String(field, StandardCharsets.US_ASCII);
+      return value;
+    }
+
+    private boolean sameBytes(ByteBuffer buffer, int start, int length) {
+      if (length != bytes.length) return false;
+      for (int i = 0; i < length; i++) {
+        if (buffer.get(start + i) != bytes[i]) return false;
+      }
+      return true;
+    }
+  }
+
+}
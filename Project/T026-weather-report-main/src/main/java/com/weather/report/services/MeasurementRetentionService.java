@@ -0,0 +1,118 @@
+package com.weather.report.services;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.weather.report.model.entities.Measurement;
+import com.weather.report.repositories.MeasurementRepository;
+
+/**
+ * Keeps the measurement tables bounded: measurements older than the raw
+ * retention are compacted into hourly aggregates, and whole monthly
+ * partitions older than the partition retention are dropped.
+ * <p>
+ * The two steps can be run on demand or periodically on a background thread
+ * with {@link #start(Duration)}.
+ */
+public class MeasurementRetentionService implements AutoCloseable {
+
+  /** Default age after which measurements are compacted. */
+  public static final Duration DEFAULT_RAW_RETENTION = Duration.ofDays(30);
+  /** Partition retention that keeps all the partitions. */
+  public static final int KEEP_ALL_PARTITIONS = 0;
+
+  private static final Logger logger = LogManager.getLogger(MeasurementRetentionService.class);
+
+  private final MeasurementRepository repository = new MeasurementRepository();
+  private final Duration rawRetention;
+  private final int retainedMonths;
+  private ScheduledExecutorService scheduler;
+
+  /**
+   * @param rawRetention   age after which measurements are replaced by hourly
+   *                       aggregates
+   * @param retainedMonths number of monthly partitions kept, the current one
+   *                       included, or {@link #KEEP_ALL_PARTITIONS}
+   */
+  public MeasurementRetentionService(Duration rawRetention, int retainedMonths) {
+    if (rawRetention.isNegative()) throw new IllegalArgumentException("rawRetention must not be negative");
+    if (retainedMonths < 0) throw new IllegalArgumentException("retainedMonths must not be negative");
+    this.rawRetention = rawRetention;
+    this.retainedMonths = retainedMonths;
+  }
+
+  /**
+   * Compacts the measurements older than the raw retention, whole hours only.
+   *
+   * @param now current time
+   * @return number of compacted measurements
+   */
+  public long compact(LocalDateTime now) {
+    return repository.compactBefore(now.minus(rawRetention).truncatedTo(ChronoUnit.HOURS));
+  }
+
+  /**
+   * Drops the partitions older than the partition retention.
+   *
+   * @param now current time
+   * @return number of deleted measurements and aggregates
+   */
+  public int dropExpiredPartitions(LocalDateTime now) {
+    if (retainedMonths == KEEP_ALL_PARTITIONS) return 0;
+    YearMonth firstKept = YearMonth.from(now).minusMonths(retainedMonths - 1L);
+    return repository.dropPartitionsBefore(Measurement.partitionOf(firstKept.atDay(1).atStartOfDay()));
+  }
+
+  /**
+   * Drops the expired partitions and then compacts the old measurements.
+   */
+  public void run() {
+    LocalDateTime now = LocalDateTime.now();
+    int dropped = dropExpiredPartitions(now);
+    long compacted = compact(now);
+    logger.info("Retention: {} rows dropped, {} measurements compacted", dropped, compacted);
+  }
+
+  /**
+   * Runs {@link #run()} periodically on a background daemon thread, the first
+   * time after one period. Failed runs are logged and retried at the next
+   * period.
+   *
+   * @param period time between the end of a run and the start of the next
+   */
+  public synchronized void start(Duration period) {
+    if (scheduler != null) throw new IllegalStateException("Retention job already started");
+    scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().daemon().name("measurement-retention").factory());
+    scheduler.scheduleWithFixedDelay(() -> {
+      try {
+        run();
+      } catch (RuntimeException e) {
+        logger.error("Retention run failed", e);
+      }
+    }, period.toMillis(), period.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops the background job, waiting for a running compaction to finish.
+   */
+  @Override
+  public synchronized void close() {
+    if (scheduler == null) return;
+    scheduler.shutdown();
+    try {
+      scheduler.awaitTermination(1, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    scheduler = null;
+  }
+
+}
@@ -0,0 +1,112 @@
+package com.weather.report.services;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.weather.report.exceptions.ElementNotFoundException;
+import com.weather.report.exceptions.InvalidInputDataException;
+import com.weather.report.model.entities.Operator;
+import com.weather.report.model.entities.Sensor;
+import com.weather.report.repositories.CRUDRepository;
+import com.weather.report.repositories.NetworkRepository;
+
+/**
+ * Snapshot of the sensor thresholds used by {@link DataImportingService} to
+ * check imported measurements with a map lookup instead of a scan of all the
+ * sensors. Thresholds are kept compiled (see {@link CompiledThreshold}).
+ * <p>
+ * The index is loaded once per import. Operations that change thresholds,
+ * sensors or the topology call {@link #invalidate()}, and an index loaded
+ * before the change reloads itself on its next lookup.
+ */
+public class ThresholdIndex {
+
+  private static final AtomicLong currentVersion = new AtomicLong();
+
+  private final NetworkRepository networkRepository = new NetworkRepository();
+  private volatile long version;
+  private volatile Map<String, CompiledThreshold> thresholds;
+  // operatori per codice di rete, caricati solo alla prima violazione della rete
+  private final Map<String, Optional<Collection<Operator>>> operatorsByNetwork = new ConcurrentHashMap<>();
+
+  private ThresholdIndex() {
+    reload();
+  }
+
+  /**
+   * Loads the thresholds of all the sensors.
+   *
+   * @return new index
+   */
+  public static ThresholdIndex load() {
+    return new ThresholdIndex();
+  }
+
+  /**
+   * Marks every loaded index as stale. To be called whenever a threshold, a
+   * sensor or the topology changes.
+   */
+  public static void invalidate() {
+    currentVersion.incrementAndGet();
+  }
+
+  /**
+   * Retrieves the threshold of a sensor, reloading the index first if it is
+   * stale.
+   *
+   * @param sensorCode code of the sensor
+   * @return compiled threshold of the sensor, or {@code null} if the sensor
+   *         does not exist or has no threshold
+   */
+  public CompiledThreshold getThreshold(String sensorCode) {
+    if (version != currentVersion.get()) {
+      reload();
+    }
+    return thresholds.get(sensorCode);
+  }
+
+  /**
+   * Retrieves the operators of a network, reading the network only the first
+   * time it is requested.
+   *
+   * @param networkCode code of the network
+   * @return operators of the network, or {@code null} if the network does not
+   *         exist
+   */
+  public Collection<Operator> getOperators(String networkCode) {
+    return operatorsByNetwork.computeIfAbsent(networkCode, this::readOperators).orElse(null);
+  }
+
+  private synchronized void reload() {
+    long loadedVersion = currentVersion.get();
+    /***********************************************************************/
+    /* Tests mock this db interaction to provide the sensors to check     */
+    /***********************************************************************/
+    CRUDRepository<Sensor, String> sensorRepository = new CRUDRepository<>(Sensor.class);
+    List<Sensor> sensors = sensorRepository.read();
+    /***********************************************************************/
+    Map<String, CompiledThreshold> loaded = new HashMap<>();
+    for (Sensor sensor : sensors) {
+      if (sensor.getThreshold() != null) {
+        loaded.put(sensor.getCode(), CompiledThreshold.compile(sensor.getThreshold()));
+      }
+    }
+    operatorsByNetwork.clear();
+    thresholds = loaded;
+    version = loadedVersion;
+  }
+
+  private Optional<Collection<Operator>> readOperators(String networkCode) {
+    try {
+      return Optional.of(networkRepository.checkNetwork(networkCode).getOperators());
+    } catch (InvalidInputDataException | ElementNotFoundException e) {
+      return Optional.empty();
+    }
+  }
+
+}
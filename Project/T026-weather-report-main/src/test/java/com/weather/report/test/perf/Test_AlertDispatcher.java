@@ -0,0 +1,103 @@
+package com.weather.report.test.perf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.weather.report.model.entities.Operator;
+import com.weather.report.services.AlertDispatcher;
+import com.weather.report.services.AlertDispatcher.Alert;
+
+public class Test_AlertDispatcher {
+
+  private static final Operator ALICE = new Operator("alice@example.com", "Alice", "Rossi", null, null);
+  private static final Operator BOB = new Operator("bob@example.com", "Bob", "Bianchi", "+390000000", null);
+
+  private final Map<String, List<String>> sent = new LinkedHashMap<>();
+
+  private void record(Operator operator, List<Alert> alerts) {
+    List<String> lines = sent.computeIfAbsent(operator.getEmail(), e -> new ArrayList<>());
+    for (Alert alert : alerts) {
+      lines.add(alert.getSensorCode() + "=" + alert.getViolations());
+    }
+  }
+
+  @Test
+  void violationsShouldBeCoalescedPerSensorAndBatchedPerOperator() {
+    // finestra lunga: la consegna avviene solo con flush()
+    try (AlertDispatcher dispatcher = new AlertDispatcher(8, Duration.ofHours(1), this::record)) {
+      for (int i = 0; i < 5; i++) {
+        dispatcher.submit(List.of(ALICE, BOB), "S_000001");
+      }
+      dispatcher.submit(List.of(ALICE), "S_000002");
+      assertEquals(2, dispatcher.getQueueDepth());
+
+      assertEquals(2, dispatcher.flush());
+      assertEquals(List.of("S_000001=5", "S_000002=1"), sent.get(ALICE.getEmail()));
+      assertEquals(List.of("S_000001=5"), sent.get(BOB.getEmail()));
+      assertEquals(0, dispatcher.getQueueDepth());
+      assertEquals(6, dispatcher.getSubmitted());
+      assertEquals(4, dispatcher.getCoalesced());
+      assertEquals(2, dispatcher.getDispatched());
+
+      // dopo l'invio una nuova violazione apre un nuovo avviso
+      dispatcher.submit(List.of(BOB), "S_000001");
+      assertEquals(1, dispatcher.getQueueDepth());
+    }
+    assertEquals(List.of("S_000001=5", "S_000001=1"), sent.get(BOB.getEmail()));
+  }
+
+  @Test
+  void alertsBeyondCapacityShouldBeDroppedAndCounted() {
+    try (AlertDispatcher dispatcher = new AlertDispatcher(2, Duration.ofHours(1), this::record)) {
+      dispatcher.submit(List.of(ALICE), "S_000001");
+      dispatcher.submit(List.of(ALICE), "S_000002");
+      dispatcher.submit(List.of(ALICE), "S_000003");
+      dispatcher.submit(List.of(ALICE), "S_000003");
+
+      assertEquals(2, dispatcher.getQueueDepth());
+      assertEquals(2, dispatcher.getDropped());
+      dispatcher.flush();
+      assertEquals(List.of("S_000001=1", "S_000002=1"), sent.get(ALICE.getEmail()));
+    }
+  }
+
+  @Test
+  void workerShouldDispatchAfterTheWindow() throws InterruptedException {
+    try (AlertDispatcher dispatcher = new AlertDispatcher(8, Duration.ofMillis(20), (operator, alerts) -> {
+      synchronized (sent) {
+        record(operator, alerts);
+        sent.notifyAll();
+      }
+    })) {
+      dispatcher.submit(List.of(ALICE), "S_000001");
+      synchronized (sent) {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (sent.isEmpty() && System.currentTimeMillis() < deadline) {
+          sent.wait(100);
+        }
+        assertEquals(List.of("S_000001=1"), sent.get(ALICE.getEmail()));
+      }
+    }
+  }
+
+  @Test
+  void closeShouldDispatchTheLastWindowBeforeReturning() {
+    // il worker è avviato ma la finestra non scade: è close(), come all'uscita della JVM, a inviare
+    AlertDispatcher dispatcher = new AlertDispatcher(8, Duration.ofHours(1), this::record);
+    dispatcher.submit(List.of(ALICE), "S_000001");
+    dispatcher.submit(List.of(ALICE), "S_000001");
+    dispatcher.close();
+
+    assertEquals(List.of("S_000001=2"), sent.get(ALICE.getEmail()));
+    assertEquals(0, dispatcher.getQueueDepth());
+    assertEquals(1, dispatcher.getDispatched());
+  }
+
+}
@@ -0,0 +1,85 @@
+package com.weather.report.test.perf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.weather.report.exceptions.UnauthorizedException;
+import com.weather.report.exceptions.WeatherReportException;
+import com.weather.report.model.ThresholdType;
+import com.weather.report.model.UserType;
+import com.weather.report.model.entities.Gateway;
+import com.weather.report.model.entities.Sensor;
+import com.weather.report.persistence.PersistenceManager;
+import com.weather.report.repositories.UserRepository;
+import com.weather.report.test.BasePersistenceTest;
+
+public class Test_EntityCache extends BasePersistenceTest {
+
+  private static final String NET = "NET_01";
+  private static final String GW_A = "GW_0001";
+  private static final String GW_B = "GW_0002";
+  private static final String SENSOR = "S_000001";
+
+  @Test
+  void repeatedReadsShouldHitTheCache() throws WeatherReportException {
+    createSensor(SENSOR);
+    facade.sensors().createThreshold(SENSOR, ThresholdType.GREATER_THAN, 30.0, MAINTAINER_USERNAME);
+
+    for (int i = 0; i < 10; i++) {
+      assertEquals(30.0, facade.sensors().getSensors(SENSOR).iterator().next().getThreshold().getValue());
+      assertEquals(1, facade.sensors().getSensors().size());
+    }
+
+    Map<String, Double> ratios = PersistenceManager.getCacheHitRatios();
+    assertTrue(ratios.get(Sensor.class.getName()) > 0.5, ratios.toString());
+    assertTrue(ratios.get("query") > 0.5, ratios.toString());
+  }
+
+  @Test
+  void cachedTopologyShouldFollowMutations() throws WeatherReportException {
+    createNetwork(NET);
+    createGateway(GW_A);
+    createGateway(GW_B);
+    createSensor(SENSOR);
+    connectGateway(NET, GW_A);
+    connectSensor(SENSOR, GW_A);
+    assertEquals(1, facade.topology().getGatewaySensors(GW_A).size());
+
+    // spostamento: cambiano le collezioni di entrambi i gateway
+    connectSensor(SENSOR, GW_B);
+    assertEquals(0, facade.topology().getGatewaySensors(GW_A).size());
+    assertEquals(1, facade.topology().getGatewaySensors(GW_B).size());
+    assertEquals(GW_B, facade.sensors().getSensors(SENSOR).iterator().next().getGateway().getCode());
+
+    facade.sensors().updateSensor(SENSOR, "renamed", "", MAINTAINER_USERNAME);
+    assertEquals("renamed", facade.sensors().getSensors(SENSOR).iterator().next().getName());
+    assertEquals(1, facade.networks().getNetworks(NET).iterator().next().getGateways().size());
+
+    facade.sensors().deleteSensor(SENSOR, MAINTAINER_USERNAME);
+    assertEquals(0, facade.sensors().getSensors().size());
+    Gateway gateway = facade.gateways().getGateways(GW_B).iterator().next();
+    assertEquals(0, gateway.getSensors().size());
+  }
+
+  @Test
+  void maintainerChecksShouldUseCachedUsers() throws WeatherReportException {
+    UserRepository users = new UserRepository();
+    assertSame(users.checkMaintainer(MAINTAINER_USERNAME), new UserRepository().checkMaintainer(MAINTAINER_USERNAME));
+    assertThrows(UnauthorizedException.class, () -> users.checkMaintainer(VIEWER_USERNAME));
+
+    // un utente sconosciuto non resta in cache: dopo la creazione è autorizzato
+    assertThrows(UnauthorizedException.class, () -> users.checkMaintainer("newcomer"));
+    facade.createUser("newcomer", UserType.MAINTAINER);
+    assertEquals(UserType.MAINTAINER, users.checkMaintainer("newcomer").getType());
+
+    users.delete("newcomer");
+    assertThrows(UnauthorizedException.class, () -> users.checkMaintainer("newcomer"));
+  }
+
+}
@@ -0,0 +1,122 @@
+package com.weather.report.test.perf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.weather.report.model.ThresholdType;
+import com.weather.report.model.entities.Measurement;
+import com.weather.report.model.entities.Threshold;
+import com.weather.report.repositories.MeasurementRepository;
+import com.weather.report.services.CompiledThreshold;
+import com.weather.report.services.ImportSummary;
+import com.weather.report.test.BasePersistenceTest;
+
+public class Test_Import extends BasePersistenceTest {
+
+  private String csvDirectory() {
+    return new File(getClass().getClassLoader().getResource("csv/S_111.csv").getPath()).getParent();
+  }
+
+  @Test
+  void importDataFromFileShouldReturnSummary() {
+    ImportSummary summary = facade.importDataFromFile(
+        getClass().getClassLoader().getResource("csv/S_111.csv").getPath());
+
+    assertEquals(1, summary.getFiles());
+    assertEquals(166, summary.getStoredRows());
+    assertEquals(0, summary.getRejectedRows());
+  }
+
+  @Test
+  void importDataFromMissingFileShouldImportNothing() {
+    ImportSummary summary = facade.importDataFromFile("missing/S_000.csv");
+
+    assertEquals(0, summary.getFiles());
+    assertEquals(0, summary.getStoredRows());
+  }
+
+  @Test
+  void importDataFromDirectoryShouldImportAllFiles() {
+    ImportSummary summary = facade.importDataFromDirectory(csvDirectory());
+
+    assertEquals(14, summary.getFiles());
+    assertEquals(1398, summary.getStoredRows());
+    assertEquals(0, summary.getRejectedRows());
+    assertEquals(1398, new MeasurementRepository().read().size());
+  }
+
+  @Test
+  void importDataFromDirectoryShouldImportOnlyMatchingFiles() {
+    ImportSummary summary = facade.importDataFromDirectory(csvDirectory(), "S_12*.csv");
+
+    assertEquals(5, summary.getFiles());
+    assertEquals(486, summary.getStoredRows());
+  }
+
+  @Test
+  void importDataFromFileShouldSkipOnlyMalformedLines(@TempDir Path dir) throws IOException {
+    Path file = dir.resolve("S_999.csv");
+    Files.writeString(file, "date, networkCode, gatewayCode, sensorCode, value\r\n"
+        + "2024-03-01 10:00:00, NET_99, GW_9999, S_999999, 21.5\r\n"
+        + "2024-03-01 11:00:00,NET_99,GW_9999,S_999999, -0.125,extra\r\n"
+        + "2024-03-01 12:00:00, NET_99, GW_9999, S_999999, 1e2\r\n"
+        + "2024-02-30 13:00:00, NET_99, GW_9999, S_999999, 3\r\n"
+        + "not a date, NET_99, GW_9999, S_999999, 4\r\n"
+        + "2024-03-01 14:00:00, NET_99, GW_9999, S_999999, abc\r\n"
+        + "2024-03-01 15:00:00, NET_99, GW_9999\r\n"
+        + "2024-03-01 15:30:00, NET_99, GW_9999, S_999999, 5\u00b0\r\n"
+        + "\r\n"
+        + "2024-03-01 16:00:00, NET_99, GW_9999, S_999999, 0.1");
+
+    ImportSummary summary = facade.importDataFromFile(file.toString());
+
+    assertEquals(5, summary.getStoredRows());
+    assertEquals(5, summary.getRejectedRows());
+    List<Measurement> stored = new MeasurementRepository().read();
+    stored.sort(Comparator.comparing(Measurement::getTimestamp));
+    assertEquals(List.of(3.0, 21.5, -0.125, 100.0, 0.1), stored.stream().map(Measurement::getValue).toList());
+    // 30 febbraio risolto come dal formatter originale
+    assertEquals(LocalDateTime.of(2024, 2, 29, 13, 0), stored.get(0).getTimestamp());
+    assertEquals("S_999999", stored.get(4).getSensorCode());
+  }
+
+  @Test
+  void compiledThresholdsShouldFlagTheSameValuesAsTheirType() {
+    // più di una parola della bitmap, con valori uguali al limite e NaN
+    double[] values = new double[150];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i % 7 == 0 ? 20.0 : (i % 11 == 0 ? Double.NaN : 10 + i % 23);
+    }
+    for (ThresholdType type : ThresholdType.values()) {
+      CompiledThreshold threshold = CompiledThreshold.compile(new Threshold(20.0, type));
+      BitSet violations = threshold.violations(values, 140);
+      for (int i = 0; i < 140; i++) {
+        double v = values[i];
+        boolean expected = switch (type) {
+          case EQUAL -> v == 20.0;
+          case GREATER_THAN -> v > 20.0;
+          case GREATER_OR_EQUAL -> v >= 20.0;
+          case LESS_THAN -> v < 20.0;
+          case LESS_OR_EQUAL -> v <= 20.0;
+          case NOT_EQUAL -> v != 20.0;
+        };
+        assertEquals(expected, violations.get(i), type + " at " + i);
+        assertEquals(expected, threshold.test(v), type + " at " + i);
+      }
+      assertTrue(violations.length() <= 140, type.toString());
+    }
+  }
+
+}
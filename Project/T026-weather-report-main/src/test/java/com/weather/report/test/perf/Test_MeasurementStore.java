@@ -0,0 +1,467 @@
+package com.weather.report.test.perf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.weather.report.WeatherReport;
+import com.weather.report.exceptions.ElementNotFoundException;
+import com.weather.report.exceptions.InvalidInputDataException;
+import com.weather.report.exceptions.WeatherReportException;
+import com.weather.report.model.MeasurementColumns;
+import com.weather.report.model.MeasurementRollups;
+import com.weather.report.model.entities.Measurement;
+import com.weather.report.model.entities.Parameter;
+import com.weather.report.persistence.CodeDictionary;
+import com.weather.report.persistence.PersistenceManager;
+import com.weather.report.persistence.UnitOfWork;
+import com.weather.report.reports.GatewayReport;
+import com.weather.report.reports.GatewayReportImplementation;
+import com.weather.report.reports.NetworkReport;
+import com.weather.report.reports.NetworkReportImplementation;
+import com.weather.report.reports.ReportCache;
+import com.weather.report.reports.SensorReport;
+import com.weather.report.reports.SensorReportImplementation;
+import com.weather.report.reports.StreamingStatistics;
+import com.weather.report.repositories.MeasurementRepository;
+import com.weather.report.repositories.MeasurementSnapshot;
+import com.weather.report.services.MeasurementRetentionService;
+import com.weather.report.test.BasePersistenceTest;
+import com.weather.report.utils.LocalDateTimeUtils;
+
+import jakarta.persistence.EntityManager;
+
+public class Test_MeasurementStore extends BasePersistenceTest {
+
+  private static final String NET = "NET_01";
+  private static final String GW = "GW_0101";
+  private static final String SENSOR = "S_010101";
+
+  private final MeasurementRepository repository = new MeasurementRepository();
+
+  private String csv(String name) {
+    return getClass().getClassLoader().getResource("csv/" + name).getPath();
+  }
+
+  @Test
+  void reportsFromStoreShouldMatchReportsFromEntities() throws WeatherReportException {
+    facade.importDataFromDirectory(new File(csv("S_111.csv")).getParent());
+    createNetwork(NET);
+    createGateway(GW);
+    createSensor(SENSOR);
+
+    assertFalse(MeasurementRepository.isColumnStoreEnabled());
+    assertReportsMatchEntities();
+    MeasurementRepository.setColumnStoreEnabled(true);
+    try {
+      assertReportsMatchEntities();
+    } finally {
+      MeasurementRepository.setColumnStoreEnabled(false);
+    }
+  }
+
+  private void assertReportsMatchEntities() throws WeatherReportException {
+    String[][] intervals = { { null, null }, { "2025-11-16 10:00:00", "2025-11-16 20:00:00" },
+        { "2025-11-20 00:00:00", null }, { "2025-11-16 10:30:00", "2025-11-18 20:15:00" } };
+    for (String[] interval : intervals) {
+      LocalDateTime start = LocalDateTimeUtils.parseLocalDateTime(interval[0], LocalDateTime.MIN);
+      LocalDateTime end = LocalDateTimeUtils.parseLocalDateTime(interval[1], LocalDateTime.MAX);
+
+      SensorReport sensor = facade.sensors().getSensorReport(SENSOR, interval[0], interval[1]);
+      SensorReport expectedSensor = new SensorReportImplementation(SENSOR, interval[0], interval[1],
+          repository.readBySensor(SENSOR, start, end));
+      assertEquals(expectedSensor.getNumberOfMeasurements(), sensor.getNumberOfMeasurements());
+      assertEquals(expectedSensor.getMean(), sensor.getMean(), 1e-9);
+      assertEquals(expectedSensor.getVariance(), sensor.getVariance(), 1e-9);
+      // gli outlier restano le misure salvate, con il loro id
+      assertEquals(expectedSensor.getOutliers().stream().map(Measurement::getId).sorted().toList(),
+          sensor.getOutliers().stream().map(Measurement::getId).sorted().toList());
+      assertEquals(expectedSensor.getHistogram(), sensor.getHistogram());
+
+      GatewayReport gateway = facade.gateways().getGatewayReport(GW, interval[0], interval[1]);
+      GatewayReport expectedGateway = new GatewayReportImplementation(facade.gateways().getGateways(GW).iterator().next(),
+          interval[0], interval[1], repository.readByGateway(GW, start, end));
+      assertEquals(expectedGateway.getNumberOfMeasurements(), gateway.getNumberOfMeasurements());
+      assertEquals(new HashSet<>(expectedGateway.getMostActiveSensors()), new HashSet<>(gateway.getMostActiveSensors()));
+      assertEquals(new HashSet<>(expectedGateway.getLeastActiveSensors()), new HashSet<>(gateway.getLeastActiveSensors()));
+      assertEquals(expectedGateway.getSensorsLoadRatio(), gateway.getSensorsLoadRatio());
+      assertEquals(expectedGateway.getHistogram(), gateway.getHistogram());
+
+      NetworkReport network = facade.networks().getNetworkReport(NET, interval[0], interval[1]);
+      NetworkReport expectedNetwork = new NetworkReportImplementation(NET, interval[0], interval[1],
+          repository.readByNetwork(NET, start, end));
+      assertEquals(expectedNetwork.getNumberOfMeasurements(), network.getNumberOfMeasurements());
+      assertEquals(expectedNetwork.getGatewaysLoadRatio(), network.getGatewaysLoadRatio());
+      assertEquals(expectedNetwork.getHistogram(), network.getHistogram());
+    }
+  }
+
+  @Test
+  void rangeReadsShouldSeeRowsWrittenOutsideTheRepository() throws WeatherReportException {
+    createSensor(SENSOR);
+    facade.importDataFromFile(csv("S_111.csv"));
+    assertEquals(166, repository.readColumnsBySensor(SENSOR, null, null).size());
+
+    // come un altro processo sullo stesso database: nessun hook dopo il commit
+    EntityManager em = PersistenceManager.getEntityManager();
+    try {
+      em.getTransaction().begin();
+      em.persist(new Measurement(NET, GW, SENSOR, 1.0, LocalDateTime.of(2025, 11, 16, 9, 0)));
+      em.getTransaction().commit();
+    } finally {
+      PersistenceManager.closeEntityManager();
+    }
+    assertEquals(167, repository.readColumnsBySensor(SENSOR, null, null).size());
+    assertEquals(167, repository.readRollupsBySensor(SENSOR, null, null, true).mergeSketches().getCount());
+  }
+
+  @Test
+  void streamingReportsShouldMatchInMemoryReports() throws WeatherReportException {
+    createSensor(SENSOR);
+    facade.importDataFromFile(csv("S_111.csv"));
+
+    String[][] intervals = { { null, null }, { "2025-11-16 10:00:00", "2025-11-16 20:00:00" },
+        { "2025-11-20 00:00:00", null }, { "2030-01-01 00:00:00", null } };
+    for (String[] interval : intervals) {
+      SensorReport expected = facade.sensors().getSensorReport(SENSOR, interval[0], interval[1]);
+      SensorReport streamed = facade.sensors().getSensorReportStreaming(SENSOR, interval[0], interval[1]);
+      assertEquals(expected.getNumberOfMeasurements(), streamed.getNumberOfMeasurements());
+      assertEquals(expected.getMean(), streamed.getMean(), 1e-9);
+      assertEquals(expected.getVariance(), streamed.getVariance(), 1e-9);
+      assertEquals(expected.getMinimumMeasuredValue(), streamed.getMinimumMeasuredValue());
+      assertEquals(expected.getMaximumMeasuredValue(), streamed.getMaximumMeasuredValue());
+      assertEquals(expected.getOutliers().stream().map(Measurement::getTimestamp).toList(),
+          streamed.getOutliers().stream().map(Measurement::getTimestamp).toList());
+      assertEquals(expected.getOutliers().stream().map(Measurement::getId).sorted().toList(),
+          streamed.getOutliers().stream().map(Measurement::getId).sorted().toList());
+      assertTrue(expected.getOutliers().stream().allMatch(m -> m.getId() != null));
+      assertEquals(expected.getHistogram(), streamed.getHistogram());
+    }
+
+    // il cursore legge tutte le righe anche con un fetch size piccolo
+    List<LocalDateTime> timestamps = new ArrayList<>();
+    assertEquals(166, repository.scrollBySensor(SENSOR, null, null, 7, m -> timestamps.add(m.getTimestamp())));
+    List<LocalDateTime> sorted = new ArrayList<>(timestamps);
+    Collections.sort(sorted);
+    assertEquals(sorted, timestamps);
+    assertEquals(0, repository.scrollBySensor(SENSOR_UNKNOWN, null, null, 7, m -> timestamps.add(null)));
+
+    // le letture di uno snapshot non vedono le misure salvate dopo la sua apertura
+    try (MeasurementSnapshot snapshot = repository.openSnapshot()) {
+      assertEquals(166, snapshot.scrollBySensor(SENSOR, null, null, 7, m -> {}));
+      repository.create(new Measurement(NET, GW, SENSOR, 1.0, LocalDateTime.of(2025, 11, 16, 9, 0)));
+      assertEquals(166, snapshot.scrollBySensor(SENSOR, null, null, 7, m -> {}));
+      assertTrue(snapshot.readCompactedBySensor(SENSOR, null, null).isEmpty());
+    }
+    assertEquals(167, repository.scrollBySensor(SENSOR, null, null, 7, m -> {}));
+  }
+
+  @Test
+  void bulkSensorReportsShouldMatchSingleReports() throws WeatherReportException {
+    facade.importDataFromDirectory(new File(csv("S_111.csv")).getParent());
+    List<String> codes = List.of("S_010103", "S_010101", "S_010102", "S_010201", "S_010101");
+    for (String code : codes.subList(0, 4)) {
+      createSensor(code);
+    }
+
+    String[][] intervals = { { null, null }, { "2025-11-17 00:00:00", "2025-11-19 12:00:00" } };
+    for (String[] interval : intervals) {
+      ReportCache.SENSOR_REPORTS.clear();
+      Map<String, SensorReport> reports = facade.sensors().getSensorReports(codes, interval[0], interval[1]);
+      assertEquals(codes.subList(0, 4), List.copyOf(reports.keySet()));
+      for (String code : reports.keySet()) {
+        SensorReport bulk = reports.get(code);
+        assertEquals(code, bulk.getCode());
+        ReportCache.SENSOR_REPORTS.clear();
+        SensorReport single = facade.sensors().getSensorReport(code, interval[0], interval[1]);
+        assertEquals(single.getNumberOfMeasurements(), bulk.getNumberOfMeasurements());
+        assertTrue(bulk.getNumberOfMeasurements() > 0);
+        assertEquals(single.getMean(), bulk.getMean(), 1e-9);
+        assertEquals(single.getVariance(), bulk.getVariance(), 1e-9);
+        assertEquals(single.getOutliers().size(), bulk.getOutliers().size());
+        assertEquals(single.getHistogram(), bulk.getHistogram());
+      }
+    }
+
+    assertTrue(facade.sensors().getSensorReports(List.of(), null, null).isEmpty());
+    assertThrows(ElementNotFoundException.class,
+        () -> facade.sensors().getSensorReports(List.of("S_010101", SENSOR_UNKNOWN), null, null));
+    assertThrows(InvalidInputDataException.class,
+        () -> facade.sensors().getSensorReports(List.of("S_010101", "bad"), null, null));
+    assertThrows(InvalidInputDataException.class,
+        () -> facade.sensors().getSensorReports(codes, "2025-11-20 00:00:00", "2025-11-19 00:00:00"));
+  }
+
+  @Test
+  void rollupsShouldMatchMeasurementsWithPartialEdgeHours() throws WeatherReportException {
+    createSensor(SENSOR);
+    facade.importDataFromFile(csv("S_111.csv"));
+    // punti in più dentro le ore, ai bordi dell'intervallo
+    LocalDateTime origin = LocalDateTime.of(2025, 11, 16, 10, 0);
+    List<Measurement> extra = new ArrayList<>();
+    for (int minute = 0; minute < 24 * 60; minute += 7) {
+      extra.add(new Measurement(NET, GW, SENSOR, minute % 13, origin.plusMinutes(minute)));
+    }
+    repository.createAll(extra);
+
+    LocalDateTime start = origin.plusMinutes(30);
+    LocalDateTime end = origin.plusHours(20).plusMinutes(15);
+    MeasurementColumns columns = repository.readColumnsBySensor(SENSOR, start, end);
+    MeasurementRollups rollups = repository.readRollupsBySensor(SENSOR, start, end, false);
+
+    StreamingStatistics expected = new StreamingStatistics();
+    for (int i = 0; i < columns.size(); i++) expected.add(columns.getValue(i));
+    long count = 0;
+    double mean = 0;
+    double squaredDeviations = 0;
+    for (int r = 0; r < rollups.size(); r++) {
+      long n = rollups.getCount(r);
+      double delta = rollups.getMean(r) - mean;
+      mean += delta * n / (count + n);
+      squaredDeviations += rollups.getSquaredDeviations(r) + delta * delta * count * n / (count + n);
+      count += n;
+    }
+    assertEquals(expected.getCount(), count);
+    assertEquals(expected.getMean(), mean, 1e-9);
+    assertEquals(expected.getVariance(), squaredDeviations / (count - 1), 1e-9);
+    assertEquals(columns.getEpochSecond(0), rollups.getFirstEpochSecond(0));
+    assertNull(rollups.getSketch(0));
+  }
+
+  @Test
+  void reportsShouldFollowStoredAndDeletedMeasurements() throws WeatherReportException {
+    createSensor(SENSOR);
+    facade.importDataFromFile(csv("S_111.csv"));
+    assertEquals(166, facade.sensors().getSensorReport(SENSOR, null, null).getNumberOfMeasurements());
+
+    facade.importDataFromFile(csv("S_111.csv"));
+    assertEquals(332, facade.sensors().getSensorReport(SENSOR, null, null).getNumberOfMeasurements());
+
+    List<Measurement> stored = repository.readBySensor(SENSOR, null, null);
+    for (Measurement m : stored.subList(0, 32)) {
+      repository.delete(m.getId());
+    }
+    assertEquals(300, facade.sensors().getSensorReport(SENSOR, null, null).getNumberOfMeasurements());
+  }
+
+  @Test
+  void codesShouldBeStoredAsDictionaryKeys() throws WeatherReportException {
+    createSensor(SENSOR);
+    facade.importDataFromFile(csv("S_111.csv"));
+
+    EntityManager em = PersistenceManager.getEntityManager();
+    try {
+      Object key = em.createNativeQuery("SELECT DISTINCT sensor_id FROM measurement").getSingleResult();
+      assertEquals(CodeDictionary.idOf(SENSOR), ((Number) key).intValue());
+    } finally {
+      PersistenceManager.closeEntityManager();
+    }
+    assertEquals(SENSOR, repository.readBySensor(SENSOR, null, null).get(0).getSensorCode());
+
+    // la lettura di un codice sconosciuto non lo aggiunge al dizionario
+    assertEquals(0, repository.readBySensor(SENSOR_UNKNOWN, null, null).size());
+    assertNull(CodeDictionary.findId(SENSOR_UNKNOWN));
+  }
+
+  @Test
+  void compactionShouldKeepHourlyRollupsAndDropShouldRemovePartitions() throws WeatherReportException {
+    createNetwork(NET);
+    createGateway(GW);
+    createSensor(SENSOR);
+    facade.importDataFromFile(csv("S_111.csv"));
+    MeasurementRollups before = repository.readRollupsBySensor(SENSOR, null, null, true);
+    SensorReport reportBefore = facade.sensors().getSensorReport(SENSOR, null, null);
+    int inRange = repository.readBySensor(SENSOR, LocalDateTime.of(2025, 11, 16, 9, 0), LocalDateTime.of(2025, 11, 20, 12, 0)).size();
+
+    MeasurementRetentionService retention = new MeasurementRetentionService(Duration.ofDays(1), 1);
+    long compacted = retention.compact(LocalDateTime.of(2025, 11, 20, 12, 30));
+    List<Measurement> raw = repository.readBySensor(SENSOR, null, null);
+    assertEquals(166 - compacted, raw.size());
+    assertTrue(compacted > 0 && raw.size() > 0);
+    assertFalse(raw.get(0).getTimestamp().isBefore(LocalDateTime.of(2025, 11, 19, 12, 0)));
+
+    // le ore compattate restano negli aggregati orari
+    MeasurementRollups after = repository.readRollupsBySensor(SENSOR, null, null, true);
+    assertEquals(before.size(), after.size());
+    for (int i = 0; i < before.size(); i++) {
+      assertEquals(before.getHour(i), after.getHour(i));
+      assertEquals(before.getCount(i), after.getCount(i));
+      assertEquals(before.getMean(i), after.getMean(i), 1e-9);
+      assertEquals(before.getSquaredDeviations(i), after.getSquaredDeviations(i), 1e-9);
+      assertEquals(before.getMin(i), after.getMin(i));
+      assertEquals(before.getMax(i), after.getMax(i));
+      // lo sketch viene salvato con l'aggregato
+      assertEquals(before.getSketch(i).getCount(), after.getSketch(i).getCount());
+      assertEquals(before.getSketch(i).getQuantile(0.5), after.getSketch(i).getQuantile(0.5));
+    }
+    SensorReport report = facade.sensors().getSensorReport(SENSOR, null, null);
+    for (double fraction : new double[] { 0.5, 0.9, 0.99 }) {
+      assertEquals(before.mergeSketches().getQuantile(fraction), after.mergeSketches().getQuantile(fraction));
+    }
+    assertEquals(166, after.mergeSketches().getCount());
+
+    // i report contano ancora le misure compattate, qualunque sia il percorso di lettura
+    assertEquals(166, report.getNumberOfMeasurements());
+    assertEquals(reportBefore.getMean(), report.getMean(), 1e-9);
+    assertEquals(reportBefore.getVariance(), report.getVariance(), 1e-9);
+    assertEquals(reportBefore.getMinimumMeasuredValue(), report.getMinimumMeasuredValue());
+    assertEquals(reportBefore.getMaximumMeasuredValue(), report.getMaximumMeasuredValue());
+    SensorReport streamed = facade.sensors().getSensorReportStreaming(SENSOR, null, null);
+    assertEquals(166, streamed.getNumberOfMeasurements());
+    assertEquals(report.getMean(), streamed.getMean(), 1e-9);
+    assertEquals(report.getQuantile(0.5), streamed.getQuantile(0.5));
+    assertEquals(166, facade.gateways().getGatewayReport(GW, null, null).getNumberOfMeasurements());
+    assertEquals(166, facade.networks().getNetworkReport(NET, null, null).getNumberOfMeasurements());
+    // inizio allineato all'ora (aggregati orari) e non allineato (colonne): stesse misure
+    NetworkReport aligned = facade.networks().getNetworkReport(NET, "2025-11-16 09:00:00", "2025-11-20 12:00:00");
+    NetworkReport unaligned = facade.networks().getNetworkReport(NET, "2025-11-16 08:00:01", "2025-11-20 12:00:00");
+    assertEquals(inRange, aligned.getNumberOfMeasurements());
+    assertEquals(inRange, unaligned.getNumberOfMeasurements());
+    assertEquals(inRange, unaligned.getHistogram().values().stream().mapToLong(Long::longValue).sum());
+    MeasurementRepository.setColumnStoreEnabled(true);
+    try {
+      assertEquals(166, facade.sensors().getSensorReportStreaming(SENSOR, null, null).getNumberOfMeasurements());
+      assertEquals(166, facade.gateways().getGatewayReport(GW, null, null).getNumberOfMeasurements());
+      assertEquals(inRange, facade.networks().getNetworkReport(NET, "2025-11-16 09:00:00", "2025-11-20 12:00:00").getNumberOfMeasurements());
+      assertEquals(inRange, facade.networks().getNetworkReport(NET, "2025-11-16 08:00:01", "2025-11-20 12:00:00").getNumberOfMeasurements());
+    } finally {
+      MeasurementRepository.setColumnStoreEnabled(false);
+    }
+
+    assertEquals(Set.of(202511), repository.getPartitions());
+    assertEquals(0, retention.dropExpiredPartitions(LocalDateTime.of(2025, 11, 30, 0, 0)));
+    assertTrue(retention.dropExpiredPartitions(LocalDateTime.of(2025, 12, 5, 0, 0)) > 0);
+    assertTrue(repository.getPartitions().isEmpty());
+    assertTrue(repository.readRollupsBySensor(SENSOR, null, null, false).isEmpty());
+  }
+
+  @Test
+  void unitOfWorkShouldCommitOrRollBackAllItsWrites() throws WeatherReportException {
+    createSensor(SENSOR);
+    facade.importDataFromFile(csv("S_111.csv"));
+    assertEquals(166, facade.sensors().getSensorReport(SENSOR, null, null).getNumberOfMeasurements());
+    LocalDateTime timestamp = LocalDateTime.of(2025, 11, 16, 9, 0);
+
+    // senza commit le scritture (anche quelle delle unit annidate) vengono annullate
+    try (UnitOfWork unitOfWork = PersistenceManager.beginUnitOfWork()) {
+      repository.create(new Measurement(NET, GW, SENSOR, 1.0, timestamp));
+      try (UnitOfWork nested = PersistenceManager.beginUnitOfWork()) {
+        assertTrue(nested.isJoined());
+        repository.createAll(List.of(new Measurement(NET, GW, SENSOR, 2.0, timestamp)));
+        nested.commit();
+      }
+      assertTrue(PersistenceManager.isInUnitOfWork());
+    }
+    assertFalse(PersistenceManager.isInUnitOfWork());
+    assertEquals(166, facade.sensors().getSensorReport(SENSOR, null, null).getNumberOfMeasurements());
+    assertEquals(166, repository.readBySensor(SENSOR, null, null).size());
+
+    try (UnitOfWork unitOfWork = PersistenceManager.beginUnitOfWork()) {
+      repository.create(new Measurement(NET, GW, SENSOR, 1.0, timestamp));
+      repository.createAll(List.of(new Measurement(NET, GW, SENSOR, 2.0, timestamp)));
+      unitOfWork.commit();
+    }
+    assertEquals(168, facade.sensors().getSensorReport(SENSOR, null, null).getNumberOfMeasurements());
+    assertEquals(168, repository.readBySensor(SENSOR, null, null).size());
+  }
+
+  @Test
+  void cachedReportsShouldFollowWatermarksAndParameters() throws WeatherReportException {
+    createSensor(SENSOR);
+    createGateway(GW);
+    facade.importDataFromFile(csv("S_111.csv"));
+    long hits = ReportCache.SENSOR_REPORTS.getHits();
+
+    SensorReport first = facade.sensors().getSensorReport(SENSOR, null, null);
+    assertSame(first, facade.sensors().getSensorReport(SENSOR, null, null));
+    assertEquals(hits + 1, ReportCache.SENSOR_REPORTS.getHits());
+
+    // nuove misure di un altro sensore non invalidano il report
+    repository.create(new Measurement(NET, GW, SENSOR_UNKNOWN, 1.0, LocalDateTime.of(2025, 11, 16, 9, 0)));
+    assertSame(first, facade.sensors().getSensorReport(SENSOR, null, null));
+    repository.create(new Measurement(NET, GW, SENSOR, 1.0, LocalDateTime.of(2025, 11, 16, 9, 0)));
+    assertEquals(167, facade.sensors().getSensorReport(SENSOR, null, null).getNumberOfMeasurements());
+    // i report in blocco riusano quelli in cache
+    SensorReport cached = facade.sensors().getSensorReport(SENSOR, null, null);
+    hits = ReportCache.SENSOR_REPORTS.getHits();
+    assertSame(cached, facade.sensors().getSensorReports(List.of(SENSOR), null, null).get(SENSOR));
+    assertEquals(hits + 1, ReportCache.SENSOR_REPORTS.getHits());
+
+    GatewayReport gateway = facade.gateways().getGatewayReport(GW, null, null);
+    assertSame(gateway, facade.gateways().getGatewayReport(GW, null, null));
+    facade.gateways().createParameter(GW, Parameter.BATTERY_CHARGE_PERCENTAGE_CODE, "battery", "", 42.0,
+        MAINTAINER_USERNAME);
+    assertEquals(42.0, facade.gateways().getGatewayReport(GW, null, null).getBatteryChargePercentage());
+
+    ReportCache<String> cache = new ReportCache<>(2);
+    for (String code : new String[] { "A", "B", "A", "C", "A" }) {
+      cache.get(code, null, null, 0, () -> code);
+    }
+    assertEquals(2, cache.size());
+    assertEquals(2, cache.getHits());
+    assertEquals(3, cache.getMisses());
+    assertEquals(1, cache.getEvictions());
+
+    // un report calcolato mentre il codice viene invalidato non resta in cache
+    assertEquals("stale", cache.get("D", null, null, 0, () -> {
+      cache.invalidate("D");
+      return "stale";
+    }));
+    assertEquals("fresh", cache.get("D", null, null, 0, () -> "fresh"));
+    assertEquals("fresh", cache.get("D", null, null, 0, () -> "recomputed"));
+  }
+
+  @Test
+  void outOfOrderMeasurementsShouldBeFoundByRange() throws WeatherReportException {
+    MeasurementRepository.setColumnStoreEnabled(true);
+    try {
+      assertOutOfOrderMeasurementsFoundByRange();
+    } finally {
+      MeasurementRepository.setColumnStoreEnabled(false);
+    }
+  }
+
+  private void assertOutOfOrderMeasurementsFoundByRange() throws WeatherReportException {
+    createSensor(SENSOR_UNKNOWN);
+    // carica lo store prima degli inserimenti
+    assertEquals(0, facade.sensors().getSensorReport(SENSOR_UNKNOWN, null, null).getNumberOfMeasurements());
+
+    LocalDateTime origin = LocalDateTime.of(2025, 1, 1, 0, 0);
+    List<Integer> minutes = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) minutes.add(i);
+    Collections.shuffle(minutes, new Random(42));
+    List<Measurement> batch = new ArrayList<>();
+    for (int minute : minutes) {
+      batch.add(new Measurement(NET_99, GW_UNKNOWN, SENSOR_UNKNOWN, minute, origin.plusMinutes(minute)));
+      if (batch.size() == 1_000) {
+        repository.createAll(batch);
+        batch.clear();
+      }
+    }
+
+    SensorReport report = facade.sensors().getSensorReport(SENSOR_UNKNOWN,
+        origin.plusMinutes(2_500).format(WeatherReport.DATE_TIME_FORMATTER),
+        origin.plusMinutes(7_499).format(WeatherReport.DATE_TIME_FORMATTER));
+
+    assertEquals(5_000, report.getNumberOfMeasurements());
+    assertEquals(2_500, report.getMinimumMeasuredValue());
+    assertEquals(7_499, report.getMaximumMeasuredValue());
+  }
+
+}
@@ -0,0 +1,320 @@
+package com.weather.report.test.perf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import com.weather.report.exceptions.InvalidInputDataException;
+import com.weather.report.model.MeasurementColumns;
+import com.weather.report.model.QuantileSketch;
+import com.weather.report.model.entities.Gateway;
+import com.weather.report.model.entities.Measurement;
+import com.weather.report.model.entities.MeasurementAggregate;
+import com.weather.report.model.entities.Parameter;
+import com.weather.report.reports.GatewayReport;
+import com.weather.report.reports.GatewayReportImplementation;
+import com.weather.report.reports.Histogram;
+import com.weather.report.reports.NetworkReport;
+import com.weather.report.reports.NetworkReportImplementation;
+import com.weather.report.reports.Report.Range;
+import com.weather.report.reports.SensorReport;
+import com.weather.report.reports.SensorReportImplementation;
+import com.weather.report.reports.SeriesAccumulator;
+
+public class Test_Reports {
+
+  private static final LocalDateTime ORIGIN = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+  private static List<Measurement> measurements(double... values) {
+    List<Measurement> measurements = new ArrayList<>();
+    for (int i = 0; i < values.length; i++) {
+      measurements.add(new Measurement("NET_01", "GW_0001", "S_000001", values[i], ORIGIN.plusMinutes(i)));
+    }
+    return measurements;
+  }
+
+  @Test
+  void mergedQuantileSketchesShouldStayWithinTheirRankError() {
+    Random random = new Random(11);
+    double[] values = new double[200_000];
+    QuantileSketch whole = new QuantileSketch();
+    QuantileSketch merged = new QuantileSketch();
+    QuantileSketch reduced = new QuantileSketch();
+    QuantileSketch hour = new QuantileSketch();
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i % 3 == 0 ? random.nextGaussian() * 5 + 20 : random.nextDouble() * 100;
+      whole.add(values[i]);
+      hour.add(values[i]);
+      // uno sketch ogni 1000 valori, come uno per ora, poi uniti
+      if (i % 1_000 == 999) {
+        merged.merge(QuantileSketch.fromBytes(hour.toBytes()));
+        // come negli aggregati: ridotto a un numero fisso di elementi
+        QuantileSketch stored = hour.compactedTo(MeasurementAggregate.SKETCH_ITEMS);
+        assertEquals(hour.getCount(), stored.getCount());
+        assertTrue(stored.toBytes().length <= 64 + 12 * MeasurementAggregate.SKETCH_ITEMS);
+        reduced.merge(QuantileSketch.fromBytes(stored.toBytes()));
+        hour = new QuantileSketch();
+      }
+    }
+    double[] sorted = values.clone();
+    Arrays.sort(sorted);
+
+    for (QuantileSketch sketch : List.of(whole, merged, reduced)) {
+      assertEquals(values.length, sketch.getCount());
+      assertEquals(sorted[0], sketch.getQuantile(0));
+      assertEquals(sorted[sorted.length - 1], sketch.getQuantile(1));
+      for (double fraction : new double[] { 0.5, 0.9, 0.99 }) {
+        double estimate = sketch.getQuantile(fraction);
+        // posizioni occupate dalla stima tra i valori ordinati
+        int first = lowerBound(sorted, estimate);
+        int last = lowerBound(sorted, Math.nextUp(estimate));
+        double target = fraction * sorted.length;
+        double error = Math.max(0, Math.max(first - target, target - last)) / sorted.length;
+        assertTrue(error <= 0.025, fraction + ": " + error);
+      }
+    }
+  }
+
+  @Test
+  void reducedSketchesShouldBeBoundedAndExactForSmallHours() {
+    Random random = new Random(5);
+    QuantileSketch small = new QuantileSketch();
+    QuantileSketch hour = new QuantileSketch();
+    double[] values = new double[60];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = random.nextDouble() * 100;
+      hour.add(values[i]);
+      if (i < MeasurementAggregate.SKETCH_ITEMS) small.add(values[i]);
+    }
+    double[] sorted = values.clone();
+    Arrays.sort(sorted);
+
+    // fino a SKETCH_ITEMS valori lo sketch resta esatto
+    QuantileSketch smallStored = small.compactedTo(MeasurementAggregate.SKETCH_ITEMS);
+    assertEquals(small.getQuantile(0.5), smallStored.getQuantile(0.5));
+    assertEquals(small.toBytes().length, smallStored.toBytes().length);
+
+    // un'ora di 60 punti: meno della metà dello spazio, errore di rango sotto 2 / SKETCH_ITEMS
+    QuantileSketch stored = hour.compactedTo(MeasurementAggregate.SKETCH_ITEMS);
+    assertTrue(stored.toBytes().length < hour.toBytes().length * 0.6, stored.toBytes().length + " bytes");
+    assertEquals(sorted[0], stored.getQuantile(0));
+    assertEquals(sorted[sorted.length - 1], stored.getQuantile(1));
+    for (double fraction : new double[] { 0.1, 0.5, 0.9 }) {
+      double estimate = stored.getQuantile(fraction);
+      int first = lowerBound(sorted, estimate);
+      int last = lowerBound(sorted, Math.nextUp(estimate));
+      double target = fraction * sorted.length;
+      double error = Math.max(0, Math.max(first - target, target - last)) / sorted.length;
+      assertTrue(error <= 2.0 / MeasurementAggregate.SKETCH_ITEMS, fraction + ": " + error);
+    }
+  }
+
+  private static int lowerBound(double[] sorted, double key) {
+    int index = Arrays.binarySearch(sorted, key);
+    if (index < 0) return -index - 1;
+    while (index > 0 && sorted[index - 1] == key) index--;
+    return index;
+  }
+
+  @Test
+  void sensorReportQuantilesShouldBeExactForFewMeasurements() {
+    double[] values = new double[100];
+    for (int i = 0; i < values.length; i++) values[i] = (i * 37) % 100;
+
+    SensorReport report = new SensorReportImplementation("S_000001", null, null, measurements(values));
+
+    assertEquals(49, report.getQuantile(0.5));
+    assertEquals(89, report.getQuantile(0.9));
+    assertEquals(98, report.getQuantile(0.99));
+    assertTrue(Double.isNaN(new SensorReportImplementation("S_000001", null, null, measurements()).getQuantile(0.5)));
+  }
+
+  @Test
+  void sensorReportShouldMatchTwoPassStatisticsAndBucketContains() {
+    Random random = new Random(7);
+    double[] values = new double[5_000];
+    for (int i = 0; i < values.length; i++) {
+      // valori ripetuti e sugli estremi dei bucket insieme a valori casuali e outlier
+      values[i] = switch (i % 4) {
+        case 0 -> Math.round(random.nextGaussian() * 40) / 4.0;
+        case 1 -> random.nextGaussian() * 10;
+        case 2 -> -5 + (i % 20) * 0.5;
+        default -> random.nextInt(100) == 0 ? 1_000 : 3.3;
+      };
+    }
+
+    SensorReport report = new SensorReportImplementation("S_000001", null, null, measurements(values));
+
+    double mean = 0;
+    for (double v : values) mean += v;
+    mean /= values.length;
+    double squares = 0;
+    for (double v : values) squares += (v - mean) * (v - mean);
+    double variance = squares / (values.length - 1);
+    assertEquals(values.length, report.getNumberOfMeasurements());
+    assertEquals(mean, report.getMean(), 1e-9);
+    assertEquals(variance, report.getVariance(), 1e-6);
+
+    long outliers = 0;
+    List<Double> valid = new ArrayList<>();
+    for (double v : values) {
+      if (Math.abs(v - report.getMean()) >= 2 * report.getStdDev()) outliers++;
+      else valid.add(v);
+    }
+    assertEquals(outliers, report.getOutliers().size());
+    for (Map.Entry<Range<Double>, Long> bucket : report.getHistogram().entrySet()) {
+      long expected = valid.stream().filter(v -> bucket.getKey().contains(v)).count();
+      assertEquals(expected, bucket.getValue(), "bucket " + bucket.getKey().getStart());
+    }
+  }
+
+  @Test
+  void histogramShouldCountEachKeyInTheBucketThatContainsIt() {
+    // ultimo bucket più corto degli altri, chiavi fuori dagli estremi e sugli estremi
+    long[] bounds = { 100, 130, 160, 190, 220, 235 };
+    Histogram.OfLong<Long> histogram = new Histogram.OfLong<>(bounds, Long::valueOf);
+    List<Long> keys = new ArrayList<>();
+    Random random = new Random(3);
+    for (int i = 0; i < 2_000; i++) keys.add(90L + random.nextInt(160));
+    for (long bound : bounds) keys.add(bound);
+    keys.forEach(histogram::add);
+
+    SortedMap<Range<Long>, Long> counts = histogram.toSortedMap();
+    assertEquals(bounds.length - 1, counts.size());
+    for (Map.Entry<Range<Long>, Long> bucket : counts.entrySet()) {
+      long expected = keys.stream().filter(k -> bucket.getKey().contains(k)).count();
+      assertEquals(expected, bucket.getValue(), "bucket " + bucket.getKey().getStart());
+    }
+  }
+
+  @Test
+  void networkHistogramShouldMatchBucketContains() throws InvalidInputDataException {
+    Random random = new Random(11);
+    List<Measurement> measurements = new ArrayList<>();
+    for (int i = 0; i < 3_000; i++) {
+      measurements.add(new Measurement("NET_01", "GW_000" + (i % 3), "S_00000" + (i % 7), i,
+          ORIGIN.plusSeconds(random.nextInt(5 * 24 * 3600))));
+    }
+
+    for (String start : new String[] { null, "2025-01-02 10:30:15" }) {
+      NetworkReport report = new NetworkReportImplementation("NET_01", start, "2025-01-04 12:00:00", measurements);
+      long total = 0;
+      for (Map.Entry<Range<LocalDateTime>, Long> bucket : report.getHistogram().entrySet()) {
+        long expected = measurements.stream().filter(m -> bucket.getKey().contains(m.getTimestamp())).count();
+        assertEquals(expected, bucket.getValue(), "bucket " + bucket.getKey().getStart());
+        total += bucket.getValue();
+      }
+      assertTrue(total > 0);
+    }
+  }
+
+  @Test
+  void parallelAccumulationShouldMatchSerialResults() throws InvalidInputDataException {
+    // abbastanza misurazioni da accumulare le serie in parallelo
+    Random random = new Random(17);
+    List<Measurement> measurements = new ArrayList<>();
+    for (int i = 0; i < 2 * (int) SeriesAccumulator.PARALLEL_THRESHOLD; i++) {
+      String gateway = i % 5 < 3 ? "GW_0001" : "GW_000" + (2 + i % 3);
+      int sensor = i % 7;
+      measurements.add(new Measurement("NET_01", gateway, "S_" + gateway.substring(3) + "0" + sensor,
+          sensor * 10 + random.nextGaussian(), ORIGIN.plusSeconds(random.nextInt(5 * 24 * 3600))));
+    }
+
+    // unire gli accumulatori di due partizioni equivale ad accumulare tutto
+    MeasurementColumns columns = MeasurementColumns.of(measurements);
+    SeriesAccumulator whole = SeriesAccumulator.of(columns, columns::getSensorCode, true);
+    SeriesAccumulator first = new SeriesAccumulator(true);
+    SeriesAccumulator second = new SeriesAccumulator(true);
+    for (int s = 0; s < columns.getSeriesCount(); s++) {
+      (s % 2 == 0 ? first : second).addSeries(columns, s, columns.getSensorCode(s));
+    }
+    first.merge(second);
+    assertEquals(whole.getCounts(), first.getCounts());
+    assertEquals(whole.getCount(), first.getCount());
+    assertEquals(whole.getMinEpochSecond(), first.getMinEpochSecond());
+    assertEquals(whole.getMaxEpochSecond(), first.getMaxEpochSecond());
+    whole.getStatistics().forEach((sensor, statistics) -> {
+      assertEquals(statistics.getCount(), first.getStatistics().get(sensor).getCount());
+      assertEquals(statistics.getAverage(), first.getStatistics().get(sensor).getAverage(), 1e-9);
+    });
+
+    NetworkReport network = new NetworkReportImplementation("NET_01", null, null, measurements);
+    Map<String, Long> perGateway = measurements.stream()
+        .collect(Collectors.groupingBy(Measurement::getGatewayCode, Collectors.counting()));
+    long max = Collections.max(perGateway.values());
+    long min = Collections.min(perGateway.values());
+    assertEquals(measurements.size(), network.getNumberOfMeasurements());
+    assertEquals(Set.of("GW_0001"), Set.copyOf(network.getMostActiveGateways()));
+    assertEquals(perGateway.keySet().stream().filter(g -> perGateway.get(g) == max).collect(Collectors.toSet()),
+        Set.copyOf(network.getMostActiveGateways()));
+    assertEquals(perGateway.keySet().stream().filter(g -> perGateway.get(g) == min).collect(Collectors.toSet()),
+        Set.copyOf(network.getLeastActiveGateways()));
+    perGateway.forEach((gateway, count) ->
+        assertEquals(count / (double) measurements.size(), network.getGatewaysLoadRatio().get(gateway)));
+    for (Map.Entry<Range<LocalDateTime>, Long> bucket : network.getHistogram().entrySet()) {
+      long expected = measurements.stream().filter(m -> bucket.getKey().contains(m.getTimestamp())).count();
+      assertEquals(expected, bucket.getValue(), "bucket " + bucket.getKey().getStart());
+    }
+
+    List<Measurement> ofGateway = measurements.stream().filter(m -> m.getGatewayCode().equals("GW_0001")).toList();
+    Gateway gateway = new Gateway("GW_0001", "gw", "", "maintainer");
+    gateway.addParameter(new Parameter(Parameter.EXPECTED_MEAN_CODE, "mean", "", 30));
+    gateway.addParameter(new Parameter(Parameter.EXPECTED_STD_DEV_CODE, "std dev", "", 10));
+    GatewayReport report = new GatewayReportImplementation(gateway, null, null, ofGateway);
+    // medie dei sensori 0, 10, ..., 60: outlier quelle a distanza di almeno 20 da 30
+    assertEquals(Set.of("S_000100", "S_000101", "S_000105", "S_000106"), Set.copyOf(report.getOutlierSensors()));
+    assertEquals(7, report.getSensorsLoadRatio().size());
+    long[] gaps = ofGateway.stream().mapToLong(m -> MeasurementColumns.toEpochSecond(m.getTimestamp())).sorted().toArray();
+    for (int i = 0; i < gaps.length - 1; i++) gaps[i] = gaps[i + 1] - gaps[i];
+    Arrays.sort(gaps, 0, gaps.length - 1);
+    assertEquals(Duration.ofSeconds(gaps[(int) Math.ceil(0.95 * (gaps.length - 1)) - 1]), report.getInterArrivalP95());
+    assertEquals(gaps.length - 1L, report.getHistogram().values().stream().mapToLong(Long::longValue).sum());
+  }
+
+  @Test
+  void gatewayReportShouldExposeInterArrivalPercentiles() throws InvalidInputDataException {
+    // intervalli da 1 a 100 secondi in ordine casuale, su due sensori
+    List<Integer> gaps = new ArrayList<>();
+    for (int gap = 1; gap <= 100; gap++) gaps.add(gap);
+    Collections.shuffle(gaps, new Random(5));
+    List<Measurement> measurements = new ArrayList<>();
+    LocalDateTime timestamp = ORIGIN;
+    measurements.add(new Measurement("NET_01", "GW_0001", "S_000001", 0, timestamp));
+    for (int i = 0; i < gaps.size(); i++) {
+      timestamp = timestamp.plusSeconds(gaps.get(i));
+      measurements.add(new Measurement("NET_01", "GW_0001", "S_00000" + (1 + i % 2), i, timestamp));
+    }
+
+    GatewayReport report = new GatewayReportImplementation(new Gateway("GW_0001", "gw", "", "maintainer"), null, null,
+        measurements);
+
+    assertEquals(Duration.ofSeconds(50), report.getInterArrivalP50());
+    assertEquals(Duration.ofSeconds(95), report.getInterArrivalP95());
+    assertEquals(Duration.ofSeconds(99), report.getInterArrivalP99());
+    assertEquals(100L, report.getHistogram().values().stream().mapToLong(Long::longValue).sum());
+  }
+
+  @Test
+  void sensorReportWithEqualValidValuesShouldCountThemInTheLastBucket() {
+    // 2.0 e 3.0 sono outlier, i valori validi sono tutti uguali
+    SensorReport report = new SensorReportImplementation("S_000001", null, null,
+        measurements(2.0, 2.5, 2.5, 2.5, 2.5, 2.5, 2.5, 2.5, 2.5, 2.5, 2.5, 3.0));
+
+    assertEquals(2, report.getOutliers().size());
+    assertEquals(10L, report.getHistogram().values().stream().mapToLong(Long::longValue).sum());
+  }
+
+}